@@ -0,0 +1,269 @@
+import token.Token;
+import token.TokenType;
+
+// Arithmetic and comparison nodes that specialize themselves.
+//
+// A new node starts Uninitialized. On its first execution it looks at the
+// operands and replaces itself: with a node for its operator on longs when
+// both are longs (comparing against a constant if the right side is a
+// literal), otherwise with the Generic node. A specialized node whose guard
+// fails, because an operand isn't a long or a result overflows, replaces
+// itself with the Generic node for good.
+abstract class ArithmNode extends ExprNode {
+    final Token operation;
+    ExprNode left;
+    ExprNode right;
+
+    ArithmNode(ExprNode left, Token operation, ExprNode right) {
+        this.operation = operation;
+        this.left = adopt(left);
+        this.right = adopt(right);
+    }
+
+    static ArithmNode create(ExprNode left, Token operation, ExprNode right) {
+        return new Uninitialized(left, operation, right);
+    }
+
+    @Override
+    void replaceChild(ExecNode child, ExecNode replacement) {
+        if (left == child) { left = (ExprNode) replacement; }
+        else if (right == child) { right = (ExprNode) replacement; }
+    }
+
+    // guard failed: compute this execution generically and stay generic
+    Object fallback(Object leftValue, Object rightValue) {
+        replace(new Generic(left, operation, right));
+        return compute(leftValue, rightValue);
+    }
+
+    // the operation on any two values, with all of the interpreter's checks
+    Object compute(Object leftValue, Object rightValue) {
+        if (!Numbers.isNumber(leftValue) || !Numbers.isNumber(rightValue)) {
+            throw new RuntimeError(operation, "Operands must be numbers.");
+        }
+
+        switch (operation.getType()) {
+            case PLUS:
+                return Numbers.add(leftValue, rightValue);
+            case MINUS:
+                return Numbers.subtract(leftValue, rightValue);
+            case SLASH:
+                if (Numbers.isZero(rightValue)) {
+                    throw new RuntimeError(operation, "Division by zero!");
+                }
+                return Numbers.divide(leftValue, rightValue);
+            case ASTERISK:
+                return Numbers.multiply(leftValue, rightValue);
+            case EQUAL:
+                return leftValue.equals(rightValue);
+            case NOT_EQUAL:
+                return !leftValue.equals(rightValue);
+            default:
+                return decide(operation.getType(), Numbers.compare(leftValue, rightValue));
+        }
+    }
+
+    static boolean isComparison(TokenType type) {
+        switch (type) {
+            case EQUAL:
+            case NOT_EQUAL:
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // comparison result for Long.compare(left, right)
+    static boolean decide(TokenType type, int comparison) {
+        switch (type) {
+            case EQUAL: return comparison == 0;
+            case NOT_EQUAL: return comparison != 0;
+            case GREATER: return comparison > 0;
+            case GREATER_EQUAL: return comparison >= 0;
+            case LESS: return comparison < 0;
+            default: return comparison <= 0;
+        }
+    }
+
+    static final class Uninitialized extends ArithmNode {
+        Uninitialized(ExprNode left, Token operation, ExprNode right) {
+            super(left, operation, right);
+        }
+
+        @Override
+        Object execute(Environment env) {
+            Object leftValue = left.execute(env);
+            Object rightValue = right.execute(env);
+            specialize(leftValue, rightValue);
+            return compute(leftValue, rightValue);
+        }
+
+        private void specialize(Object leftValue, Object rightValue) {
+            TokenType type = operation.getType();
+            if (leftValue instanceof Long && rightValue instanceof Long) {
+                if (isComparison(type)) {
+                    if (right instanceof ExprNode.Literal) {
+                        replace(new CompareConstant(left, operation, right, (Long) rightValue));
+                    } else {
+                        replace(new Compare(left, operation, right));
+                    }
+                } else {
+                    switch (type) {
+                        case PLUS: replace(new Add(left, operation, right)); break;
+                        case MINUS: replace(new Subtract(left, operation, right)); break;
+                        case ASTERISK: replace(new Multiply(left, operation, right)); break;
+                        default: replace(new Divide(left, operation, right)); break;
+                    }
+                }
+            } else {
+                replace(new Generic(left, operation, right));
+            }
+        }
+    }
+
+    // any operands
+    static final class Generic extends ArithmNode {
+        Generic(ExprNode left, Token operation, ExprNode right) {
+            super(left, operation, right);
+        }
+
+        @Override
+        Object execute(Environment env) {
+            return compute(left.execute(env), right.execute(env));
+        }
+    }
+
+    static final class Add extends ArithmNode {
+        Add(ExprNode left, Token operation, ExprNode right) {
+            super(left, operation, right);
+        }
+
+        @Override
+        Object execute(Environment env) {
+            Object leftValue = left.execute(env);
+            Object rightValue = right.execute(env);
+            if (leftValue instanceof Long && rightValue instanceof Long) {
+                long a = (Long) leftValue, b = (Long) rightValue;
+                long result = a + b;
+                if (((a ^ result) & (b ^ result)) >= 0) { return Numbers.valueOf(result); }
+            }
+            return fallback(leftValue, rightValue);
+        }
+    }
+
+    static final class Subtract extends ArithmNode {
+        Subtract(ExprNode left, Token operation, ExprNode right) {
+            super(left, operation, right);
+        }
+
+        @Override
+        Object execute(Environment env) {
+            Object leftValue = left.execute(env);
+            Object rightValue = right.execute(env);
+            if (leftValue instanceof Long && rightValue instanceof Long) {
+                long a = (Long) leftValue, b = (Long) rightValue;
+                long result = a - b;
+                if (((a ^ b) & (a ^ result)) >= 0) { return Numbers.valueOf(result); }
+            }
+            return fallback(leftValue, rightValue);
+        }
+    }
+
+    static final class Multiply extends ArithmNode {
+        Multiply(ExprNode left, Token operation, ExprNode right) {
+            super(left, operation, right);
+        }
+
+        @Override
+        Object execute(Environment env) {
+            Object leftValue = left.execute(env);
+            Object rightValue = right.execute(env);
+            if (leftValue instanceof Long && rightValue instanceof Long) {
+                long a = (Long) leftValue, b = (Long) rightValue;
+                long result = a * b;
+                if (Math.multiplyHigh(a, b) == (result >> 63)) { return Numbers.valueOf(result); }
+            }
+            return fallback(leftValue, rightValue);
+        }
+    }
+
+    static final class Divide extends ArithmNode {
+        Divide(ExprNode left, Token operation, ExprNode right) {
+            super(left, operation, right);
+        }
+
+        @Override
+        Object execute(Environment env) {
+            Object leftValue = left.execute(env);
+            Object rightValue = right.execute(env);
+            if (leftValue instanceof Long && rightValue instanceof Long) {
+                long a = (Long) leftValue, b = (Long) rightValue;
+                if (b == 0) {
+                    throw new RuntimeError(operation, "Division by zero!");
+                }
+                if (!(a == Long.MIN_VALUE && b == -1)) { return Numbers.valueOf(a / b); }
+            }
+            return fallback(leftValue, rightValue);
+        }
+    }
+
+    // comparison of two longs, conditions use the unboxed result
+    static final class Compare extends ArithmNode {
+        private final TokenType type;
+
+        Compare(ExprNode left, Token operation, ExprNode right) {
+            super(left, operation, right);
+            this.type = operation.getType();
+        }
+
+        @Override
+        Object execute(Environment env) {
+            Object leftValue = left.execute(env);
+            Object rightValue = right.execute(env);
+            if (leftValue instanceof Long && rightValue instanceof Long) {
+                return decide(type, Long.compare((Long) leftValue, (Long) rightValue));
+            }
+            return fallback(leftValue, rightValue);
+        }
+
+        @Override
+        boolean executeBoolean(Environment env, Token token, String message) {
+            Object leftValue = left.execute(env);
+            Object rightValue = right.execute(env);
+            if (leftValue instanceof Long && rightValue instanceof Long) {
+                return decide(type, Long.compare((Long) leftValue, (Long) rightValue));
+            }
+            return (Boolean) fallback(leftValue, rightValue);
+        }
+    }
+
+    // comparison of a long with a literal long, e.g. the condition of "while I < 10 do"
+    static final class CompareConstant extends ArithmNode {
+        private final TokenType type;
+        private final long constant;
+
+        CompareConstant(ExprNode left, Token operation, ExprNode right, long constant) {
+            super(left, operation, right);
+            this.type = operation.getType();
+            this.constant = constant;
+        }
+
+        @Override
+        Object execute(Environment env) {
+            return executeBoolean(env, operation, null);
+        }
+
+        @Override
+        boolean executeBoolean(Environment env, Token token, String message) {
+            Object leftValue = left.execute(env);
+            if (leftValue instanceof Long) {
+                return decide(type, Long.compare((Long) leftValue, constant));
+            }
+            return (Boolean) fallback(leftValue, right.execute(env));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+import token.Token;
+
+import java.util.concurrent.TimeUnit;
+
+// Limits a run to a number of steps and a deadline, so a program looping or
+// recursing forever can't hold its thread forever.
+//
+// A step is a loop iteration or a call; every engine charges every one: the
+// Interpreter and the code its Jit compiles, the VM and the NodeInterpreter. Charging only counts down a batch of steps; the
+// fuel left and the clock are looked at once a batch is used up, every BATCH
+// steps, which keeps a step about as cheap as an int decrement.
+final class Budget {
+    static final int BATCH = 1024;
+
+    private long fuel;              // steps left besides the ones in batch
+    private final boolean timed;
+    private final long deadline;    // System.nanoTime the run has to end by, if timed
+    private int batch = 0;          // steps left in the current batch
+
+    // fuel 0 for any number of steps, timeout 0 for no deadline
+    Budget(long fuel, long timeoutMillis) {
+        this.fuel = (fuel > 0) ? fuel : Long.MAX_VALUE;
+        this.timed = timeoutMillis > 0;
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    // takes a step made at token, fails if the budget is spent
+    void charge(Token token) {
+        if (--batch < 0) { refill(token); }
+    }
+
+    private void refill(Token token) {
+        if (timed && System.nanoTime() - deadline >= 0) {
+            throw new RuntimeError(token, "Time limit exceeded.");
+        }
+        if (fuel == 0) {
+            batch = 0;
+            throw new RuntimeError(token, "Step limit exceeded.");
+        }
+        long steps = Math.min(BATCH, fuel);
+        fuel -= steps;
+        batch = (int) steps - 1;    // one of them is the step being charged
+    }
+}
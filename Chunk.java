@@ -0,0 +1,21 @@
+// Compiled code of the program body or of one function.
+final class Chunk {
+    final String name;
+    final int[] code;
+    final Object[] constants;
+    final int frameSize;        // variables of the chunk and all of its blocks
+    final int maxStack;         // operand stack needed on top of the frame
+    final String[] names;       // variable names of the outermost scope, by slot
+    final int[] parameterSlots; // where arguments go, for functions
+
+    Chunk(String name, int[] code, Object[] constants, int frameSize, int maxStack,
+          String[] names, int[] parameterSlots) {
+        this.name = name;
+        this.code = code;
+        this.constants = constants;
+        this.frameSize = frameSize;
+        this.maxStack = maxStack;
+        this.names = names;
+        this.parameterSlots = parameterSlots;
+    }
+}
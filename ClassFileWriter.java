@@ -0,0 +1,328 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough of a class file writer for the JIT: one class with final
+// fields and methods made of straight-line code and forward or backward
+// branches. Classes are written as version 49 so the JVM infers the types
+// itself and no StackMapTable has to be computed.
+final class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    // opcodes used by the JIT
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int ASTORE = 0x3a;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int DUP_X2 = 0x5b;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int GOTO = 0xa7;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int ANEWARRAY = 0xbd;
+    static final int ATHROW = 0xbf;
+    static final int CHECKCAST = 0xc0;
+    static final int IFNONNULL = 0xc7;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final String name;
+    private final String superName;
+    private final String[] interfaces;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    ClassFileWriter(String name, String superName, String... interfaces) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+    }
+
+    void field(int access, String fieldName, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(fieldName));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    Code method(int access, String methodName, String descriptor, int argumentSlots) {
+        return new Code(access, methodName, descriptor, argumentSlots);
+    }
+
+    byte[] toByteArray() {
+        int thisClass = classRef(name);
+        int superClass = classRef(superName);
+        int[] interfaceRefs = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; ++i) {
+            interfaceRefs[i] = classRef(interfaces[i]);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            out.write(poolBytes.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaceRefs.length);
+            for (int ref : interfaceRefs) { out.writeShort(ref); }
+            out.writeShort(fields.size());
+            for (byte[] field : fields) { out.write(field); }
+            out.writeShort(methods.size());
+            for (byte[] method : methods) { out.write(method); }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // ---- constant pool
+
+    private int utf8(String value) {
+        return entry("U" + value, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int classRef(String className) {
+        int nameIndex = utf8(className);
+        return entry("C" + className, out -> {
+            out.writeByte(7);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    int integer(int value) {
+        return entry("I" + value, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    int fieldRef(String owner, String fieldName, String descriptor) {
+        return memberRef(9, owner, fieldName, descriptor);
+    }
+
+    int methodRef(String owner, String methodName, String descriptor) {
+        return memberRef(10, owner, methodName, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String memberName, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(memberName);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + memberName + " " + descriptor, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return entry(tag + owner + "." + memberName + " " + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private interface PoolEntry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int entry(String key, PoolEntry entry) {
+        Integer index = poolIndex.get(key);
+        if (index != null) { return index; }
+
+        try {
+            entry.write(pool);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolIndex.put(key, poolCount);
+        return poolCount++;
+    }
+
+    // ---- method bodies
+
+    final class Code {
+        private final int access;
+        private final String methodName;
+        private final String descriptor;
+
+        private byte[] code = new byte[256];
+        private int size;
+        private int stackDepth;
+        private int maxStack;
+        private int maxLocals;
+
+        private Code(int access, String methodName, String descriptor, int argumentSlots) {
+            this.access = access;
+            this.methodName = methodName;
+            this.descriptor = descriptor;
+            this.maxLocals = argumentSlots;
+        }
+
+        int newLocal() {
+            return maxLocals++;
+        }
+
+        // an instruction with no operands
+        void op(int opcode, int stackEffect) {
+            u1(opcode);
+            adjust(stackEffect);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                u1(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(SIPUSH);
+                u2(value);
+            } else {
+                u1(LDC_W);
+                u2(integer(value));
+            }
+            adjust(1);
+        }
+
+        void load(int local) {
+            u1(ALOAD);
+            u1(local);
+            adjust(1);
+        }
+
+        void store(int local) {
+            u1(ASTORE);
+            u1(local);
+            adjust(-1);
+        }
+
+        void field(int opcode, String owner, String fieldName, String descriptor, int stackEffect) {
+            u1(opcode);
+            u2(fieldRef(owner, fieldName, descriptor));
+            adjust(stackEffect);
+        }
+
+        void invoke(int opcode, String owner, String methodName, String descriptor, int stackEffect) {
+            u1(opcode);
+            u2(methodRef(owner, methodName, descriptor));
+            adjust(stackEffect);
+        }
+
+        void type(int opcode, String className) {
+            u1(opcode);
+            u2(classRef(className));
+        }
+
+        // emits a branch to a target that is patched later, returns the position to patch
+        int jump(int opcode, int stackEffect) {
+            u1(opcode);
+            u2(0);
+            adjust(stackEffect);
+            return size - 3;
+        }
+
+        void jumpTo(int opcode, int target, int stackEffect) {
+            u1(opcode);
+            u2(target - size + 1);
+            adjust(stackEffect);
+        }
+
+        void patch(int jump) {
+            int offset = size - jump;
+            code[jump + 1] = (byte) (offset >> 8);
+            code[jump + 2] = (byte) offset;
+        }
+
+        int position() {
+            return size;
+        }
+
+        void setStackDepth(int depth) {
+            stackDepth = depth;
+        }
+
+        int stackDepth() {
+            return stackDepth;
+        }
+
+        // branch offsets are 16 bit, longer methods can't be written
+        boolean fits() {
+            return size < Short.MAX_VALUE && maxLocals < 256;
+        }
+
+        void end() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeShort(access);
+                out.writeShort(utf8(methodName));
+                out.writeShort(utf8(descriptor));
+                out.writeShort(1);
+                out.writeShort(utf8("Code"));
+                out.writeInt(12 + size);
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(size);
+                out.write(code, 0, size);
+                out.writeShort(0);  // exception table
+                out.writeShort(0);  // attributes
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            methods.add(bytes.toByteArray());
+        }
+
+        private void adjust(int stackEffect) {
+            stackDepth += stackEffect;
+            maxStack = Math.max(maxStack, stackDepth);
+        }
+
+        private void u1(int value) {
+            if (size == code.length) { code = java.util.Arrays.copyOf(code, size * 2); }
+            code[size++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Computes expressions that occur more than once in a statement, or in the
+// statements of one block, only once, with --optimize: "f(X) * f(X) + f(X)"
+// calls f once. Runs on a resolved Program, after Inliner.
+//
+// Expressions are numbered by their structure: the same operations on the
+// same variables, constants and functions have the same number as long as
+// none of those variables is assigned. An assignment, or a statement with
+// one somewhere inside, ends the numbers of the expressions reading what it
+// assigns; the same expression after it gets a new one. Every number that
+// occurs twice gets a hidden variable of the block, and all its occurrences
+// become Commons using it.
+//
+// A Common keeps the value of whichever occurrence is evaluated first, so
+// the branches of ifs and the operands of "and" and "or" that are skipped
+// change nothing. Since function bodies see only their arguments, the
+// expressions are pure: computing one again would give the same value or
+// fail the same way as its first evaluation, which still happens where it
+// did. Only the conditions of whiles are left alone, their value changes
+// from one iteration to the next. Function bodies are left alone too.
+class CommonSubexpressions {
+
+    // an expression number: its occurrences and the hidden variable they share
+    private static final class Number {
+        final Set<String> reads;    // variables the expression reads, as "depth:slot" from the block
+        int count = 0;
+        int slot = -1;
+
+        Number(Set<String> reads) {
+            this.reads = reads;
+        }
+    }
+
+    private final Map<Function, Integer> functions = new IdentityHashMap<>();  // for the keys of calls
+
+    Program eliminate(Program program) {
+        return new Program(program.getFunctions(), eliminateBlock(program.getBody()));
+    }
+
+    private Block eliminateBlock(Block block) {
+        // first the occurrences, in the order the statements run
+        Map<Expression, Number> occurrences = new IdentityHashMap<>();
+        Map<String, Number> current = new HashMap<>();
+        for (Statement statement : block.getStatements()) {
+            if (statement instanceof Assignment) {
+                count(((Assignment) statement).getRight(), current, occurrences);
+            } else if (statement instanceof IfStatement) {
+                count(((IfStatement) statement).getCondition(), current, occurrences);
+            }
+            Set<String> assigned = new HashSet<>();
+            assigned(statement, 0, assigned);
+            for (Iterator<Number> numbers = current.values().iterator(); numbers.hasNext(); ) {
+                if (!disjoint(numbers.next().reads, assigned)) { numbers.remove(); }
+            }
+        }
+
+        // then the statements with the repeated ones replaced
+        List<String> locals = new ArrayList<>(Arrays.asList(block.getLocals()));
+        List<Statement> statements = new ArrayList<>();
+        for (Statement statement : block.getStatements()) {
+            statements.add(rewriteStatement(statement, occurrences, locals));
+        }
+        Block result = new Block(statements);
+        result.setLocals(locals.toArray(new String[0]));
+        return result;
+    }
+
+    private Statement rewriteStatement(Statement statement, Map<Expression, Number> occurrences, List<String> locals) {
+        if (statement instanceof Block) { return eliminateBlock((Block) statement); }
+        if (statement instanceof While) {
+            While whileStmt = (While) statement;
+            return new While(whileStmt.getWhileToken(), whileStmt.getCondition(), eliminateBlock(whileStmt.getBody()));
+        }
+        if (statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) statement;
+            Block elseBranch = ifStatement.getElseBranch();
+            return new IfStatement(ifStatement.getIfToken(),
+                    rewriteExpression(ifStatement.getCondition(), occurrences, locals),
+                    eliminateBlock(ifStatement.getThenBranch()), (elseBranch == null) ? null : eliminateBlock(elseBranch));
+        }
+        if (statement instanceof Assignment) {
+            Assignment assignment = (Assignment) statement;
+            Assignment result = new Assignment(assignment.getVariable(),
+                    rewriteExpression(assignment.getRight(), occurrences, locals));
+            result.resolve(assignment.getDepth(), assignment.getSlot());
+            return result;
+        }
+        return statement;
+    }
+
+    // ---- numbering
+
+    // counts the occurrences in expression; a repeated one isn't looked into,
+    // what is in it is computed once with it
+    private void count(Expression expression, Map<String, Number> current, Map<Expression, Number> occurrences) {
+        if (expression == null || expression instanceof Literal || expression instanceof Variable) { return; }
+
+        Set<String> reads = new HashSet<>();
+        String key = key(expression, reads);
+        if (key != null) {
+            Number number = current.computeIfAbsent(key, k -> new Number(reads));
+            occurrences.put(expression, number);
+            if (++number.count > 1) { return; }
+        }
+        for (Expression child : children(expression)) {
+            count(child, current, occurrences);
+        }
+    }
+
+    // the structure of expression, null if it can't be computed once: it has
+    // a variable or call that isn't resolved, or is kept by LoopOptimizer
+    private String key(Expression expression, Set<String> reads) {
+        if (expression == null) { return "_"; }
+        if (expression instanceof Literal) {
+            Object value = ((Literal) expression).getValue();
+            return (value instanceof Boolean) ? value.toString() : "#" + value;
+        }
+        if (expression instanceof Variable) {
+            Variable variable = (Variable) expression;
+            if (variable.getDepth() < 0) { return null; }
+            String address = variable.getDepth() + ":" + variable.getSlot();
+            reads.add(address);
+            return address;
+        }
+
+        StringBuilder key = new StringBuilder("(");
+        if (expression instanceof BinaryExpression) {
+            key.append(((BinaryExpression) expression).getOperation().getType());
+        } else if (expression instanceof Unary) {
+            key.append("unary ").append(((Unary) expression).getOperation().getType());
+        } else if (expression instanceof IfExpression) {
+            key.append("if");
+        } else if (expression instanceof CallExpression) {
+            Function function = ((CallExpression) expression).getFunction();
+            if (function == null) { return null; }
+            key.append("call ").append(functions.computeIfAbsent(function, f -> functions.size()));
+            if (((CallExpression) expression).getArguments() == null) { key.append(" none"); }
+        } else {
+            return null;
+        }
+        for (Expression child : children(expression)) {
+            String childKey = key(child, reads);
+            if (childKey == null) { return null; }
+            key.append(' ').append(childKey);
+        }
+        return key.append(')').toString();
+    }
+
+    private static List<Expression> children(Expression expression) {
+        List<Expression> children = new ArrayList<>();
+        if (expression instanceof BinaryExpression) {
+            children.add(((BinaryExpression) expression).getLeft());
+            children.add(((BinaryExpression) expression).getRight());
+        } else if (expression instanceof Unary) {
+            children.add(((Unary) expression).getRight());
+        } else if (expression instanceof IfExpression) {
+            IfExpression ifExpression = (IfExpression) expression;
+            children.add(ifExpression.getCondition());
+            children.add(ifExpression.getThenBranch());
+            children.add(ifExpression.getElseBranch());
+        } else if (expression instanceof CallExpression && ((CallExpression) expression).getArguments() != null) {
+            children.addAll(((CallExpression) expression).getArguments());
+        }
+        return children;
+    }
+
+    // adds the variables statement assigns that belong to the block depth
+    // blocks out from it, as "depth:slot" from that block
+    private static void assigned(Statement statement, int depth, Set<String> assigned) {
+        if (statement instanceof Assignment) {
+            Assignment assignment = (Assignment) statement;
+            if (assignment.getDepth() >= depth) {
+                assigned.add((assignment.getDepth() - depth) + ":" + assignment.getSlot());
+            }
+        } else if (statement instanceof Block) {
+            for (Statement inner : ((Block) statement).getStatements()) {
+                assigned(inner, depth + 1, assigned);
+            }
+        } else if (statement instanceof While) {
+            assigned(((While) statement).getBody(), depth, assigned);
+        } else if (statement instanceof IfStatement) {
+            assigned(((IfStatement) statement).getThenBranch(), depth, assigned);
+            if (((IfStatement) statement).getElseBranch() != null) {
+                assigned(((IfStatement) statement).getElseBranch(), depth, assigned);
+            }
+        }
+    }
+
+    private static boolean disjoint(Set<String> a, Set<String> b) {
+        for (String element : a) {
+            if (b.contains(element)) { return false; }
+        }
+        return true;
+    }
+
+    // ---- rewriting
+
+    private Expression rewriteExpression(Expression expression, Map<Expression, Number> occurrences, List<String> locals) {
+        if (expression == null || expression instanceof Literal || expression instanceof Variable) { return expression; }
+
+        Expression result = rewriteChildren(expression, occurrences, locals);
+        Number number = occurrences.get(expression);
+        if (number == null || number.count < 2) { return result; }
+
+        if (number.slot < 0) {
+            locals.add(null);
+            number.slot = locals.size() - 1;
+        }
+        return new Common(result, 0, number.slot);
+    }
+
+    private Expression rewriteChildren(Expression expression, Map<Expression, Number> occurrences, List<String> locals) {
+        if (expression instanceof BinaryExpression.Logical) {
+            BinaryExpression.Logical logical = (BinaryExpression.Logical) expression;
+            return new BinaryExpression.Logical(rewriteExpression(logical.getLeft(), occurrences, locals),
+                    logical.getOperation(), rewriteExpression(logical.getRight(), occurrences, locals));
+        }
+        if (expression instanceof BinaryExpression.Arithm) {
+            BinaryExpression.Arithm arithm = (BinaryExpression.Arithm) expression;
+            return new BinaryExpression.Arithm(rewriteExpression(arithm.getLeft(), occurrences, locals),
+                    arithm.getOperation(), rewriteExpression(arithm.getRight(), occurrences, locals));
+        }
+        if (expression instanceof Unary) {
+            Unary unary = (Unary) expression;
+            return new Unary(unary.getOperation(), rewriteExpression(unary.getRight(), occurrences, locals));
+        }
+        if (expression instanceof IfExpression) {
+            IfExpression ifExpression = (IfExpression) expression;
+            return new IfExpression(ifExpression.getIfToken(),
+                    rewriteExpression(ifExpression.getCondition(), occurrences, locals),
+                    rewriteExpression(ifExpression.getThenBranch(), occurrences, locals),
+                    rewriteExpression(ifExpression.getElseBranch(), occurrences, locals));
+        }
+        if (expression instanceof CallExpression) {
+            CallExpression callExpression = (CallExpression) expression;
+            List<Expression> arguments = null;
+            if (callExpression.getArguments() != null) {
+                arguments = new ArrayList<>();
+                for (Expression argument : callExpression.getArguments()) {
+                    arguments.add(rewriteExpression(argument, occurrences, locals));
+                }
+            }
+            CallExpression call = new CallExpression(callExpression.getName(), arguments);
+            call.bind(callExpression.getFunction());
+            return call;
+        }
+        // an Invariant keeps the value of its expression already
+        return expression;
+    }
+}
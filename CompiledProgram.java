@@ -0,0 +1,11 @@
+// Output of Compiler: the program body plus every function, indexed by the
+// operand of OpCode.CALL.
+final class CompiledProgram {
+    final Chunk main;
+    final Chunk[] functions;
+
+    CompiledProgram(Chunk main, Chunk[] functions) {
+        this.main = main;
+        this.functions = functions;
+    }
+}
@@ -0,0 +1,313 @@
+import ast.*;
+import token.TokenType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compiles a resolved Program to bytecode for the VM.
+//
+// Every block gets its own range of slots in the frame of the enclosing
+// function (or of the program body), right after the slots of its parent.
+// Entering a block clears its range, which gives the same "fresh
+// environment per entry" behaviour the interpreter has.
+public class Compiler implements Visitor {
+
+    private final Map<Function, Integer> functionIndex = new IdentityHashMap<>();
+
+    // state of the chunk being compiled
+    private int[] code;
+    private int size;
+    private List<Object> constants;
+    private List<Integer> bases;    // first frame slot of every enclosing scope
+    private List<Integer> scopeSizes;
+    private int frameSize;
+    private int stackDepth;
+    private int maxStack;
+    private boolean tailPosition;   // expression being compiled is the value of a function body
+
+    public CompiledProgram compile(Program program) {
+        List<Function> functions = (program.getFunctions() == null) ? new ArrayList<>() : program.getFunctions();
+        for (int i = 0; i < functions.size(); ++i) {
+            functionIndex.put(functions.get(i), i);
+        }
+
+        Chunk[] chunks = new Chunk[functions.size()];
+        for (int i = 0; i < chunks.length; ++i) {
+            Function function = functions.get(i);
+            begin(function.getLocals().length);
+            compileTail(function.getBody());
+            emit(OpCode.RETURN, -1);
+            chunks[i] = end(function.getName().getLexeme(), function.getLocals(), function.getParameterSlots());
+        }
+
+        Block body = program.getBody();
+        begin(body.getLocals().length);
+        for (Statement statement : body.getStatements()) {
+            statement.accept(this);
+        }
+        emit(OpCode.HALT, 0);
+        Chunk main = end("program", body.getLocals(), new int[0]);
+
+        return new CompiledProgram(main, chunks);
+    }
+
+    @Override
+    public void visitIfStmt(IfStatement ifStatement) {
+        compile(ifStatement.getCondition());
+        int elseJump = emitJump(OpCode.JUMP_IF_FALSE, -1);
+        emitOperands(constant(ifStatement.getIfToken()), constant("Condition should be boolean."));
+
+        ifStatement.getThenBranch().accept(this);
+
+        if (ifStatement.getElseBranch() != null) {
+            int endJump = emitJump(OpCode.JUMP, 0);
+            patch(elseJump);
+            ifStatement.getElseBranch().accept(this);
+            patch(endJump);
+        } else {
+            patch(elseJump);
+        }
+    }
+
+    @Override
+    public void visitWhile(While whileStmt) {
+        int start = size;
+        compile(whileStmt.getCondition());
+        int exitJump = emitJump(OpCode.ITERATE, -1);
+        emitOperands(constant(whileStmt.getWhileToken()), constant("Condition must be boolean"));
+
+        whileStmt.getBody().accept(this);
+
+        emit(OpCode.JUMP, 0, start);
+        patch(exitJump);
+    }
+
+    @Override
+    public void visitAssignment(Assignment assignment) {
+        compile(assignment.getRight());
+        emit(OpCode.STORE, -1, frameSlot(assignment.getDepth(), assignment.getSlot()));
+    }
+
+    @Override
+    public void visitBlock(Block block) {
+        int base = bases.get(bases.size() - 1) + scopeSize(bases.size() - 1);
+        int count = block.getLocals().length;
+        frameSize = Math.max(frameSize, base + count);
+
+        if (count > 0) { emit(OpCode.CLEAR, 0, base, count); }
+
+        bases.add(base);
+        scopeSizes.add(count);
+        try {
+            for (Statement statement : block.getStatements()) {
+                statement.accept(this);
+            }
+        } finally {
+            bases.remove(bases.size() - 1);
+            scopeSizes.remove(scopeSizes.size() - 1);
+        }
+    }
+
+    @Override
+    public void visitFunction(Function function) {
+        // functions are compiled into chunks of their own
+    }
+
+    @Override
+    public Object visitArithmBinary(BinaryExpression.Arithm binaryArithm) {
+        compile(binaryArithm.getLeft());
+        compile(binaryArithm.getRight());
+
+        int op;
+        switch (binaryArithm.getOperation().getType()) {
+            case PLUS: op = OpCode.ADD; break;
+            case MINUS: op = OpCode.SUBTRACT; break;
+            case ASTERISK: op = OpCode.MULTIPLY; break;
+            case SLASH: op = OpCode.DIVIDE; break;
+            case EQUAL: op = OpCode.EQUAL; break;
+            case NOT_EQUAL: op = OpCode.NOT_EQUAL; break;
+            case GREATER: op = OpCode.GREATER; break;
+            case GREATER_EQUAL: op = OpCode.GREATER_EQUAL; break;
+            case LESS: op = OpCode.LESS; break;
+            case LESS_EQUAL: op = OpCode.LESS_EQUAL; break;
+            default: throw new IllegalStateException(binaryArithm.getOperation().toString());
+        }
+        emit(op, -1, constant(binaryArithm.getOperation()));
+        return null;
+    }
+
+    @Override
+    public Object visitLogicalBinary(BinaryExpression.Logical binaryLogical) {
+        // the interpreter evaluates the right operand first and may skip the left one
+        int operation = constant(binaryLogical.getOperation());
+        compile(binaryLogical.getRight());
+        emit(OpCode.CHECK_BOOL, 0, operation);
+
+        boolean isOr = binaryLogical.getOperation().getType() == TokenType.OR;
+        int shortCircuit = emitJump(isOr ? OpCode.JUMP_IF_TRUE_KEEP : OpCode.JUMP_IF_FALSE_KEEP, -1);
+
+        compile(binaryLogical.getLeft());
+        emit(OpCode.CHECK_BOOL, 0, operation);
+        patch(shortCircuit);
+        return null;
+    }
+
+    @Override
+    public Object visitCall(CallExpression callExpression) {
+        boolean tail = tailPosition;
+        Function function = callExpression.getFunction();
+        int name = constant(callExpression.getName());
+
+        // same checks, in the same order, as Interpreter.visitCall
+        if (function == null) {
+            emit(OpCode.ERROR, 1, name, constant("Function with this name doesn't exist."));
+            return null;
+        }
+        if (callExpression.getArguments() == null || function.getParameters() == null) {
+            emit(OpCode.ERROR, 1, name, constant("Wrong number of arguments."));
+            return null;
+        }
+
+        List<Expression> arguments = callExpression.getArguments();
+        for (Expression argument : arguments) {
+            compile(argument);
+        }
+        if (arguments.size() != function.getParameterSlots().length) {
+            emit(OpCode.ERROR, 1 - arguments.size(), name, constant("Wrong number of arguments."));
+            return null;
+        }
+        emit(tail ? OpCode.TAIL_CALL : OpCode.CALL, 1 - arguments.size(),
+                functionIndex.get(function), arguments.size(), name);
+        return null;
+    }
+
+    @Override
+    public Object visitIfExpr(IfExpression ifExpression) {
+        boolean tail = tailPosition;
+        compile(ifExpression.getCondition());
+        int elseJump = emitJump(OpCode.JUMP_IF_FALSE, -1);
+        emitOperands(constant(ifExpression.getIfToken()), constant("Condition should be boolean."));
+
+        compile(ifExpression.getThenBranch(), tail);
+        int endJump = emitJump(OpCode.JUMP, 0);
+
+        patch(elseJump);
+        stackDepth--;   // only one of the branches leaves its value
+        if (ifExpression.getElseBranch() != null) {
+            compile(ifExpression.getElseBranch(), tail);
+        } else {
+            emit(OpCode.MISSING_ELSE, 1);
+        }
+        patch(endJump);
+        return null;
+    }
+
+    @Override
+    public Object visitLiteral(Literal literal) {
+        emit(OpCode.CONST, 1, constant(literal.getValue()));
+        return null;
+    }
+
+    @Override
+    public Object visitUnary(Unary unary) {
+        compile(unary.getRight());
+        int op = (unary.getOperation().getType() == TokenType.MINUS) ? OpCode.NEGATE : OpCode.NOT;
+        emit(op, 0, constant(unary.getOperation()));
+        return null;
+    }
+
+    @Override
+    public Object visitVariable(Variable variable) {
+        int name = constant(variable.getName());
+        if (variable.getDepth() < 0) {
+            emit(OpCode.ERROR, 1, name, constant("Variable with this name doesn't exist."));
+        } else {
+            emit(OpCode.LOAD, 1, frameSlot(variable.getDepth(), variable.getSlot()), name);
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitInvariant(Invariant invariant) {
+        int slot = frameSlot(invariant.getDepth(), invariant.getSlot());
+        int cached = emitJump(OpCode.CACHED, 0);
+        emitOperands(slot);
+        compile(invariant.getExpression());
+        emit(OpCode.CACHE, 0, slot);
+        patch(cached);
+        return null;
+    }
+
+    private void compile(Expression expression) {
+        compile(expression, false);
+    }
+
+    private void compileTail(Expression expression) {
+        compile(expression, true);
+    }
+
+    private void compile(Expression expression, boolean tail) {
+        tailPosition = tail;
+        expression.accept(this);
+    }
+
+    // ---- chunk building
+
+    private void begin(int locals) {
+        code = new int[64];
+        size = 0;
+        constants = new ArrayList<>();
+        bases = new ArrayList<>();
+        scopeSizes = new ArrayList<>();
+        bases.add(0);
+        scopeSizes.add(locals);
+        frameSize = locals;
+        stackDepth = 0;
+        maxStack = 0;
+    }
+
+    private Chunk end(String name, String[] names, int[] parameterSlots) {
+        return new Chunk(name, Arrays.copyOf(code, size), constants.toArray(), frameSize, maxStack,
+                names, parameterSlots);
+    }
+
+    private int scopeSize(int scope) {
+        return scopeSizes.get(scope);
+    }
+
+    private int frameSlot(int depth, int slot) {
+        return bases.get(bases.size() - 1 - depth) + slot;
+    }
+
+    private int constant(Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    private void emit(int op, int stackEffect, int... operands) {
+        emitOperands(op);
+        emitOperands(operands);
+        stackDepth += stackEffect;
+        maxStack = Math.max(maxStack, stackDepth);
+    }
+
+    private void emitOperands(int... operands) {
+        for (int operand : operands) {
+            if (size == code.length) { code = Arrays.copyOf(code, size * 2); }
+            code[size++] = operand;
+        }
+    }
+
+    // emits a jump with a placeholder target, returns the position to patch
+    private int emitJump(int op, int stackEffect) {
+        emit(op, stackEffect, -1);
+        return size - 1;
+    }
+
+    private void patch(int jump) {
+        code[jump] = size;
+    }
+}
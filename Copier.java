@@ -0,0 +1,119 @@
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Copies a Program as the Parser made it, before it is resolved, so it can
+// be resolved again, e.g. with other input names (see SIPLProgram), without
+// scanning and parsing the source again.
+//
+// The Resolver and TypeInference write to the nodes of a program, and
+// CallExpressions get the Function they call; every node is copied, so
+// nothing they write to is shared with the original. Tokens aren't written
+// to and are shared.
+public class Copier implements Visitor {
+    private Statement copied;
+
+    public Program copy(Program program) {
+        List<Function> functions = null;
+        if (program.getFunctions() != null) {
+            functions = new ArrayList<>();
+            for (Function function : program.getFunctions()) {
+                function.accept(this);
+                functions.add((Function) copied);
+            }
+        }
+        return new Program(functions, copyBlock(program.getBody()));
+    }
+
+    private Block copyBlock(Block block) {
+        if (block == null) { return null; }
+        List<Statement> statements = new ArrayList<>();
+        for (Statement statement : block.getStatements()) {
+            statement.accept(this);
+            statements.add(copied);
+        }
+        return new Block(statements);
+    }
+
+    private Expression copyExpression(Expression expression) {
+        return (expression == null) ? null : (Expression) expression.accept(this);
+    }
+
+    @Override
+    public void visitIfStmt(IfStatement ifStatement) {
+        copied = new IfStatement(ifStatement.getIfToken(), copyExpression(ifStatement.getCondition()),
+                copyBlock(ifStatement.getThenBranch()), copyBlock(ifStatement.getElseBranch()));
+    }
+
+    @Override
+    public void visitWhile(While whileStmt) {
+        copied = new While(whileStmt.getWhileToken(), copyExpression(whileStmt.getCondition()),
+                copyBlock(whileStmt.getBody()));
+    }
+
+    @Override
+    public void visitAssignment(Assignment assignment) {
+        copied = new Assignment(assignment.getVariable(), copyExpression(assignment.getRight()));
+    }
+
+    @Override
+    public void visitBlock(Block block) {
+        copied = copyBlock(block);
+    }
+
+    @Override
+    public void visitFunction(Function function) {
+        copied = new Function(function.getName(), function.getParameters(), copyExpression(function.getBody()));
+    }
+
+    @Override
+    public Object visitArithmBinary(BinaryExpression.Arithm binaryArithm) {
+        return new BinaryExpression.Arithm(copyExpression(binaryArithm.getLeft()), binaryArithm.getOperation(),
+                copyExpression(binaryArithm.getRight()));
+    }
+
+    @Override
+    public Object visitLogicalBinary(BinaryExpression.Logical binaryLogical) {
+        return new BinaryExpression.Logical(copyExpression(binaryLogical.getLeft()), binaryLogical.getOperation(),
+                copyExpression(binaryLogical.getRight()));
+    }
+
+    @Override
+    public Object visitCall(CallExpression callExpression) {
+        List<Expression> arguments = null;
+        if (callExpression.getArguments() != null) {
+            arguments = new ArrayList<>();
+            for (Expression argument : callExpression.getArguments()) {
+                arguments.add(copyExpression(argument));
+            }
+        }
+        return new CallExpression(callExpression.getName(), arguments);
+    }
+
+    @Override
+    public Object visitIfExpr(IfExpression ifExpression) {
+        return new IfExpression(ifExpression.getIfToken(), copyExpression(ifExpression.getCondition()),
+                copyExpression(ifExpression.getThenBranch()), copyExpression(ifExpression.getElseBranch()));
+    }
+
+    @Override
+    public Object visitLiteral(Literal literal) {
+        return new Literal(literal.getValue());
+    }
+
+    @Override
+    public Object visitUnary(Unary unary) {
+        return new Unary(unary.getOperation(), copyExpression(unary.getRight()));
+    }
+
+    @Override
+    public Object visitVariable(Variable variable) {
+        return new Variable(variable.getName());
+    }
+
+    @Override
+    public Object visitInvariant(Invariant invariant) {
+        return new Invariant(copyExpression(invariant.getExpression()), invariant.getLoop());
+    }
+}
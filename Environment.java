@@ -5,51 +5,72 @@ import java.util.Map;
 
 public class Environment {
     final Environment outer;
-    private final Map<String, Object> values = new HashMap<>();
+    private final String[] names;   // variable names by slot, filled in by Resolver, null if hidden
+    private final Object[] values;  // null means the variable isn't assigned yet
 
-    Environment() {
-        outer = null;
+    Environment(String[] names) {
+        this((Environment) null, names);
     }
 
-    Environment(Environment outer) {
+    Environment(Environment outer, String[] names) {
         this.outer = outer;
+        this.names = names;
+        this.values = new Object[names.length];
     }
 
-    public Environment createInnerEnvironment() { return new Environment(this); }
-
-    public void assign(Token name, Object value) {
-        Environment owner = getOwner(name);
-        if (owner == null) { this.set(name, value); }
-        else owner.set(name, value);
+    // global environment holding values computed elsewhere, e.g. by the VM
+    Environment(String[] names, Object[] values) {
+        this.outer = null;
+        this.names = names;
+        this.values = values;
     }
 
-    private void set(Token name, Object value) {
-        values.put(name.getLexeme(), value);
+    // global environment with inputs in its first slots, see Resolver
+    static Environment global(String[] names, Object[] inputs) {
+        Environment global = new Environment(names);
+        System.arraycopy(inputs, 0, global.values, 0, inputs.length);
+        return global;
     }
 
-    // environment that contains variable
-    private Environment getOwner(Token name) {
-        if (values.containsKey(name.getLexeme())) { return this; }
-
-        if (outer != null) { return outer.getOwner(name); }
+    public Environment createInnerEnvironment(String[] names) { return new Environment(this, names); }
 
-        return null;
+    public void assign(int depth, int slot, Object value) {
+        ancestor(depth).values[slot] = value;
     }
 
-    Object get(Token name) {
+    Object get(Token name, int depth, int slot) {
+        Object value = (depth < 0) ? null : ancestor(depth).values[slot];
 
-        if (values.containsKey(name.getLexeme())) {
-            return values.get(name.getLexeme());
+        if (value == null) {
+            throw new RuntimeError(name, "Variable with this name doesn't exist.");
         }
+        return value;
+    }
+
+    // values of an enclosing environment, e.g. for code compiled by the JIT
+    Object[] valuesAt(int depth) {
+        return ancestor(depth).values;
+    }
 
-        if (outer != null) return outer.get(name);
+    private Environment ancestor(int depth) {
+        Environment env = this;
+        for (int i = 0; i < depth; ++i) {
+            env = env.outer;
+        }
+        return env;
+    }
 
-        // Unreachable error
-        throw new RuntimeError(name, "Variable with this name doesn't exist.");
+    // the variables assigned, by name
+    Map<String, Object> variables() {
+        Map<String, Object> assigned = new HashMap<>();
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] != null && names[i] != null) { assigned.put(names[i], values[i]); }
+        }
+        return assigned;
     }
 
     @Override
     public String toString() {
-        return values.toString();   // TODO
+        return variables().toString();
     }
 }
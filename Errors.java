@@ -0,0 +1,78 @@
+import token.Token;
+import token.TokenType;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Errors reported while a program is scanned, parsed and run.
+//
+// Every run has its own, so programs can be parsed and run at the same time
+// on different threads. The messages are kept, and printed as they are
+// reported if there is a stream to print them to.
+public class Errors {
+    private final PrintStream out;      // null if the messages are only kept
+    private final List<String> messages = new ArrayList<>();
+    private boolean hadError = false;
+    private boolean hadRuntimeError = false;
+    private int line = -1;              // of the first error reported on a line, -1 if there is none
+
+    public Errors() {
+        this(null);
+    }
+
+    public Errors(PrintStream out) {
+        this.out = out;
+    }
+
+    public boolean hadError() { return hadError; }
+
+    public boolean hadRuntimeError() { return hadRuntimeError; }
+
+    public List<String> getMessages() { return Collections.unmodifiableList(messages); }
+
+    public int getLine() { return line; }
+
+    void error(int line, String message) {
+        report(line, "", message);
+        hadError = true;
+    }
+
+    void error(Token token, String message) {
+        if (token.getType() == TokenType.EOF) {
+            report(token.getLine(), " at end", message);
+        } else {
+            report(token.getLine(), " at '" + token.getLexeme() + "'", message);
+        }
+        hadError = true;
+    }
+
+    // the source couldn't be read, e.g. as there is no such file
+    void unreadable(IOException failure) {
+        print("Error: Can't read the source (" + failure.getClass().getSimpleName() + ")");
+        hadError = true;
+    }
+
+    void runtimeError(RuntimeError error) {
+        report(error.token.getLine(), "", error.getMessage());
+        hadRuntimeError = true;
+    }
+
+    // anything else that stopped the program, e.g. a StackOverflowError
+    void failure(Throwable failure) {
+        print(failure.getClass().getSimpleName());
+        hadRuntimeError = true;
+    }
+
+    private void report(int line, String where, String message) {
+        if (this.line < 0) { this.line = line; }
+        print("[line " + line + "] Error" + where + ": " + message);
+    }
+
+    private void print(String message) {
+        messages.add(message);
+        if (out != null) { out.println(message); }
+    }
+}
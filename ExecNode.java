@@ -0,0 +1,25 @@
+// Base of the executable node trees run by NodeInterpreter.
+//
+// A node may replace itself in its parent with a node better suited to what
+// it has seen at run time, e.g. an addition that only ever got longs. Every
+// node with children adopts them and knows how to swap one of them out.
+abstract class ExecNode {
+    private ExecNode parent;
+
+    <T extends ExecNode> T adopt(T child) {
+        if (child != null) { ((ExecNode) child).parent = this; }
+        return child;
+    }
+
+    <T extends ExecNode> T replace(T replacement) {
+        parent.replaceChild(this, replacement);
+        ((ExecNode) replacement).parent = parent;
+        return replacement;
+    }
+
+    // children are replaced by identity; a child that was replaced already,
+    // e.g. by a recursive execution of the same node, is left alone
+    void replaceChild(ExecNode child, ExecNode replacement) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no children");
+    }
+}
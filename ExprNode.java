@@ -0,0 +1,310 @@
+import ast.Function;
+import token.Token;
+import token.TokenType;
+
+// Executable expression. Nodes that can only produce booleans override
+// executeBoolean, which lets conditions skip the boxing and the type check.
+abstract class ExprNode extends ExecNode {
+
+    abstract Object execute(Environment env);
+
+    // value of a node used where a boolean is required, errors with token and message otherwise
+    boolean executeBoolean(Environment env, Token token, String message) {
+        Object value = execute(env);
+        if (!(value instanceof Boolean)) {
+            throw new RuntimeError(token, message);
+        }
+        return (Boolean) value;
+    }
+
+    static class Literal extends ExprNode {
+        private final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        Object getValue() { return value; }
+
+        @Override
+        Object execute(Environment env) {
+            return value;
+        }
+    }
+
+    static class Variable extends ExprNode {
+        private final Token name;
+        private final int depth;
+        private final int slot;
+
+        Variable(Token name, int depth, int slot) {
+            this.name = name;
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        Token getName() { return name; }
+
+        int getDepth() { return depth; }
+
+        int getSlot() { return slot; }
+
+        @Override
+        Object execute(Environment env) {
+            return env.get(name, depth, slot);
+        }
+    }
+
+    // value kept in a hidden variable after the first execution, see ast.Invariant
+    static class Invariant extends ExprNode {
+        private final int depth;
+        private final int slot;
+        private ExprNode expression;
+
+        Invariant(int depth, int slot, ExprNode expression) {
+            this.depth = depth;
+            this.slot = slot;
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        Object execute(Environment env) {
+            Object value = env.valuesAt(depth)[slot];
+            if (value == null) {
+                value = expression.execute(env);
+                env.assign(depth, slot, value);
+            }
+            return value;
+        }
+
+        @Override
+        void replaceChild(ExecNode child, ExecNode replacement) {
+            if (expression == child) { expression = (ExprNode) replacement; }
+        }
+    }
+
+    static class Negate extends ExprNode {
+        private final Token operation;
+        private ExprNode right;
+
+        Negate(Token operation, ExprNode right) {
+            this.operation = operation;
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Environment env) {
+            Object value = right.execute(env);
+            if (!Numbers.isNumber(value)) {
+                throw new RuntimeError(operation, "Operand must be a number.");
+            }
+            return Numbers.negate(value);
+        }
+
+        @Override
+        void replaceChild(ExecNode child, ExecNode replacement) {
+            if (right == child) { right = (ExprNode) replacement; }
+        }
+    }
+
+    static class Not extends ExprNode {
+        private final Token operation;
+        private ExprNode right;
+
+        Not(Token operation, ExprNode right) {
+            this.operation = operation;
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Environment env) {
+            return executeBoolean(env, operation, null);
+        }
+
+        @Override
+        boolean executeBoolean(Environment env, Token token, String message) {
+            return !right.executeBoolean(env, operation, "Operand must be boolean");
+        }
+
+        @Override
+        void replaceChild(ExecNode child, ExecNode replacement) {
+            if (right == child) { right = (ExprNode) replacement; }
+        }
+    }
+
+    // evaluates the right operand first, like Interpreter.visitLogicalBinary
+    static class Logical extends ExprNode {
+        private final Token operation;
+        private final boolean isOr;
+        private ExprNode left;
+        private ExprNode right;
+
+        Logical(ExprNode left, Token operation, ExprNode right) {
+            this.operation = operation;
+            this.isOr = operation.getType() == TokenType.OR;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Environment env) {
+            return executeBoolean(env, operation, null);
+        }
+
+        @Override
+        boolean executeBoolean(Environment env, Token token, String message) {
+            boolean value = right.executeBoolean(env, operation, "Operand must be boolean");
+            if (value == isOr) { return value; }
+
+            return left.executeBoolean(env, operation, "Operand must be boolean");
+        }
+
+        @Override
+        void replaceChild(ExecNode child, ExecNode replacement) {
+            if (left == child) { left = (ExprNode) replacement; }
+            else if (right == child) { right = (ExprNode) replacement; }
+        }
+    }
+
+    static class If extends ExprNode {
+        private final Token ifToken;
+        private ExprNode condition;
+        private ExprNode thenBranch;
+        private ExprNode elseBranch;
+
+        If(Token ifToken, ExprNode condition, ExprNode thenBranch, ExprNode elseBranch) {
+            this.ifToken = ifToken;
+            this.condition = adopt(condition);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+
+        @Override
+        Object execute(Environment env) {
+            if (condition.executeBoolean(env, ifToken, "Condition should be boolean.")) {
+                return thenBranch.execute(env);
+            }
+            // a missing else branch fails like evaluating a null expression
+            return elseBranch.execute(env);
+        }
+
+        @Override
+        void replaceChild(ExecNode child, ExecNode replacement) {
+            if (condition == child) { condition = (ExprNode) replacement; }
+            else if (thenBranch == child) { thenBranch = (ExprNode) replacement; }
+            else if (elseBranch == child) { elseBranch = (ExprNode) replacement; }
+        }
+    }
+
+    // root of a function body, so that the body's top node can be replaced too.
+    // Tail calls in the body hand their callee back here instead of recursing.
+    static class Body extends ExprNode {
+        private final NodeInterpreter interpreter;
+        private ExprNode body;
+
+        Body(NodeInterpreter interpreter, ExprNode body) {
+            this.interpreter = interpreter;
+            this.body = adopt(body);
+        }
+
+        @Override
+        Object execute(Environment env) {
+            Object result = body.execute(env);
+            while (result == Call.TAIL) {
+                result = interpreter.tailCall.run();
+            }
+            return result;
+        }
+
+        @Override
+        void replaceChild(ExecNode child, ExecNode replacement) {
+            if (body == child) { body = (ExprNode) replacement; }
+        }
+    }
+
+    static class Call extends ExprNode {
+        // returned by a call in tail position, which left its callee in NodeInterpreter.tailCall
+        static final Object TAIL = new Object();
+
+        private final NodeInterpreter interpreter;
+        private final Token name;
+        private final Function function;
+        private final ExprNode[] arguments;
+        private final boolean tail;
+        private Body body;      // built on the first call, shared by all call sites
+        private Environment funcEnvironment;    // of a tail call, until the enclosing Body runs it
+
+        Call(NodeInterpreter interpreter, Token name, Function function, ExprNode[] arguments, boolean tail) {
+            this.interpreter = interpreter;
+            this.name = name;
+            this.function = function;
+            this.arguments = arguments;
+            this.tail = tail;
+            for (ExprNode argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        @Override
+        Object execute(Environment env) {
+            Environment funcEnvironment = new Environment(function.getLocals());
+            int[] parameterSlots = function.getParameterSlots();
+            for (int i = 0; i < arguments.length; ++i) {
+                funcEnvironment.assign(0, parameterSlots[i], arguments[i].execute(env));
+            }
+            if (interpreter.budget != null) { interpreter.budget.charge(name); }
+            if (body == null) { body = interpreter.body(function); }
+            if (tail) {
+                this.funcEnvironment = funcEnvironment;
+                interpreter.tailCall = this;
+                return TAIL;
+            }
+            return body.execute(funcEnvironment);
+        }
+
+        // the callee of a tail call, without the loop of its own Body
+        Object run() {
+            Environment env = funcEnvironment;
+            funcEnvironment = null;
+            return body.body.execute(env);
+        }
+
+        @Override
+        void replaceChild(ExecNode child, ExecNode replacement) {
+            for (int i = 0; i < arguments.length; ++i) {
+                if (arguments[i] == child) { arguments[i] = (ExprNode) replacement; }
+            }
+        }
+    }
+
+    // a call the interpreter would reject once the arguments are evaluated
+    static class Failure extends ExprNode {
+        private final Token token;
+        private final String message;
+        private final ExprNode[] arguments;
+
+        Failure(Token token, String message, ExprNode... arguments) {
+            this.token = token;
+            this.message = message;
+            this.arguments = arguments;
+            for (ExprNode argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        @Override
+        Object execute(Environment env) {
+            for (ExprNode argument : arguments) {
+                argument.execute(env);
+            }
+            throw new RuntimeError(token, message);
+        }
+
+        @Override
+        void replaceChild(ExecNode child, ExecNode replacement) {
+            for (int i = 0; i < arguments.length; ++i) {
+                if (arguments[i] == child) { arguments[i] = (ExprNode) replacement; }
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import ast.*;
+import token.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Replaces the statements and conditions of a resolved Program that have one
+// of the shapes most loops are made of with fused nodes, which the
+// Interpreter runs in one step instead of visiting every node in them:
+//
+//   X := X + 1, A := A * B     Update: the variable is read and written in place
+//   while I < 10, if A != B    Comparison: the operands are read without visiting them
+//
+// The operands have to be literals or variables, which can't do anything
+// but fail to be read, and are read in the same order as before, so a
+// program fails the same way as without fusing, from the same line. The
+// variable an Update reads has to be the one it assigns, in the same scope.
+//
+// Fusing builds a new tree around the nodes it keeps, like the optimizers,
+// so it can run on a tree that is shared. Function bodies are left alone.
+class Fuser {
+
+    Program fuse(Program program) {
+        return new Program(program.getFunctions(), fuseBlock(program.getBody()));
+    }
+
+    private Block fuseBlock(Block block) {
+        List<Statement> statements = new ArrayList<>();
+        for (Statement statement : block.getStatements()) {
+            statements.add(fuse(statement));
+        }
+        Block fused = new Block(statements);
+        fused.setLocals(block.getLocals());
+        return fused;
+    }
+
+    private Statement fuse(Statement statement) {
+        if (statement instanceof Block) { return fuseBlock((Block) statement); }
+        if (statement instanceof While) {
+            While whileStmt = (While) statement;
+            return new While(whileStmt.getWhileToken(), fuseCondition(whileStmt.getCondition()),
+                    fuseBlock(whileStmt.getBody()));
+        }
+        if (statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) statement;
+            Block elseBranch = ifStatement.getElseBranch();
+            return new IfStatement(ifStatement.getIfToken(), fuseCondition(ifStatement.getCondition()),
+                    fuseBlock(ifStatement.getThenBranch()), (elseBranch == null) ? null : fuseBlock(elseBranch));
+        }
+        if (statement instanceof Assignment) { return fuseAssignment((Assignment) statement); }
+        return statement;
+    }
+
+    private static Statement fuseAssignment(Assignment assignment) {
+        if (!(assignment.getRight() instanceof BinaryExpression.Arithm)) { return assignment; }
+        BinaryExpression.Arithm operation = (BinaryExpression.Arithm) assignment.getRight();
+        if (!isArithmetic(operation.getOperation().getType())) { return assignment; }
+
+        Expression left = operation.getLeft();
+        Expression right = operation.getRight();
+        if (isTarget(left, assignment) && isOperand(right)) {
+            return new Update(assignment, (Variable) left, right, true);
+        }
+        if (isTarget(right, assignment) && isOperand(left)) {
+            return new Update(assignment, (Variable) right, left, false);
+        }
+        return assignment;
+    }
+
+    private static Expression fuseCondition(Expression condition) {
+        if (!(condition instanceof BinaryExpression.Arithm)) { return condition; }
+        BinaryExpression.Arithm comparison = (BinaryExpression.Arithm) condition;
+        if (isArithmetic(comparison.getOperation().getType())) { return condition; }
+
+        if (isOperand(comparison.getLeft()) && isOperand(comparison.getRight())
+                && (comparison.getLeft() instanceof Variable || comparison.getRight() instanceof Variable)) {
+            return new Comparison(comparison);
+        }
+        return condition;
+    }
+
+    private static boolean isArithmetic(TokenType type) {
+        return type == TokenType.PLUS || type == TokenType.MINUS
+                || type == TokenType.ASTERISK || type == TokenType.SLASH;
+    }
+
+    // whether expression reads the variable assignment assigns
+    private static boolean isTarget(Expression expression, Assignment assignment) {
+        if (!(expression instanceof Variable)) { return false; }
+        Variable variable = (Variable) expression;
+        return variable.getDepth() >= 0
+                && variable.getDepth() == assignment.getDepth() && variable.getSlot() == assignment.getSlot();
+    }
+
+    private static boolean isOperand(Expression expression) {
+        return expression instanceof Literal || expression instanceof Variable;
+    }
+}
@@ -0,0 +1,622 @@
+import ast.*;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Front end for editors, which need the tree of the same source again after
+// every change to it.
+//
+// The source, its TokenBuffer and its Program are kept between edits. An
+// edit is scanned again from the end of the last token before it up to the
+// first token after it that starts where an old token started: from there
+// on, the lexer would find the old tokens again. Then only the innermost
+// Function or Statement around the tokens that changed is parsed again, and
+// a new Program is built around it from the old subtrees. If that one
+// doesn't end on the token it ended on before, e.g. after an "end" was typed
+// into a block, the one around it is tried, up to parsing everything again.
+//
+// The functions and the statements of the program body are units: the
+// spans of the nodes in a unit count from its first token, and the lines
+// of their tokens from its first line (see TokenBuffer.Anchor), so the
+// units after an edit move with the tokens without being changed. Where
+// the units start is kept in a Fenwick tree. An edit that adds or removes
+// lines parses the unit it is in again, so its tokens count from its first
+// line again. The source and the tokens have a gap where the last edit was.
+// An edit costs about as much as the unit it is in and the distance to the
+// edit before, not as much as the source.
+//
+// Text in which errors were reported is scanned and parsed again with the
+// next edit, so its errors are reported again as with a full parse.
+public class IncrementalParser {
+    private final Errors errors;
+    private final Text text;
+    private String source;          // text as a String, null until asked for after an edit
+    private TokenBuffer tokens;
+    private Program program;
+    private Map<Node, int[]> spans = new IdentityHashMap<>();     // first token and the one after the last of the nodes in units, from the first token of their unit
+    private Unit[] units = new Unit[0];     // the functions and then the statements of the body that were parsed
+    private int functionUnits = 0;          // how many of the units are functions
+    private Starts starts = new Starts(new int[0]);
+    private int dirtyStart = -1;    // offsets of the first and after the last character with errors, -1 if none
+    private int dirtyEnd = -1;
+    private int dirtyFirst = -1;    // first and last token a parse error was reported at, -1 if none
+    private int dirtyLast = -1;
+
+    public IncrementalParser(String source) {
+        this(source, new Errors(System.err));
+    }
+
+    // errors of all edits are reported to errors
+    public IncrementalParser(String source, Errors errors) {
+        this.errors = errors;
+        this.text = new Text(source);
+        this.source = source;
+        this.tokens = new Lexer(source, errors).scanBuffer();
+        parseAll();
+    }
+
+    public String getSource() {
+        if (source == null) { source = text.toString(); }
+        return source;
+    }
+
+    // null if it couldn't be parsed at all
+    public Program getProgram() { return program; }
+
+    public boolean hasErrors() { return dirtyStart >= 0; }
+
+    // replaces removed characters at offset of the source with text
+    public Program edit(int offset, int removed, String text) {
+        int chars = text.length() - removed;
+
+        // the text that changed and the text with errors, in the old source
+        int start = offset;
+        int end = offset + removed;
+        if (dirtyStart >= 0) {
+            start = Math.min(start, dirtyStart);
+            end = Math.max(end, dirtyEnd);
+        }
+
+        // a token ending right before the edit could go on into it
+        int before = tokens.lastEndingBefore(start);
+        this.text.replace(offset, removed, text);
+        source = null;
+        Lexer lexer = (before < 0) ? new Lexer(this.text.reader(0), 0, 1, errors)
+                : new Lexer(this.text.reader(tokens.end(before)), tokens.end(before), tokens.line(before), errors);
+        TokenBuffer fresh = new TokenBuffer(tokens);
+        int resumed;    // old token the lexer found again
+        while (true) {
+            lexer.scanInto(fresh);
+            int last = fresh.size() - 1;
+            if (fresh.start(last) >= end + chars) {
+                resumed = tokens.find(fresh.start(last) - chars);
+                if (resumed >= 0) { break; }
+            }
+        }
+        int lines = fresh.line(fresh.size() - 1) - tokens.line(resumed);
+        fresh.truncate(fresh.size() - 1);
+
+        // tokens scanned again as they were
+        int from = before + 1;
+        int skip = 0;
+        while (skip < fresh.size() && from < resumed && fresh.same(skip, tokens, from)) {
+            ++skip;
+            ++from;
+        }
+        int to = resumed;
+        int shift = (fresh.size() - skip) - (to - from);
+
+        // tokens to parse again, in the old buffer; an error can be reported
+        // at the first token after a construct, so a node reporting it again
+        // has to start before it
+        int first = (dirtyFirst >= 0) ? Math.min(from, dirtyFirst - 1) : from;
+        int last = (dirtyFirst >= 0) ? Math.max(to, dirtyLast + 1) : to;
+        boolean changed = first < last || skip < fresh.size();
+
+        // the unit to parse again and the nodes in it down to the innermost
+        // one around the change; lines added or removed in a unit take the
+        // whole unit, tokens that changed outside of every unit everything
+        int unit = -1;
+        List<Node> path = null;
+        if (program != null && changed) {
+            unit = holder(first, last);
+            path = (unit < 0) ? null : path(unit, first, last);
+            if (path != null && lines != 0) { path = path.subList(0, 1); }
+        } else if (program != null && lines != 0) {
+            unit = starts.unitAt(to - 1);
+            if (unit >= 0 && to < starts.start(unit) + spans.get(units[unit].node)[1]) {
+                path = new ArrayList<>();
+                path.add(units[unit].node);
+            } else {
+                unit = -1;
+            }
+        }
+
+        // where the nodes of path start before the spans move: one
+        // starting right after the edit starts with what was inserted
+        int[] pathStarts = (path == null) ? null : new int[path.size()];
+        for (int i = 0; path != null && i < pathStarts.length; ++i) {
+            pathStarts[i] = starts.start(unit) + spans.get(path.get(i))[0];
+        }
+        tokens.replace(from, to, fresh, skip, chars, lines);
+
+        if (program == null || (changed && path == null)) {
+            parseAll();
+        } else if (path != null) {
+            move(unit, to, shift);
+            parse(unit, path, pathStarts);
+        } else {
+            errors(null);
+        }
+        return program;
+    }
+
+    private void parseAll() {
+        for (Unit unit : units) {
+            unit.retire();
+        }
+        // every unit counts its lines from its first one, the anchor of the
+        // tokens from where it starts on
+        Map<Integer, Unit> anchors = new HashMap<>();
+        Map<Node, int[]> parsedSpans = new IdentityHashMap<>();
+        Parser parser = new Parser(tokens, errors);
+        parser.keepSpans(parsedSpans);
+        parser.keepUnits(first -> {
+            Unit unit = new Unit(tokens.line(first));
+            anchors.put(first, unit);
+            tokens.anchor(unit);
+        });
+        try {
+            program = parser.parseProgram();
+        } finally {
+            tokens.anchor(null);
+        }
+
+        List<Unit> found = new ArrayList<>();
+        if (program != null && program.getFunctions() != null) {
+            addUnits(program.getFunctions(), parsedSpans, anchors, found);
+        }
+        functionUnits = found.size();
+        if (program != null && program.getBody() != null) {
+            addUnits(program.getBody().getStatements(), parsedSpans, anchors, found);
+        }
+
+        units = found.toArray(new Unit[0]);
+        int[] first = new int[units.length];
+        spans.clear();
+        for (int i = 0; i < units.length; ++i) {
+            units[i].index = i;
+            first[i] = parsedSpans.get(units[i].node)[0];
+            keep(units[i].node, parsedSpans, first[i]);
+        }
+        starts = new Starts(first);
+        errors(parser);
+    }
+
+    private static void addUnits(List<? extends Node> nodes, Map<Node, int[]> parsedSpans, Map<Integer, Unit> anchors,
+                                 List<Unit> found) {
+        for (int position = 0; position < nodes.size(); ++position) {
+            Node node = nodes.get(position);
+            // what failed to parse is null, its tokens aren't in any unit
+            if (node == null) { continue; }
+            Unit unit = anchors.get(parsedSpans.get(node)[0]);
+            unit.node = node;
+            unit.position = position;
+            found.add(unit);
+        }
+    }
+
+    // ---- finding what to parse again
+
+    // the unit that holds the old tokens from first up to last, with the
+    // token after it unchanged, -1 if none does
+    private int holder(int first, int last) {
+        int unit = starts.unitAt(first);
+        if (unit < 0) { return -1; }
+        int base = starts.start(unit);
+        // "program" decides by the first token whether functions follow
+        if (unit < functionUnits && base == first) { return -1; }
+        return holds(units[unit].node, first - base, last - base) ? unit : -1;
+    }
+
+    // nodes from the node of unit down to the innermost one that holds the
+    // old tokens from first up to last
+    private List<Node> path(int unit, int first, int last) {
+        List<Node> path = new ArrayList<>();
+        path.add(units[unit].node);
+        if (unit < functionUnits) { return path; }
+
+        int base = starts.start(unit);
+        first -= base;
+        last -= base;
+        Statement statement = (Statement) units[unit].node;
+        while (statement != null) {
+            Block inner = null;
+            if (statement instanceof IfStatement) {
+                IfStatement ifStatement = (IfStatement) statement;
+                if (holds(ifStatement.getThenBranch(), first, last)) {
+                    inner = ifStatement.getThenBranch();
+                } else if (holds(ifStatement.getElseBranch(), first, last)) {
+                    inner = ifStatement.getElseBranch();
+                }
+            } else if (statement instanceof While && holds(((While) statement).getBody(), first, last)) {
+                inner = ((While) statement).getBody();
+            }
+            if (inner == null) { break; }
+            path.add(inner);
+            statement = holder(inner.getStatements(), first, last);
+            if (statement != null) { path.add(statement); }
+        }
+        return path;
+    }
+
+    // the one of nodes that holds the tokens from first up to last, null if
+    // none does; nodes are in the order of their tokens
+    private <T extends Node> T holder(List<T> nodes, int first, int last) {
+        T found = null;
+        int low = 0;
+        int high = nodes.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int probe = middle;
+            // what failed to parse is null and has no span
+            while (probe >= low && nodes.get(probe) == null) { --probe; }
+            if (probe < low) {
+                low = middle + 1;
+            } else if (spans.get(nodes.get(probe))[0] <= first) {
+                found = nodes.get(probe);
+                low = middle + 1;
+            } else {
+                high = probe - 1;
+            }
+        }
+        return (found != null && holds(found, first, last)) ? found : null;
+    }
+
+    private boolean holds(Node node, int first, int last) {
+        int[] span = (node == null) ? null : spans.get(node);
+        return span != null && span[0] <= first && last <= span[1];
+    }
+
+    // moves the tokens of unit from the old token to on, and the units after it, by shift
+    private void move(int unit, int to, int shift) {
+        if (shift == 0) { return; }
+        int relative = to - starts.start(unit);
+        for (int[] span : spansIn(units[unit].node)) {
+            if (span[0] >= relative) { span[0] += shift; }
+            if (span[1] >= relative) { span[1] += shift; }
+        }
+        starts.move(unit, shift);
+    }
+
+    // ---- parsing again
+
+    // parses the innermost node of path again, or the one around it if it
+    // doesn't end where it did, and builds the nodes around it anew up to
+    // the node of unit
+    private void parse(int unit, List<Node> path, int[] pathStarts) {
+        int base = starts.start(unit);
+        for (int depth = path.size() - 1; depth >= 0; --depth) {
+            Node old = path.get(depth);
+            int end = base + spans.get(old)[1];
+            // a unit parsed again counts its lines from its first one again
+            Unit anchor = (depth == 0) ? new Unit(tokens.line(base)) : units[unit];
+
+            // errors are only reported for the node that fits in again
+            Map<Node, int[]> parsedSpans = new IdentityHashMap<>();
+            Parser parser = new Parser(tokens, errors);
+            parser.quiet(true);
+            parser.keepSpans(parsedSpans);
+            Node parsed = parse(parser, old, pathStarts[depth], anchor);
+            if (parser.position() != end || (depth == 0 && parsed == null)) { continue; }
+
+            if (parser.firstError() >= 0) {
+                parsedSpans.clear();
+                parser = new Parser(tokens, errors);
+                parser.keepSpans(parsedSpans);
+                parsed = parse(parser, old, pathStarts[depth], anchor);
+            }
+            forget(old);
+            keep(parsed, parsedSpans, base);
+            for (int outer = depth - 1; outer >= 0; --outer) {
+                Node node = path.get(outer);
+                Node rebuilt = rebuild(node, path.get(outer + 1), parsed);
+                int[] span = spans.remove(node);
+                spans.put(rebuilt, new int[] {pathStarts[outer] - base, span[1]});
+                parsed = rebuilt;
+            }
+            replace(unit, parsed, anchor);
+            errors(parser);
+            return;
+        }
+        parseAll();
+    }
+
+    private Node parse(Parser parser, Node old, int start, Unit anchor) {
+        tokens.anchor(anchor);
+        try {
+            if (old instanceof Function) { return parser.parseFunctionAt(start); }
+            if (old instanceof Block) { return parser.parseBlockAt(start); }
+            return parser.parseStatementAt(start);
+        } finally {
+            tokens.anchor(null);
+        }
+    }
+
+    // node with its child old replaced by parsed
+    private static Node rebuild(Node node, Node old, Node parsed) {
+        if (node instanceof Block) {
+            return new Block(replaced(((Block) node).getStatements(), old, (Statement) parsed));
+        }
+        if (node instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) node;
+            boolean then = ifStatement.getThenBranch() == old;
+            return new IfStatement(ifStatement.getIfToken(), ifStatement.getCondition(),
+                    then ? (Block) parsed : ifStatement.getThenBranch(),
+                    then ? ifStatement.getElseBranch() : (Block) parsed);
+        }
+        While whileStmt = (While) node;
+        return new While(whileStmt.getWhileToken(), whileStmt.getCondition(), (Block) parsed);
+    }
+
+    private static <T> List<T> replaced(List<T> list, Object old, Object parsed) {
+        List<T> copy = new ArrayList<>(list);
+        for (int i = 0; i < copy.size(); ++i) {
+            if (copy.get(i) == old) {
+                @SuppressWarnings("unchecked") T node = (T) parsed;
+                copy.set(i, node);
+                break;
+            }
+        }
+        return copy;
+    }
+
+    // puts node in unit, with its tokens counting their lines from anchor,
+    // and builds the program around it anew
+    private void replace(int unit, Node node, Unit anchor) {
+        Unit old = units[unit];
+        if (anchor != old) {
+            old.retire();
+            anchor.index = unit;
+            anchor.position = old.position;
+            units[unit] = anchor;
+        }
+        anchor.node = node;
+
+        if (unit < functionUnits) {
+            List<Function> functions = new ArrayList<>(program.getFunctions());
+            functions.set(anchor.position, (Function) node);
+            program = new Program(functions, program.getBody());
+        } else {
+            List<Statement> statements = new ArrayList<>(program.getBody().getStatements());
+            statements.set(anchor.position, (Statement) node);
+            program = new Program(program.getFunctions(), new Block(statements));
+        }
+    }
+
+    // keeps the spans of node and of the nodes in it from parsedSpans,
+    // counting from the token base
+    private void keep(Node node, Map<Node, int[]> parsedSpans, int base) {
+        for (Node inner : nodesIn(node)) {
+            int[] span = parsedSpans.get(inner);
+            if (span != null) { spans.put(inner, new int[] {span[0] - base, span[1] - base}); }
+        }
+    }
+
+    // drops the spans of node and of the nodes in it
+    private void forget(Node node) {
+        for (Node inner : nodesIn(node)) {
+            spans.remove(inner);
+        }
+    }
+
+    private List<int[]> spansIn(Node node) {
+        List<int[]> found = new ArrayList<>();
+        for (Node inner : nodesIn(node)) {
+            int[] span = spans.get(inner);
+            if (span != null) { found.add(span); }
+        }
+        return found;
+    }
+
+    // node and the blocks and statements in it that can have a span
+    private static List<Node> nodesIn(Node node) {
+        List<Node> nodes = new ArrayList<>();
+        collect(node, nodes);
+        return nodes;
+    }
+
+    private static void collect(Node node, List<Node> nodes) {
+        if (node == null) { return; }
+        nodes.add(node);
+        if (node instanceof Block) {
+            for (Statement statement : ((Block) node).getStatements()) {
+                collect(statement, nodes);
+            }
+        } else if (node instanceof IfStatement) {
+            collect(((IfStatement) node).getThenBranch(), nodes);
+            collect(((IfStatement) node).getElseBranch(), nodes);
+        } else if (node instanceof While) {
+            collect(((While) node).getBody(), nodes);
+        }
+    }
+
+    // keeps where the errors reported by parser and the lexer are, to scan
+    // and parse that text again with the next edit
+    private void errors(Parser parser) {
+        dirtyFirst = (parser == null) ? -1 : parser.firstError();
+        dirtyLast = (parser == null) ? -1 : parser.lastError();
+        dirtyStart = -1;
+        dirtyEnd = -1;
+        if (tokens.firstError() >= 0) {
+            dirtyStart = tokens.firstError();
+            dirtyEnd = tokens.lastError() + 1;
+        }
+        if (dirtyFirst >= 0) {
+            int start = tokens.start(dirtyFirst);
+            int end = tokens.end(dirtyLast);
+            dirtyStart = (dirtyStart < 0) ? start : Math.min(dirtyStart, start);
+            dirtyEnd = Math.max(dirtyEnd, end);
+        }
+    }
+
+    // ---- units
+
+    // a function or statement of the program body; its tokens count their
+    // lines from its first line
+    private final class Unit extends TokenBuffer.Anchor {
+        Node node;
+        int index = -1;     // in units, -1 while it isn't in there
+        int position;       // in the functions or statements of the program
+        private int line;   // first line while it isn't in units
+
+        Unit(int line) {
+            this.line = line;
+        }
+
+        @Override
+        int line() {
+            return (index < 0) ? line : tokens.line(starts.start(index));
+        }
+
+        // takes the unit out of units; the tokens of its nodes, which are no
+        // longer in the program, keep the lines they have now
+        void retire() {
+            line = line();
+            index = -1;
+        }
+    }
+
+    // first tokens of the units: where the first one starts, and the tokens
+    // from the start of every unit to the start of the next in a Fenwick
+    // tree, so moving the units after one and finding the unit at a token
+    // take log(units) steps
+    private static final class Starts {
+        private int first;
+        private final int[] tree;   // indexed from 1
+
+        Starts(int[] starts) {
+            first = (starts.length == 0) ? 0 : starts[0];
+            tree = new int[starts.length + 1];
+            for (int i = 1; i < starts.length; ++i) {
+                tree[i] += starts[i] - starts[i - 1];
+                int parent = i + (i & -i);
+                if (parent < tree.length) { tree[parent] += tree[i]; }
+            }
+        }
+
+        int start(int unit) {
+            int start = first;
+            for (int i = unit; i > 0; i -= i & -i) {
+                start += tree[i];
+            }
+            return start;
+        }
+
+        // moves the units after unit by shift
+        void move(int unit, int shift) {
+            for (int i = unit + 1; i < tree.length; i += i & -i) {
+                tree[i] += shift;
+            }
+        }
+
+        // the last unit starting at or before the token index, -1 if none does
+        int unitAt(int index) {
+            int units = tree.length - 1;
+            if (units == 0 || index < first) { return -1; }
+            int rest = index - first;
+            int unit = 0;
+            for (int step = Integer.highestOneBit(units); step > 0; step >>= 1) {
+                if (unit + step <= units && tree[unit + step] <= rest) {
+                    unit += step;
+                    rest -= tree[unit];
+                }
+            }
+            return Math.min(unit, units - 1);
+        }
+    }
+
+    // ---- the source
+
+    // characters with a gap where the last edit was, so an edit only moves
+    // the characters between it and the edit before
+    private static final class Text {
+        private char[] chars;
+        private int gap;
+        private int gapLength;
+
+        Text(String source) {
+            chars = new char[source.length() + 1024];
+            source.getChars(0, source.length(), chars, 0);
+            gap = source.length();
+            gapLength = chars.length - gap;
+        }
+
+        int length() { return chars.length - gapLength; }
+
+        void replace(int offset, int removed, String text) {
+            moveGap(offset + removed);
+            gap = offset;
+            gapLength += removed;
+            if (gapLength < text.length()) { grow(text.length()); }
+            text.getChars(0, text.length(), chars, gap);
+            gap += text.length();
+            gapLength -= text.length();
+        }
+
+        private void moveGap(int index) {
+            if (index < gap) {
+                System.arraycopy(chars, index, chars, index + gapLength, gap - index);
+            } else if (index > gap) {
+                System.arraycopy(chars, gap + gapLength, chars, gap, index - gap);
+            }
+            gap = index;
+        }
+
+        private void grow(int needed) {
+            int after = chars.length - gap - gapLength;
+            char[] grown = new char[Math.max(chars.length * 2, length() + needed + 1024)];
+            System.arraycopy(chars, 0, grown, 0, gap);
+            System.arraycopy(chars, chars.length - after, grown, grown.length - after, after);
+            gapLength = grown.length - gap - after;
+            chars = grown;
+        }
+
+        // copies count characters from offset on into buffer at at
+        private void copy(int offset, char[] buffer, int at, int count) {
+            int before = Math.max(0, Math.min(count, gap - offset));
+            System.arraycopy(chars, offset, buffer, at, before);
+            System.arraycopy(chars, offset + before + gapLength, buffer, at + before, count - before);
+        }
+
+        // reads the characters from offset on
+        Reader reader(int offset) {
+            return new Reader() {
+                private int position = offset;
+
+                @Override
+                public int read(char[] buffer, int at, int count) {
+                    if (position >= length()) { return -1; }
+                    count = Math.min(count, length() - position);
+                    copy(position, buffer, at, count);
+                    position += count;
+                    return count;
+                }
+
+                @Override
+                public void close() { }
+            };
+        }
+
+        @Override
+        public String toString() {
+            char[] copy = new char[length()];
+            copy(0, copy, 0, copy.length);
+            return new String(copy);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+// Replaces calls of small functions in the statements of a resolved Program
+// with the bodies of the functions, with --optimize.
+//
+// A body is a single expression that sees nothing but its parameters, so it
+// can be evaluated where the call was with every parameter replaced by its
+// argument. That is only done for arguments that are literals or resolved
+// variables: those can't fail, a resolved variable is always assigned, so
+// it makes no difference that they are evaluated where the body uses them,
+// as often as it does, instead of once before it. The body keeps its tokens,
+// so an error in it is reported from the line it was before.
+//
+// Calls in an inlined body are inlined as well, up to MAX_DEPTH functions
+// deep and never into a body of the same function, so a recursive function
+// is inlined once at most. A call stays a call if its body has more than
+// MAX_SIZE nodes after inlining, and so do calls that fail: calls of
+// unknown functions and calls with the wrong number of arguments.
+//
+// Function bodies themselves are left as they are, for the calls that stay.
+public class Inliner implements Visitor {
+    static final int MAX_SIZE = 24;     // nodes of an inlined body at most
+    static final int MAX_DEPTH = 4;     // functions inlined into each other at most
+
+    private Statement inlined;          // result of the last statement visited
+    private Expression[] arguments;     // by parameter slot, while a body is being inlined, null otherwise
+    private final Set<Function> active = Collections.newSetFromMap(new IdentityHashMap<>());   // functions being inlined
+
+    public Program inline(Program program) {
+        return new Program(program.getFunctions(), inlineBlock(program.getBody()));
+    }
+
+    private Block inlineBlock(Block block) {
+        List<Statement> statements = new ArrayList<>();
+        for (Statement statement : block.getStatements()) {
+            statement.accept(this);
+            statements.add(inlined);
+        }
+        Block result = new Block(statements);
+        result.setLocals(block.getLocals());
+        return result;
+    }
+
+    private Expression inline(Expression expression) {
+        return (expression == null) ? null : (Expression) expression.accept(this);
+    }
+
+    @Override
+    public void visitIfStmt(IfStatement ifStatement) {
+        Block elseBranch = ifStatement.getElseBranch();
+        inlined = new IfStatement(ifStatement.getIfToken(), inline(ifStatement.getCondition()),
+                inlineBlock(ifStatement.getThenBranch()), (elseBranch == null) ? null : inlineBlock(elseBranch));
+    }
+
+    @Override
+    public void visitWhile(While whileStmt) {
+        inlined = new While(whileStmt.getWhileToken(), inline(whileStmt.getCondition()),
+                inlineBlock(whileStmt.getBody()));
+    }
+
+    @Override
+    public void visitAssignment(Assignment assignment) {
+        Assignment result = new Assignment(assignment.getVariable(), inline(assignment.getRight()));
+        result.resolve(assignment.getDepth(), assignment.getSlot());
+        inlined = result;
+    }
+
+    @Override
+    public void visitBlock(Block block) {
+        inlined = inlineBlock(block);
+    }
+
+    @Override
+    public void visitFunction(Function function) {
+        inlined = function;
+    }
+
+    @Override
+    public Object visitArithmBinary(BinaryExpression.Arithm binaryArithm) {
+        return new BinaryExpression.Arithm(inline(binaryArithm.getLeft()), binaryArithm.getOperation(),
+                inline(binaryArithm.getRight()));
+    }
+
+    @Override
+    public Object visitLogicalBinary(BinaryExpression.Logical binaryLogical) {
+        return new BinaryExpression.Logical(inline(binaryLogical.getLeft()), binaryLogical.getOperation(),
+                inline(binaryLogical.getRight()));
+    }
+
+    @Override
+    public Object visitCall(CallExpression callExpression) {
+        List<Expression> values = null;
+        if (callExpression.getArguments() != null) {
+            values = new ArrayList<>();
+            for (Expression argument : callExpression.getArguments()) {
+                values.add(inline(argument));
+            }
+        }
+        CallExpression call = new CallExpression(callExpression.getName(), values);
+        call.bind(callExpression.getFunction());
+
+        Function function = callExpression.getFunction();
+        if (!canInline(function, values)) { return call; }
+
+        Expression[] enclosing = arguments;
+        arguments = new Expression[function.getLocals().length];
+        int[] parameterSlots = function.getParameterSlots();
+        for (int i = 0; i < parameterSlots.length; ++i) {
+            // a parameter named twice is the last argument, as in a call
+            arguments[parameterSlots[i]] = values.get(i);
+        }
+        active.add(function);
+        try {
+            Expression body = inline(function.getBody());
+            return (size(body) <= MAX_SIZE) ? body : call;
+        } finally {
+            active.remove(function);
+            arguments = enclosing;
+        }
+    }
+
+    private boolean canInline(Function function, List<Expression> values) {
+        if (function == null || values == null || function.getParameters() == null) { return false; }
+        if (values.size() != function.getParameterSlots().length) { return false; }
+        if (active.contains(function) || active.size() >= MAX_DEPTH) { return false; }
+        if (size(function.getBody()) > MAX_SIZE) { return false; }
+
+        for (Expression value : values) {
+            if (!(value instanceof Literal || (value instanceof Variable && ((Variable) value).getDepth() >= 0))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Object visitIfExpr(IfExpression ifExpression) {
+        return new IfExpression(ifExpression.getIfToken(), inline(ifExpression.getCondition()),
+                inline(ifExpression.getThenBranch()), inline(ifExpression.getElseBranch()));
+    }
+
+    @Override
+    public Object visitLiteral(Literal literal) {
+        return literal;
+    }
+
+    @Override
+    public Object visitUnary(Unary unary) {
+        return new Unary(unary.getOperation(), inline(unary.getRight()));
+    }
+
+    @Override
+    public Object visitVariable(Variable variable) {
+        // in a body every variable that is resolved is a parameter
+        if (arguments != null && variable.getDepth() == 0) { return arguments[variable.getSlot()]; }
+        return variable;
+    }
+
+    @Override
+    public Object visitInvariant(Invariant invariant) {
+        Invariant result = new Invariant(inline(invariant.getExpression()), invariant.getLoop());
+        result.resolve(invariant.getDepth(), invariant.getSlot());
+        return result;
+    }
+
+    // nodes in expression
+    static int size(Expression expression) {
+        if (expression == null) { return 0; }
+        if (expression instanceof BinaryExpression) {
+            BinaryExpression binary = (BinaryExpression) expression;
+            return 1 + size(binary.getLeft()) + size(binary.getRight());
+        }
+        if (expression instanceof Unary) { return 1 + size(((Unary) expression).getRight()); }
+        if (expression instanceof IfExpression) {
+            IfExpression ifExpression = (IfExpression) expression;
+            return 1 + size(ifExpression.getCondition()) + size(ifExpression.getThenBranch())
+                    + size(ifExpression.getElseBranch());
+        }
+        if (expression instanceof CallExpression) {
+            int size = 1;
+            List<Expression> arguments = ((CallExpression) expression).getArguments();
+            if (arguments != null) {
+                for (Expression argument : arguments) {
+                    size += size(argument);
+                }
+            }
+            return size;
+        }
+        if (expression instanceof Invariant) { return 1 + size(((Invariant) expression).getExpression()); }
+        return 1;
+    }
+}
@@ -2,20 +2,65 @@ import ast.*;
 import token.Token;
 import token.TokenType;
 
-import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Interpreter implements Visitor{
 
-    private List<Function> functions = new ArrayList<>();
-    private final Environment globalEnv = new Environment();
-    private Environment environment = globalEnv;
+    private final Map<String, Function> functions;
+    private Environment environment;
+    private final Jit jit;      // null unless hot code should be compiled
+    private Memo memo;          // null unless call results should be cached
+    private Parallel parallel;  // null unless operands may be evaluated in parallel
+    private Profiler profiler;  // null unless statements and calls should be counted and timed
+    private Budget budget;      // null unless loop iterations and calls are limited
+    private int depth;          // calls in progress, for Parallel
+
+    public Interpreter() {
+        this(false);
+    }
+
+    public Interpreter(boolean useJit) {
+        functions = new HashMap<>();
+        jit = useJit ? new Jit(this) : null;
+    }
+
+    // evaluates expressions for a Parallel task, in the environment of parent
+    private Interpreter(Interpreter parent) {
+        functions = parent.functions;
+        environment = parent.environment;
+        jit = null;
+        parallel = parent.parallel;
+        depth = parent.depth;
+    }
+
+    public void useMemo(Memo memo) {
+        this.memo = memo;
+    }
+
+    public void useProfiler(Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    void useBudget(Budget budget) {
+        this.budget = budget;
+    }
+
+    // the budget compiled code charges as well, null if there is none
+    Budget getBudget() { return budget; }
+
+    // neither the JIT, the memo, the profiler nor the budget are shared between threads,
+    // parallel evaluation is skipped when one of them is used
+    void useParallel(Parallel parallel) {
+        this.parallel = parallel;
+    }
 
     @Override
     public void visitIfStmt(IfStatement ifStatement) {
         Object condition = evaluate(ifStatement.getCondition());
-        if (!(condition instanceof Boolean)) {
+        if (!ifStatement.isTypeSafe() && !(condition instanceof Boolean)) {
             throw new RuntimeError(ifStatement.getIfToken(), "Condition should be boolean.");
         }
         if (isTrue(condition)) { execute(ifStatement.getThenBranch());}
@@ -25,17 +70,27 @@ public class Interpreter implements Visitor{
     }
 
     public Environment interpret(Program program) {
+        return interpret(program, new Errors(System.err));
+    }
+
+    public Environment interpret(Program program, Errors errors) {
+        return interpret(program, new Object[0], errors);
+    }
+
+    // inputs are the values of the variables the program was resolved with as inputs
+    public Environment interpret(Program program, Object[] inputs, Errors errors) {
+        environment = Environment.global(program.getBody().getLocals(), inputs);
         try {
             execProgram(program);
         } catch (RuntimeError error) {
-            SIPL.runtimeError(error);
+            errors.runtimeError(error);
         }
         return environment;
     }
     private void execProgram(Program program) {
         if (program.getFunctions() != null) {
             for (Function function : program.getFunctions()) {
-                execute(function);
+                function.accept(this);
             }
         }
         for (Statement statement : program.getBody().getStatements()) {
@@ -45,16 +100,32 @@ public class Interpreter implements Visitor{
 
     @Override
     public void visitWhile(While whileStmt) {
+        if (jit != null && jit.loop(whileStmt) != null) {
+            jit.loop(whileStmt).run(null, environment);
+            return;
+        }
+
         Object condition = evaluate(whileStmt.getCondition());
-        if (!(condition instanceof Boolean)) {
+        if (!whileStmt.isTypeSafe() && !(condition instanceof Boolean)) {
             throw new RuntimeError(whileStmt.getWhileToken(), "Condition must be boolean");
         }
 
+        int iterations = 0;
         while (isTrue(condition)) {
+            if (budget != null) { budget.charge(whileStmt.getWhileToken()); }
             execute(whileStmt.getBody());
 
+            if (jit != null && ++iterations == Jit.LOOP_THRESHOLD) {
+                // the compiled loop carries on from the next condition check
+                JitCode code = jit.compileLoop(whileStmt);
+                if (code != null) {
+                    code.run(null, environment);
+                    return;
+                }
+            }
+
             condition = evaluate(whileStmt.getCondition());
-            if (!(condition instanceof Boolean)) {
+            if (!whileStmt.isTypeSafe() && !(condition instanceof Boolean)) {
                 throw new RuntimeError(whileStmt.getWhileToken(), "Condition must be boolean");
             }
         }
@@ -64,64 +135,118 @@ public class Interpreter implements Visitor{
     @Override
     public void visitAssignment(Assignment assignment) {
         Object value = evaluate(assignment.getRight());
-        environment.assign(assignment.getVariable(), value);
+        environment.assign(assignment.getDepth(), assignment.getSlot(), value);
     }
 
     @Override
     public void visitBlock(Block block) {
-        executeBody(block.getStatements(), environment.createInnerEnvironment());
+        executeBody(block.getStatements(), environment.createInnerEnvironment(block.getLocals()));
     }
 
     @Override
     public void visitFunction(Function function) {
-        functions.add(function);
+        functions.put(function.getName().getLexeme(), function);
     }
 
     @Override
     public Object visitArithmBinary(BinaryExpression.Arithm binaryArithm) {
-        Object left = evaluate(binaryArithm.getLeft());
-        Object right = evaluate(binaryArithm.getRight());
-        checkNumberOperands(binaryArithm.getOperation(), left, right);
-
-        TokenType operationType = binaryArithm.getOperation().getType();
-
-        BigInteger op1 = (BigInteger) left;
-        BigInteger op2 = (BigInteger) right;
+        Object left;
+        Object right;
+        if (forks(binaryArithm.getLeft()) && forks(binaryArithm.getRight())) {
+            Parallel.Evaluation task = parallel.fork(new Interpreter(this), binaryArithm.getRight());
+            try {
+                left = evaluate(binaryArithm.getLeft());
+            } catch (RuntimeException | Error e) {
+                // a failing left operand is reported once the right one is cancelled or done
+                task.discard();
+                throw e;
+            }
+            right = task.result();
+        } else {
+            left = evaluate(binaryArithm.getLeft());
+            right = evaluate(binaryArithm.getRight());
+        }
+        if (!binaryArithm.isTypeSafe()) { checkNumberOperands(binaryArithm.getOperation(), left, right); }
+        return arithmetic(binaryArithm.getOperation(), left, right);
+    }
 
-        switch (operationType) {
+    // the result of an arithmetic operation or comparison on numbers
+    private Object arithmetic(Token operation, Object left, Object right) {
+        switch (operation.getType()) {
             case PLUS:
-                return op1.add(op2);
+                return Numbers.add(left, right);
             case MINUS:
-                return op1.subtract(op2);
+                return Numbers.subtract(left, right);
             case SLASH:
-                if (op2.equals(BigInteger.ZERO)) {
-                    throw new RuntimeError(binaryArithm.getOperation(), "Division by zero!");
+                if (Numbers.isZero(right)) {
+                    throw new RuntimeError(operation, "Division by zero!");
                 }
-                return op1.divide(op2);
+                return Numbers.divide(left, right);
             case ASTERISK:
-                return op1.multiply(op2);
+                return Numbers.multiply(left, right);
             case EQUAL:
-                return op1.equals(op2);
+                return left.equals(right);
             case NOT_EQUAL:
-                return !op1.equals(op2);
+                return !left.equals(right);
             case GREATER:
-                return op1.compareTo(op2) == 1;
+                return Numbers.compare(left, right) > 0;
             case GREATER_EQUAL:
-                return op1.compareTo(op2) > -1;
+                return Numbers.compare(left, right) >= 0;
             case LESS:
-                return op1.compareTo(op2) == -1;
+                return Numbers.compare(left, right) < 0;
             case LESS_EQUAL:
-                return op1.compareTo(op2) < 1;
+                return Numbers.compare(left, right) <= 0;
         }
 
         // unreachable
         return null;
     }
 
+    // the operands of a fused node are read in the order the node they were
+    // fused from evaluates them, see Fuser
+    @Override
+    public void visitUpdate(Update update) {
+        Object[] values = environment.valuesAt(update.getDepth());
+        Object left;
+        Object right;
+        if (update.isTargetFirst()) {
+            left = target(update, values);
+            right = operand(update.getOperand());
+        } else {
+            left = operand(update.getOperand());
+            right = target(update, values);
+        }
+        if (!update.isTypeSafe()) { checkNumberOperands(update.getOperation(), left, right); }
+        values[update.getSlot()] = arithmetic(update.getOperation(), left, right);
+    }
+
+    private Object target(Update update, Object[] values) {
+        Object value = values[update.getSlot()];
+        if (value == null) {
+            throw new RuntimeError(update.getTarget().getName(), "Variable with this name doesn't exist.");
+        }
+        return value;
+    }
+
+    @Override
+    public Object visitComparison(Comparison comparison) {
+        Object left = operand(comparison.getLeft());
+        Object right = operand(comparison.getRight());
+        if (!comparison.isTypeSafe()) { checkNumberOperands(comparison.getOperation(), left, right); }
+        return arithmetic(comparison.getOperation(), left, right);
+    }
+
+    // value of an operand of a fused node, a Literal or a Variable
+    private Object operand(Expression operand) {
+        if (operand instanceof Literal) { return ((Literal) operand).getValue(); }
+        Variable variable = (Variable) operand;
+        return environment.get(variable.getName(), variable.getDepth(), variable.getSlot());
+    }
+
     @Override
     public Object visitLogicalBinary(BinaryExpression.Logical binaryLogical) {
         Object right = evaluate(binaryLogical.getRight());
-        checkBoolOperand(binaryLogical.getOperation(), right);
+        if (!binaryLogical.isTypeSafe()) { checkBoolOperand(binaryLogical.getOperation(), right); }
 
         TokenType operatorType = binaryLogical.getOperation().getType();
 
@@ -130,63 +255,179 @@ public class Interpreter implements Visitor{
         if (!isTrue(right) && operatorType == TokenType.AND) { return false; }
 
         Object left = evaluate(binaryLogical.getLeft());
-        checkBoolOperand(binaryLogical.getOperation(), left);
+        if (!binaryLogical.isTypeSafe()) { checkBoolOperand(binaryLogical.getOperation(), left); }
 
         return left;
     }
 
     @Override
     public Object visitCall(CallExpression callExpression) {
-        List<Object> arguments = new ArrayList<>();
-        Token name = callExpression.getName();
-        Function function = null;
+        Function function = callee(callExpression);
+        Object[] arguments = arguments(callExpression, function);
+        if (budget != null) { budget.charge(callExpression.getName()); }
+        return call(function, arguments);
+    }
 
-        for (Function func : functions) {
-            if (func.getName().equals(name)) { function = func; }
-        }
+    private Function callee(CallExpression callExpression) {
+        Function function = callExpression.getFunction();
 
         if (function == null) {
-            throw new RuntimeError(callExpression.getName(), "Function with this name doesn't exist.");
+            // not bound by the Resolver, the program may run on other threads
+            // as well and isn't changed while it runs
+            function = functions.get(callExpression.getName().getLexeme());
+            if (function == null) {
+                throw new RuntimeError(callExpression.getName(), "Function with this name doesn't exist.");
+            }
         }
+        return function;
+    }
 
-        //create environment for function
-        Environment funcEnvironment = new Environment();
+    private Object[] arguments(CallExpression callExpression, Function function) {
+        List<Object> arguments = new ArrayList<>();
 
         if (callExpression.getArguments() != null && function.getParameters() != null) {
-            for (Expression argument : callExpression.getArguments()) {
-                arguments.add(evaluate(argument));
+            if (canFork() && parallel.severalCostly(callExpression.getArguments())) {
+                arguments = evaluateParallel(callExpression.getArguments());
+            } else {
+                for (Expression argument : callExpression.getArguments()) {
+                    arguments.add(evaluate(argument));
+                }
             }
 
-            List<Token> parameters = function.getParameters();
-            if (arguments.size() != parameters.size()) {
+            if (arguments.size() != function.getParameterSlots().length) {
                 throw new RuntimeError(callExpression.getName(), "Wrong number of arguments.");
             }
-
-            for (int i = 0; i < arguments.size(); ++i) {
-                funcEnvironment.assign(parameters.get(i), arguments.get(i));
-            }
         } else if (callExpression.getArguments() == null || function.getParameters() == null) {
             throw new RuntimeError(callExpression.getName(), "Wrong number of arguments.");
         }
 
+        return arguments.toArray();
+    }
+
+    private boolean canFork() {
+        return parallel != null && jit == null && memo == null && profiler == null && budget == null && parallel.worthForking(depth);
+    }
+
+    // whether expression is worth evaluating in a task of its own
+    private boolean forks(Expression expression) {
+        return canFork() && parallel.isCostly(expression);
+    }
+
+    // evaluates the costly expressions but the first one in tasks, the others
+    // right here, and fails like evaluating them one after another would
+    private List<Object> evaluateParallel(List<Expression> expressions) {
+        Parallel.Evaluation[] tasks = new Parallel.Evaluation[expressions.size()];
+        boolean first = true;
+        for (int i = 0; i < tasks.length; ++i) {
+            if (parallel.isCostly(expressions.get(i)) && !first) {
+                tasks[i] = parallel.fork(new Interpreter(this), expressions.get(i));
+            }
+            first &= !parallel.isCostly(expressions.get(i));
+        }
+
+        List<Object> values = new ArrayList<>();
+        int i = 0;
+        try {
+            for (; i < tasks.length; ++i) {
+                values.add((tasks[i] == null) ? evaluate(expressions.get(i)) : tasks[i].result());
+            }
+        } catch (RuntimeException | Error e) {
+            for (int rest = i + 1; rest < tasks.length; ++rest) {
+                if (tasks[rest] != null) { tasks[rest].discard(); }
+            }
+            throw e;
+        }
+        return values;
+    }
+
+    private Object call(Function function, Object[] values) {
+        if (memo == null) { return invoke(function, values); }
+
+        Object result = memo.get(function, values);
+        if (result == null) {
+            result = invoke(function, values);
+            memo.put(function, values, result);
+        }
+        return result;
+    }
+
+    private Object invoke(Function function, Object[] arguments) {
+        if (profiler == null) { return run(function, arguments); }
+
+        profiler.enter(function);
+        try {
+            return run(function, arguments);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    private Object run(Function function, Object[] arguments) {
+        if (jit != null) { return jit.target(function).call(arguments); }
+        return callFunction(function, arguments);
+    }
+
+    // calls a function with arguments already checked against its parameters.
+    //
+    // A call in tail position doesn't recurse: its arguments are bound and the
+    // callee's body runs in the same loop, in the same environment as long as
+    // a function calls itself. Callees without tail calls are called normally.
+    Object callFunction(Function function, Object[] arguments) {
         Environment previous = environment;
+        depth++;
         try {
-            environment = funcEnvironment;
-            return evaluate(function.getBody());    // RETURN HERE!!!
+            //create environment for function
+            environment = new Environment(function.getLocals());
+
+            while (true) {
+                int[] parameterSlots = function.getParameterSlots();
+                for (int i = 0; i < arguments.length; ++i) {
+                    environment.assign(0, parameterSlots[i], arguments[i]);
+                }
+
+                Expression tail = function.getBody();
+                while (tail instanceof IfExpression) {
+                    IfExpression ifExpression = (IfExpression) tail;
+                    tail = condition(ifExpression) ? ifExpression.getThenBranch() : ifExpression.getElseBranch();
+                }
+                if (!(tail instanceof CallExpression)) {
+                    return evaluate(tail);    // RETURN HERE!!!
+                }
+
+                CallExpression callExpression = (CallExpression) tail;
+                Function callee = callee(callExpression);
+                arguments = arguments(callExpression, callee);
+                if (budget != null) { budget.charge(callExpression.getName()); }
+                if (!callee.hasTailCalls()) { return call(callee, arguments); }
+
+                // rebound tail calls skip the memo: their results would only be
+                // known at the end of the loop, under the key of the first call
+                if (profiler != null) {
+                    profiler.exit();
+                    profiler.enter(callee);
+                }
+                if (callee != function) {
+                    environment = new Environment(callee.getLocals());
+                    function = callee;
+                }
+            }
         } finally {
             environment = previous;
+            depth--;
         }
-
     }
 
     @Override
     public Object visitIfExpr(IfExpression ifExpression) {
+        return condition(ifExpression) ? evaluate(ifExpression.getThenBranch()) : evaluate(ifExpression.getElseBranch());
+    }
+
+    private boolean condition(IfExpression ifExpression) {
         Object condition = evaluate(ifExpression.getCondition());
-        if (!(condition instanceof Boolean)) {
+        if (!ifExpression.isTypeSafe() && !(condition instanceof Boolean)) {
             throw new RuntimeError(ifExpression.getIfToken(), "Condition should be boolean.");
         }
-
-        return (isTrue(condition)) ? evaluate(ifExpression.getThenBranch()) : evaluate(ifExpression.getElseBranch());
+        return isTrue(condition);
     }
 
     @Override
@@ -197,10 +438,10 @@ public class Interpreter implements Visitor{
 
         switch (operatorType) {
             case MINUS:
-                checkNumberOperand(unary.getOperation(), right);
-                return ((BigInteger)right).negate();
+                if (!unary.isTypeSafe()) { checkNumberOperand(unary.getOperation(), right); }
+                return Numbers.negate(right);
             case NOT:
-                checkBoolOperand(unary.getOperation(), right);
+                if (!unary.isTypeSafe()) { checkBoolOperand(unary.getOperation(), right); }
                 return !(boolean)right;
         }
 
@@ -210,7 +451,7 @@ public class Interpreter implements Visitor{
 
     @Override
     public Object visitVariable(Variable variable) {
-        return environment.get(variable.getName());
+        return environment.get(variable.getName(), variable.getDepth(), variable.getSlot());
     }
 
     @Override
@@ -218,6 +459,27 @@ public class Interpreter implements Visitor{
         return literal.getValue();
     }
 
+    @Override
+    public Object visitInvariant(Invariant invariant) {
+        Object value = environment.valuesAt(invariant.getDepth())[invariant.getSlot()];
+        if (value == null) {
+            value = evaluate(invariant.getExpression());
+            environment.assign(invariant.getDepth(), invariant.getSlot(), value);
+        }
+        return value;
+    }
+
+    @Override
+    public Object visitCommon(Common common) {
+        Object[] values = environment.valuesAt(common.getDepth());
+        Object value = values[common.getSlot()];
+        if (value == null) {
+            value = evaluate(common.getExpression());
+            values[common.getSlot()] = value;
+        }
+        return value;
+    }
+
     private boolean isTrue(Object obj) {
         return (boolean)obj;
     }
@@ -228,20 +490,32 @@ public class Interpreter implements Visitor{
     }
 
     private void checkNumberOperand(Token operator, Object obj) {
-        if (obj instanceof BigInteger) { return; }
+        if (Numbers.isNumber(obj)) { return; }
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
     private void checkNumberOperands(Token operator, Object left, Object right) {
-        if (left instanceof BigInteger && right instanceof BigInteger) { return; }
+        if (Numbers.isNumber(left) && Numbers.isNumber(right)) { return; }
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
-    private Object evaluate(Expression expression) {
+    Object evaluate(Expression expression) {
         return expression.accept(this);
     }
 
-    private void execute(Statement statement) { statement.accept(this); }
+    private void execute(Statement statement) {
+        // blocks have no line of their own, their time is the statement's around them
+        if (profiler == null || statement instanceof Block) {
+            statement.accept(this);
+            return;
+        }
+        profiler.enter(statement);
+        try {
+            statement.accept(this);
+        } finally {
+            profiler.exit();
+        }
+    }
 
     private void executeBody(List<Statement> statements, Environment env) {
         Environment previous = environment;
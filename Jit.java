@@ -0,0 +1,92 @@
+import ast.Function;
+import ast.While;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// Compiles hot functions and loops of an Interpreter to JVM classes.
+//
+// A function is compiled once it has been called CALL_THRESHOLD times, a
+// while loop once one of its executions ran LOOP_THRESHOLD iterations; the
+// interpreter then hands the rest of that execution over to the compiled
+// loop. Compiled classes are hidden classes in this package, so HotSpot
+// compiles them further like any other code. Calls from compiled code go
+// through a Target, which runs the callee compiled or interpreted. Compiled
+// code charges the interpreter's Budget, if it has one, for the same steps.
+// Tail calls of a function to itself are compiled to a loop; a function
+// tail calling other functions with tail calls stays in the interpreter,
+// which runs those calls in a loop (see JitCompiler).
+class Jit {
+    static final int CALL_THRESHOLD = 1000;
+    static final int LOOP_THRESHOLD = 1000;
+
+    private final Interpreter interpreter;
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private final Map<Function, Target> targets = new IdentityHashMap<>();
+    private final Map<While, JitCode> loops = new IdentityHashMap<>();
+
+    Jit(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    class Target {
+        private final Function function;
+        private int calls;
+        private JitCode code;
+        private boolean failed;
+
+        private Target(Function function) {
+            this.function = function;
+            this.failed = !JitCompiler.canCompile(function);
+        }
+
+        Object call(Object[] arguments) {
+            if (code != null) { return code.run(arguments, null); }
+
+            if (!failed && ++calls >= CALL_THRESHOLD) {
+                JitCompiler compiler = new JitCompiler(Jit.this);
+                code = define(compiler.compileFunction(function), compiler);
+                failed = (code == null);
+                if (code != null) { return code.run(arguments, null); }
+            }
+            return interpreter.callFunction(function, arguments);
+        }
+    }
+
+    Target target(Function function) {
+        return targets.computeIfAbsent(function, Target::new);
+    }
+
+    // charged by compiled loops and calls like by the interpreter, null if there is none
+    Budget getBudget() {
+        return interpreter.getBudget();
+    }
+
+    // compiled code of a loop, null if it isn't compiled
+    JitCode loop(While whileStmt) {
+        return loops.get(whileStmt);
+    }
+
+    JitCode compileLoop(While whileStmt) {
+        if (loops.containsKey(whileStmt)) { return loops.get(whileStmt); }
+
+        JitCompiler compiler = new JitCompiler(this);
+        JitCode code = define(compiler.compileLoop(whileStmt), compiler);
+        loops.put(whileStmt, code);     // null as well, so failures aren't retried
+        return code;
+    }
+
+    private JitCode define(byte[] classFile, JitCompiler compiler) {
+        if (classFile == null) { return null; }
+        try {
+            MethodHandles.Lookup hidden = lookup.defineHiddenClass(classFile, true);
+            return (JitCode) hidden.findConstructor(hidden.lookupClass(),
+                    MethodType.methodType(void.class, Object[].class)).invoke(compiler.getConstants());
+        } catch (Throwable e) {
+            // code the JVM doesn't accept keeps running in the interpreter
+            return null;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+// Implemented by the classes the JIT generates. A compiled function gets its
+// arguments in parameter order and no environment; a compiled while loop gets
+// no arguments and the environment the loop runs in, and returns null.
+interface JitCode {
+    Object run(Object[] arguments, Environment environment);
+}
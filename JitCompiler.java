@@ -0,0 +1,481 @@
+import ast.*;
+import token.Token;
+import token.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Translates a function body or a while loop to a JVM class implementing
+// JitCode. Values stay boxed SIPL values and every operation goes through
+// JitRuntime, so compiled code has exactly the interpreter's semantics;
+// what goes away is the tree walking and the environment chain.
+//
+// Variables of scopes inside the compiled code (function parameters, block
+// locals) live in JVM locals, nothing else can observe them. Variables of
+// enclosing scopes are read and written straight in their environment.
+//
+// A call of a compiled function to itself in tail position binds the
+// arguments to the parameters again and jumps back to the start of the
+// body, as Interpreter.callFunction loops, so it doesn't take any stack.
+// Tail calls to other functions with tail calls would recurse where the
+// interpreter loops; functions making them aren't compiled.
+class JitCompiler implements Visitor {
+    private static final String OBJECT = "java/lang/Object";
+    private static final String OBJECTS = "[Ljava/lang/Object;";
+    private static final String TOKEN = "token/Token";
+    private static final String RUNTIME = "JitRuntime";
+    private static final String BINARY = "(Ljava/lang/Object;Ljava/lang/Object;Ltoken/Token;)Ljava/lang/Object;";
+
+    private static final int ARGUMENTS = 1;
+    private static final int ENVIRONMENT = 2;
+
+    private final Jit jit;
+    private final ClassFileWriter classFile = new ClassFileWriter("SiplCompiled", OBJECT, "JitCode");
+    private final ClassFileWriter.Code code;
+    private final List<Object> constants = new ArrayList<>();
+    private final List<int[]> scopes = new ArrayList<>();           // JVM locals of compiled scopes by slot
+    private final List<Integer> environments = new ArrayList<>();   // JVM local holding values of outer environment i
+    private final int constantsLocal;
+    private Function function;      // the function compiled, null for a loop
+    private int bodyStart;          // where its body starts, after the arguments are bound
+
+    JitCompiler(Jit jit) {
+        this.jit = jit;
+        classFile.field(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_FINAL, "k", OBJECTS);
+
+        ClassFileWriter.Code init = classFile.method(ClassFileWriter.ACC_PUBLIC, "<init>", "(" + OBJECTS + ")V", 2);
+        init.load(0);
+        init.invoke(ClassFileWriter.INVOKESPECIAL, OBJECT, "<init>", "()V", -1);
+        init.load(0);
+        init.load(1);
+        init.field(ClassFileWriter.PUTFIELD, "SiplCompiled", "k", OBJECTS, -2);
+        init.op(ClassFileWriter.RETURN, 0);
+        init.end();
+
+        code = classFile.method(ClassFileWriter.ACC_PUBLIC, "run",
+                "(" + OBJECTS + "LEnvironment;)Ljava/lang/Object;", 3);
+        constantsLocal = code.newLocal();
+    }
+
+    // returns null if the code is too big for a single JVM method
+    byte[] compileFunction(Function function) {
+        int prologue = code.jump(ClassFileWriter.GOTO, 0);
+        int start = code.position();
+
+        int[] locals = newLocals(function.getLocals().length);
+        int[] parameterSlots = function.getParameterSlots();
+        for (int i = 0; i < parameterSlots.length; ++i) {
+            code.load(ARGUMENTS);
+            code.pushInt(i);
+            code.op(ClassFileWriter.AALOAD, -1);
+            code.store(locals[parameterSlots[i]]);
+        }
+        scopes.add(locals);
+        this.function = function;
+        bodyStart = code.position();
+        compileTail(function.getBody());
+        code.op(ClassFileWriter.ARETURN, -1);
+
+        return finish(prologue, start);
+    }
+
+    // whether compileFunction can compile function: it makes no tail calls
+    // but to itself and to functions without tail calls
+    static boolean canCompile(Function function) {
+        return !tailCallsOthers(function.getBody(), function);
+    }
+
+    private static boolean tailCallsOthers(Expression tail, Function function) {
+        if (tail instanceof IfExpression) {
+            IfExpression ifExpression = (IfExpression) tail;
+            return tailCallsOthers(ifExpression.getThenBranch(), function)
+                    || tailCallsOthers(ifExpression.getElseBranch(), function);
+        }
+        if (tail instanceof CallExpression) {
+            Function callee = ((CallExpression) tail).getFunction();
+            return callee != null && callee != function && callee.hasTailCalls();
+        }
+        return false;
+    }
+
+    byte[] compileLoop(While whileStmt) {
+        int prologue = code.jump(ClassFileWriter.GOTO, 0);
+        int start = code.position();
+
+        whileStmt.accept(this);
+        code.op(ClassFileWriter.ACONST_NULL, 1);
+        code.op(ClassFileWriter.ARETURN, -1);
+
+        return finish(prologue, start);
+    }
+
+    Object[] getConstants() {
+        return constants.toArray();
+    }
+
+    // The prologue loads the constants and the environments used by the code
+    // into locals. Which environments are needed is only known at the end,
+    // so it is placed after the body and jumped to from the first instruction.
+    private byte[] finish(int prologue, int start) {
+        code.patch(prologue);
+        code.setStackDepth(0);
+
+        code.load(0);
+        code.field(ClassFileWriter.GETFIELD, "SiplCompiled", "k", OBJECTS, 0);
+        code.store(constantsLocal);
+        for (int depth = 0; depth < environments.size(); ++depth) {
+            if (environments.get(depth) == null) { continue; }
+            code.load(ENVIRONMENT);
+            code.pushInt(depth);
+            code.invoke(ClassFileWriter.INVOKEVIRTUAL, "Environment", "valuesAt", "(I)" + OBJECTS, -1);
+            code.store(environments.get(depth));
+        }
+        code.jumpTo(ClassFileWriter.GOTO, start, 0);
+
+        if (!code.fits()) { return null; }
+        code.end();
+        return classFile.toByteArray();
+    }
+
+    @Override
+    public void visitIfStmt(IfStatement ifStatement) {
+        compile(ifStatement.getCondition());
+        constant(ifStatement.getIfToken(), TOKEN);
+        code.invoke(ClassFileWriter.INVOKESTATIC, RUNTIME, "ifCondition", "(Ljava/lang/Object;Ltoken/Token;)Z", -1);
+        int elseJump = code.jump(ClassFileWriter.IFEQ, -1);
+
+        ifStatement.getThenBranch().accept(this);
+
+        if (ifStatement.getElseBranch() != null) {
+            int endJump = code.jump(ClassFileWriter.GOTO, 0);
+            code.patch(elseJump);
+            ifStatement.getElseBranch().accept(this);
+            code.patch(endJump);
+        } else {
+            code.patch(elseJump);
+        }
+    }
+
+    @Override
+    public void visitWhile(While whileStmt) {
+        int start = code.position();
+        compile(whileStmt.getCondition());
+        constant(whileStmt.getWhileToken(), TOKEN);
+        code.invoke(ClassFileWriter.INVOKESTATIC, RUNTIME, "whileCondition", "(Ljava/lang/Object;Ltoken/Token;)Z", -1);
+        int exitJump = code.jump(ClassFileWriter.IFEQ, -1);
+
+        charge(whileStmt.getWhileToken());
+        whileStmt.getBody().accept(this);
+
+        code.jumpTo(ClassFileWriter.GOTO, start, 0);
+        code.patch(exitJump);
+    }
+
+    @Override
+    public void visitAssignment(Assignment assignment) {
+        int depth = assignment.getDepth();
+        if (depth < scopes.size()) {
+            compile(assignment.getRight());
+            code.store(scope(depth)[assignment.getSlot()]);
+        } else {
+            code.load(environment(depth - scopes.size()));
+            code.pushInt(assignment.getSlot());
+            compile(assignment.getRight());
+            code.op(ClassFileWriter.AASTORE, -3);
+        }
+    }
+
+    @Override
+    public void visitBlock(Block block) {
+        // a fresh environment on every entry: all locals start unassigned
+        int[] locals = newLocals(block.getLocals().length);
+        for (int local : locals) {
+            code.op(ClassFileWriter.ACONST_NULL, 1);
+            code.store(local);
+        }
+
+        scopes.add(locals);
+        try {
+            for (Statement statement : block.getStatements()) {
+                statement.accept(this);
+            }
+        } finally {
+            scopes.remove(scopes.size() - 1);
+        }
+    }
+
+    @Override
+    public void visitFunction(Function function) {
+        // declarations aren't part of compiled code
+    }
+
+    @Override
+    public Object visitArithmBinary(BinaryExpression.Arithm binaryArithm) {
+        compile(binaryArithm.getLeft());
+        compile(binaryArithm.getRight());
+        constant(binaryArithm.getOperation(), TOKEN);
+
+        String helper;
+        switch (binaryArithm.getOperation().getType()) {
+            case PLUS: helper = "add"; break;
+            case MINUS: helper = "subtract"; break;
+            case ASTERISK: helper = "multiply"; break;
+            case SLASH: helper = "divide"; break;
+            case EQUAL: helper = "equal"; break;
+            case NOT_EQUAL: helper = "notEqual"; break;
+            case GREATER: helper = "greater"; break;
+            case GREATER_EQUAL: helper = "greaterEqual"; break;
+            case LESS: helper = "less"; break;
+            case LESS_EQUAL: helper = "lessEqual"; break;
+            default: throw new IllegalStateException(binaryArithm.getOperation().toString());
+        }
+        code.invoke(ClassFileWriter.INVOKESTATIC, RUNTIME, helper, BINARY, -2);
+        return null;
+    }
+
+    @Override
+    public Object visitLogicalBinary(BinaryExpression.Logical binaryLogical) {
+        // right operand first, the left one only if it decides the result
+        compile(binaryLogical.getRight());
+        checkBool(binaryLogical);
+
+        code.op(ClassFileWriter.DUP, 1);
+        code.invoke(ClassFileWriter.INVOKESTATIC, RUNTIME, "isTrue", "(Ljava/lang/Object;)Z", 0);
+        boolean isOr = binaryLogical.getOperation().getType() == TokenType.OR;
+        int shortCircuit = code.jump(isOr ? ClassFileWriter.IFNE : ClassFileWriter.IFEQ, -1);
+
+        code.op(ClassFileWriter.POP, -1);
+        compile(binaryLogical.getLeft());
+        checkBool(binaryLogical);
+        code.patch(shortCircuit);
+        return null;
+    }
+
+    private void checkBool(BinaryExpression.Logical binaryLogical) {
+        constant(binaryLogical.getOperation(), TOKEN);
+        code.invoke(ClassFileWriter.INVOKESTATIC, RUNTIME, "bool", "(Ljava/lang/Object;Ltoken/Token;)Ljava/lang/Object;", -1);
+    }
+
+    @Override
+    public Object visitCall(CallExpression callExpression) {
+        Function function = callExpression.getFunction();
+
+        // same checks, in the same order, as Interpreter.visitCall
+        if (function == null) {
+            error(callExpression.getName(), "Function with this name doesn't exist.");
+            return null;
+        }
+        if (callExpression.getArguments() == null || function.getParameters() == null) {
+            error(callExpression.getName(), "Wrong number of arguments.");
+            return null;
+        }
+
+        List<Expression> arguments = callExpression.getArguments();
+        if (arguments.size() != function.getParameterSlots().length) {
+            for (Expression argument : arguments) {
+                compile(argument);
+                code.op(ClassFileWriter.POP, -1);
+            }
+            error(callExpression.getName(), "Wrong number of arguments.");
+            return null;
+        }
+
+        constant(jit.target(function), "Jit$Target");
+        code.pushInt(arguments.size());
+        code.type(ClassFileWriter.ANEWARRAY, OBJECT);
+        for (int i = 0; i < arguments.size(); ++i) {
+            code.op(ClassFileWriter.DUP, 1);
+            code.pushInt(i);
+            compile(arguments.get(i));
+            code.op(ClassFileWriter.AASTORE, -3);
+        }
+        charge(callExpression.getName());
+        code.invoke(ClassFileWriter.INVOKEVIRTUAL, "Jit$Target", "call", "(" + OBJECTS + ")Ljava/lang/Object;", -1);
+        return null;
+    }
+
+    @Override
+    public Object visitIfExpr(IfExpression ifExpression) {
+        ifExpression(ifExpression, false);
+        return null;
+    }
+
+    // the branches of an if expression in tail position are in tail position too
+    private void ifExpression(IfExpression ifExpression, boolean tail) {
+        compile(ifExpression.getCondition());
+        constant(ifExpression.getIfToken(), TOKEN);
+        code.invoke(ClassFileWriter.INVOKESTATIC, RUNTIME, "ifCondition", "(Ljava/lang/Object;Ltoken/Token;)Z", -1);
+        int elseJump = code.jump(ClassFileWriter.IFEQ, -1);
+
+        compile(ifExpression.getThenBranch(), tail);
+        int endJump = code.jump(ClassFileWriter.GOTO, 0);
+
+        code.patch(elseJump);
+        code.setStackDepth(code.stackDepth() - 1);     // only one of the branches leaves its value
+        if (ifExpression.getElseBranch() != null) {
+            compile(ifExpression.getElseBranch(), tail);
+        } else {
+            code.invoke(ClassFileWriter.INVOKESTATIC, RUNTIME, "missingElse", "()Ljava/lang/NullPointerException;", 1);
+            code.op(ClassFileWriter.ATHROW, 0);
+        }
+        code.patch(endJump);
+    }
+
+    @Override
+    public Object visitLiteral(Literal literal) {
+        constant(literal.getValue(), null);
+        return null;
+    }
+
+    @Override
+    public Object visitUnary(Unary unary) {
+        compile(unary.getRight());
+        constant(unary.getOperation(), TOKEN);
+        String helper = (unary.getOperation().getType() == TokenType.MINUS) ? "negate" : "not";
+        code.invoke(ClassFileWriter.INVOKESTATIC, RUNTIME, helper, "(Ljava/lang/Object;Ltoken/Token;)Ljava/lang/Object;", -1);
+        return null;
+    }
+
+    @Override
+    public Object visitVariable(Variable variable) {
+        int depth = variable.getDepth();
+        if (depth < 0) {
+            error(variable.getName(), "Variable with this name doesn't exist.");
+            return null;
+        }
+
+        if (depth < scopes.size()) {
+            code.load(scope(depth)[variable.getSlot()]);
+        } else {
+            code.load(environment(depth - scopes.size()));
+            code.pushInt(variable.getSlot());
+            code.op(ClassFileWriter.AALOAD, -1);
+        }
+        constant(variable.getName(), TOKEN);
+        code.invoke(ClassFileWriter.INVOKESTATIC, RUNTIME, "defined", "(Ljava/lang/Object;Ltoken/Token;)Ljava/lang/Object;", -1);
+        return null;
+    }
+
+    @Override
+    public Object visitInvariant(Invariant invariant) {
+        int depth = invariant.getDepth();
+        boolean compiledScope = depth < scopes.size();
+        if (compiledScope) {
+            code.load(scope(depth)[invariant.getSlot()]);
+        } else {
+            code.load(environment(depth - scopes.size()));
+            code.pushInt(invariant.getSlot());
+            code.op(ClassFileWriter.AALOAD, -1);
+        }
+        code.op(ClassFileWriter.DUP, 1);
+        int cached = code.jump(ClassFileWriter.IFNONNULL, -1);
+
+        code.op(ClassFileWriter.POP, -1);
+        if (compiledScope) {
+            compile(invariant.getExpression());
+            code.op(ClassFileWriter.DUP, 1);
+            code.store(scope(depth)[invariant.getSlot()]);
+        } else {
+            code.load(environment(depth - scopes.size()));
+            code.pushInt(invariant.getSlot());
+            compile(invariant.getExpression());
+            code.op(ClassFileWriter.DUP_X2, 1);
+            code.op(ClassFileWriter.AASTORE, -3);
+        }
+        code.patch(cached);
+        return null;
+    }
+
+    private void compile(Expression expression) {
+        expression.accept(this);
+    }
+
+    private void compile(Expression expression, boolean tail) {
+        if (tail) {
+            compileTail(expression);
+        } else {
+            compile(expression);
+        }
+    }
+
+    // an expression in tail position of the function compiled
+    private void compileTail(Expression expression) {
+        if (expression instanceof IfExpression) {
+            ifExpression((IfExpression) expression, true);
+            return;
+        }
+        if (!(expression instanceof CallExpression) || !callsItself((CallExpression) expression)) {
+            compile(expression);
+            return;
+        }
+
+        // arguments, then the step, in the order of visitCall
+        CallExpression callExpression = (CallExpression) expression;
+        for (Expression argument : callExpression.getArguments()) {
+            compile(argument);
+        }
+        charge(callExpression.getName());
+        int[] parameterSlots = function.getParameterSlots();
+        for (int i = parameterSlots.length - 1; i >= 0; --i) {
+            code.store(scope(0)[parameterSlots[i]]);
+        }
+        code.jumpTo(ClassFileWriter.GOTO, bodyStart, 0);
+        // as an expression it counts as one pushed value, like error
+        code.setStackDepth(code.stackDepth() + 1);
+    }
+
+    // a call of the function compiled with the right number of arguments
+    private boolean callsItself(CallExpression callExpression) {
+        return function != null && callExpression.getFunction() == function
+                && callExpression.getArguments() != null && function.getParameters() != null
+                && callExpression.getArguments().size() == function.getParameterSlots().length;
+    }
+
+    // throws a RuntimeError; as an expression it counts as one pushed value
+    private void error(Token token, String message) {
+        constant(token, TOKEN);
+        constant(message, "java/lang/String");
+        code.invoke(ClassFileWriter.INVOKESTATIC, RUNTIME, "error", "(Ltoken/Token;Ljava/lang/String;)LRuntimeError;", -1);
+        code.op(ClassFileWriter.ATHROW, 0);
+    }
+
+    // charges a step made at token to the budget, nothing without one
+    private void charge(Token token) {
+        Budget budget = jit.getBudget();
+        if (budget == null) { return; }
+        constant(budget, "Budget");
+        constant(token, TOKEN);
+        code.invoke(ClassFileWriter.INVOKEVIRTUAL, "Budget", "charge", "(Ltoken/Token;)V", -2);
+    }
+
+    // pushes a value from the constant array, cast to type unless it is null
+    private void constant(Object value, String type) {
+        constants.add(value);
+        code.load(constantsLocal);
+        code.pushInt(constants.size() - 1);
+        code.op(ClassFileWriter.AALOAD, -1);
+        if (type != null) { code.type(ClassFileWriter.CHECKCAST, type); }
+    }
+
+    private int[] newLocals(int count) {
+        int[] locals = new int[count];
+        for (int i = 0; i < count; ++i) {
+            locals[i] = code.newLocal();
+        }
+        return locals;
+    }
+
+    private int[] scope(int depth) {
+        return scopes.get(scopes.size() - 1 - depth);
+    }
+
+    private int environment(int depth) {
+        while (environments.size() <= depth) {
+            environments.add(null);
+        }
+        if (environments.get(depth) == null) {
+            environments.set(depth, code.newLocal());
+        }
+        return environments.get(depth);
+    }
+}
@@ -0,0 +1,119 @@
+import token.Token;
+
+// Operations called from JIT compiled code. Each one performs exactly the
+// checks Interpreter does for the same node and throws the same errors;
+// they are small enough for HotSpot to inline into the compiled code.
+final class JitRuntime {
+    private JitRuntime() {}
+
+    static Object defined(Object value, Token name) {
+        if (value == null) {
+            throw new RuntimeError(name, "Variable with this name doesn't exist.");
+        }
+        return value;
+    }
+
+    static RuntimeError error(Token token, String message) {
+        return new RuntimeError(token, message);
+    }
+
+    static NullPointerException missingElse() {
+        // the interpreter evaluates the missing branch as a null expression
+        return new NullPointerException();
+    }
+
+    static boolean ifCondition(Object condition, Token ifToken) {
+        if (!(condition instanceof Boolean)) {
+            throw new RuntimeError(ifToken, "Condition should be boolean.");
+        }
+        return (Boolean) condition;
+    }
+
+    static boolean whileCondition(Object condition, Token whileToken) {
+        if (!(condition instanceof Boolean)) {
+            throw new RuntimeError(whileToken, "Condition must be boolean");
+        }
+        return (Boolean) condition;
+    }
+
+    static Object bool(Object operand, Token operation) {
+        if (!(operand instanceof Boolean)) {
+            throw new RuntimeError(operation, "Operand must be boolean");
+        }
+        return operand;
+    }
+
+    static boolean isTrue(Object operand) {
+        return (Boolean) operand;
+    }
+
+    static Object not(Object operand, Token operation) {
+        return !(Boolean) bool(operand, operation);
+    }
+
+    static Object negate(Object operand, Token operation) {
+        if (!Numbers.isNumber(operand)) {
+            throw new RuntimeError(operation, "Operand must be a number.");
+        }
+        return Numbers.negate(operand);
+    }
+
+    static Object add(Object left, Object right, Token operation) {
+        checkNumbers(left, right, operation);
+        return Numbers.add(left, right);
+    }
+
+    static Object subtract(Object left, Object right, Token operation) {
+        checkNumbers(left, right, operation);
+        return Numbers.subtract(left, right);
+    }
+
+    static Object multiply(Object left, Object right, Token operation) {
+        checkNumbers(left, right, operation);
+        return Numbers.multiply(left, right);
+    }
+
+    static Object divide(Object left, Object right, Token operation) {
+        checkNumbers(left, right, operation);
+        if (Numbers.isZero(right)) {
+            throw new RuntimeError(operation, "Division by zero!");
+        }
+        return Numbers.divide(left, right);
+    }
+
+    static Object equal(Object left, Object right, Token operation) {
+        checkNumbers(left, right, operation);
+        return left.equals(right);
+    }
+
+    static Object notEqual(Object left, Object right, Token operation) {
+        checkNumbers(left, right, operation);
+        return !left.equals(right);
+    }
+
+    static Object greater(Object left, Object right, Token operation) {
+        checkNumbers(left, right, operation);
+        return Numbers.compare(left, right) > 0;
+    }
+
+    static Object greaterEqual(Object left, Object right, Token operation) {
+        checkNumbers(left, right, operation);
+        return Numbers.compare(left, right) >= 0;
+    }
+
+    static Object less(Object left, Object right, Token operation) {
+        checkNumbers(left, right, operation);
+        return Numbers.compare(left, right) < 0;
+    }
+
+    static Object lessEqual(Object left, Object right, Token operation) {
+        checkNumbers(left, right, operation);
+        return Numbers.compare(left, right) <= 0;
+    }
+
+    private static void checkNumbers(Object left, Object right, Token operation) {
+        if (!Numbers.isNumber(left) || !Numbers.isNumber(right)) {
+            throw new RuntimeError(operation, "Operands must be numbers.");
+        }
+    }
+}
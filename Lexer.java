@@ -2,66 +2,170 @@ import token.Token;
 import token.TokenType;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
 
+// Scans the source into tokens, either all at once with scanTokens or one
+// at a time with nextToken, reading the source as it goes. Only a buffer of
+// the source and the lexeme being scanned are held in memory.
+//
+// scanBuffer scans all tokens into a TokenBuffer instead, which makes no
+// object per token.
 public class Lexer {
-    private int line = 1;       //current line of code
-    private int current = 0;    // current position
-    private int start = 0;      // starting position of new lexeme
-    private String input;
-
+    private static final int BUFFER_SIZE = 8192;
 
-    private static final HashMap<String, TokenType> keywords;
+    private int line = 1;       //current line of code
+    private final Reader input;
+    private final Errors errors;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int current = 0;    // current position in buffer
+    private int limit = 0;      // end of the characters read into buffer
+    private int offset = 0;     // position in the source of buffer[0]
+    private int start;          // position in the source of the token being scanned
+    private boolean exhausted = false;
+    private final StringBuilder lexeme = new StringBuilder();   // characters of the token being scanned
+    private Token scanned;      // token found by scanToken, null for whitespace and errors
+    private TokenBuffer tokens; // where scanToken adds tokens in scanInto, null otherwise
+    private boolean ended = false;
+
+
+    // reserved words, which TokenBuffer interns before any other word
+    static final String[] KEYWORDS = {
+            "begin", "end", "and", "or", "not", "if", "then", "else",
+            "true", "false", "while", "do", "func", "program"
+    };
+
+    // type of a reserved word, null for any other word. A switch rather than
+    // a map filled when the class is loaded, so starting up doesn't build one.
+    static TokenType keyword(String word) {
+        switch (word) {
+            case "begin": return TokenType.BEGIN;
+            case "end": return TokenType.END;
+
+            case "and": return TokenType.AND;
+            case "or": return TokenType.OR;
+            case "not": return TokenType.NOT;
+
+            case "if": return TokenType.IF;
+            case "then": return TokenType.THEN;
+            case "else": return TokenType.ELSE;
+
+            case "true": return TokenType.TRUE;
+            case "false": return TokenType.FALSE;
+
+            case "while": return TokenType.WHILE;
+            case "do": return TokenType.DO;
+
+            case "func": return TokenType.FUNC;
+            case "program": return TokenType.PROGRAM;
+
+            default: return null;
+        }
+    }
 
-    static {
-        keywords = new HashMap<>();
+    public Lexer(String input) {
+        this(input, new Errors(System.err));
+    }
 
-        keywords.put("begin", TokenType.BEGIN);
-        keywords.put("end", TokenType.END);
+    public Lexer(String input, Errors errors) {
+        this(new StringReader(input), errors);
+    }
 
-        keywords.put("and", TokenType.AND);
-        keywords.put("or", TokenType.OR);
-        keywords.put("not", TokenType.NOT);
+    public Lexer(Reader input) {
+        this(input, new Errors(System.err));
+    }
 
-        keywords.put("if", TokenType.IF);
-        keywords.put("then", TokenType.THEN);
-        keywords.put("else", TokenType.ELSE);
+    public Lexer(Reader input, Errors errors) {
+        this.input = input;
+        this.errors = errors;
+    }
 
-        keywords.put("true", TokenType.TRUE);
-        keywords.put("false", TokenType.FALSE);
+    // scans a source from offset on, which is on the given line; input
+    // reads the source from there
+    Lexer(Reader input, int offset, int line, Errors errors) {
+        this(input, errors);
+        this.offset = offset;
+        this.line = line;
+    }
 
-        keywords.put("while", TokenType.WHILE);
-        keywords.put("do", TokenType.DO);
+    public Errors getErrors() { return errors; }
 
-        keywords.put("func", TokenType.FUNC);
-        keywords.put("program", TokenType.PROGRAM);
+    public List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        for (Token token = nextToken(); token != null; token = nextToken()) {
+            tokens.add(token);
+        }
+        return tokens;
     }
 
-    private List<Token> tokens = new ArrayList<>();
+    public TokenBuffer scanBuffer() {
+        TokenBuffer tokens = new TokenBuffer();
+        while (scanInto(tokens)) { }
+        return tokens;
+    }
 
-    public Lexer(String input) {
-        this.input = input;
+    // scans the next token into tokens, EOF at the end of the source; false
+    // once EOF has been added
+    boolean scanInto(TokenBuffer tokens) {
+        this.tokens = tokens;
+        int size = tokens.size();
+        while (tokens.size() == size) {
+            if (isAtEnd()) {
+                if (!ended) { tokens.add(TokenType.EOF, position(), position(), line); }
+                ended = true;
+                return false;
+            }
+            lexeme.setLength(0);
+            start = position();
+            scanToken();
+        }
+        return true;
     }
 
-    public List<Token> scanTokens() {
+    // the next token, EOF at the end of the source and null after that
+    public Token nextToken() {
         while (!isAtEnd()) {
-            start = current;
+            lexeme.setLength(0);
+            scanned = null;
             scanToken();
+            if (scanned != null) { return scanned; }
         }
-        tokens.add(new Token(TokenType.EOF, "", line, null));
-        return tokens;
+        if (ended) { return null; }
+
+        ended = true;
+        return new Token(TokenType.EOF, "", line, null);
     }
 
     private boolean isAtEnd() {
-        return current >= input.length();
+        return current == limit && !fill();
+    }
+
+    // reads more of the source into buffer, false at its end
+    private boolean fill() {
+        if (exhausted) { return false; }
+        try {
+            int read = input.read(buffer, 0, buffer.length);
+            if (read < 0) {
+                exhausted = true;
+                input.close();
+                return false;
+            }
+            offset += limit;
+            current = 0;
+            limit = read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     private void scanToken() { // find next token
@@ -97,7 +201,7 @@ public class Lexer {
                 if (match('=')) {
                     addToken(TokenType.ASSIGN);
                 } else {
-                    SIPL.error(line, "Unexpected character");
+                    unexpected();
                 }
                 break;
 
@@ -114,7 +218,7 @@ public class Lexer {
                 if (match('=')) {
                     addToken(TokenType.NOT_EQUAL);
                 } else {
-                    SIPL.error(line, "Unexpected character");
+                    unexpected();
                 }
                 break;
 
@@ -134,7 +238,7 @@ public class Lexer {
                 } else if (isLetter(c)){
                     identifier();
                 } else {
-                    SIPL.error(line, "Unexpected character");
+                    unexpected();
                 }
 
         }
@@ -144,17 +248,25 @@ public class Lexer {
         while (isDigit(peek())) {
             returnSymbol();
         }
-        addToken(TokenType.NUMBER, new BigInteger(input.substring(start, current)));
+        if (tokens != null) {
+            tokens.addNumber(lexeme, start, position(), line);
+            return;
+        }
+        addToken(TokenType.NUMBER, Numbers.valueOf(new BigInteger(lexeme.toString())));
     }
 
     private void identifier() {
         while (isLetter(peek())) {
             returnSymbol();
         }
+        if (tokens != null) {
+            tokens.addWord(lexeme, start, position(), line);
+            return;
+        }
 
         // Is identifier a reserved word?
-        String text = input.substring(start, current);
-        TokenType type = keywords.get(text);
+        String text = lexeme.toString();
+        TokenType type = keyword(text);
 
         if (type == TokenType.TRUE || type == TokenType.FALSE) {
             addToken(type, Boolean.parseBoolean(text));
@@ -176,7 +288,7 @@ public class Lexer {
     }
 
     private char peek() {
-        return (!isAtEnd()) ? input.charAt(current) : '\0';
+        return (!isAtEnd()) ? buffer[current] : '\0';
     }
 
     private void addToken(TokenType type) {
@@ -184,18 +296,33 @@ public class Lexer {
     }
 
     private void addToken(TokenType type, Object literal) {
-        tokens.add(new Token(type, input.substring(start, current), line, literal));
+        if (tokens != null) {
+            tokens.add(type, start, position(), line);
+            return;
+        }
+        scanned = new Token(type, lexeme.toString(), line, literal);
+    }
+
+    private void unexpected() {
+        errors.error(line, "Unexpected character");
+        if (tokens != null) { tokens.error(start); }
+    }
+
+    private int position() {
+        return offset + current;
     }
 
     private boolean match(char c) {
         if (peek() != c) {
             return false;
         }
-        ++current;
+        returnSymbol();
         return true;
     }
 
     private char returnSymbol() {
-        return input.charAt(current++);
+        char c = buffer[current++];
+        lexeme.append(c);
+        return c;
     }
 }
@@ -0,0 +1,490 @@
+import ast.*;
+import token.Token;
+import token.TokenType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Rewrites the while loops of a Program after Optimizer, before it is resolved.
+//
+// A loop right after "I := <number>" that counts I with a constant step
+// against a constant, like "while I < 4 do begin ...; I := I + 1 end", is
+// unrolled if it runs only a few times: the loop is replaced by one copy of
+// its body per iteration, with the value I has there folded in by Optimizer.
+// The condition can't fail on numbers, so leaving it out changes nothing.
+//
+// In the remaining loops, expressions that don't read any variable the loop
+// assigns are wrapped in an Invariant, which keeps the value of their first
+// evaluation for the rest of that run of the loop. Calls count as well, as a
+// function body only sees its arguments. The first evaluation happens where
+// it always did, so an expression that fails still fails at the same point.
+//
+// Before that, in loops with such a counter that aren't unrolled, the
+// products "I * C" and "C * I" of the counter and a number are strength
+// reduced: a hidden variable is set to the start of I times C before the
+// loop, moved by the step times C right after the step of I, and read
+// instead of the product. Once the numbers are big, the addition costs much
+// less than the multiplication. Hidden variables have names no identifier
+// has, and the Resolver gives them no name in the environment, so they
+// aren't part of the result.
+public class LoopOptimizer implements Visitor {
+    static final int MAX_TRIPS = 16;            // iterations of a loop that is unrolled at most
+    static final int MAX_UNROLLED = 64;         // statements of all copies of the body together
+    static final String HIDDEN = "$";           // first character of the names of hidden variables
+
+    private final List<Set<String>> loops = new ArrayList<>();  // variables assigned by the enclosing loops, outermost first
+    private Statement optimized;
+    private int hidden = 0;                     // hidden variables made so far
+
+    public Program optimize(Program program) {
+        // function bodies are expressions, there are no loops in them
+        return new Program(program.getFunctions(), optimizeBlock(reduceBlock(program.getBody())));
+    }
+
+    static boolean isHidden(String name) {
+        return name.startsWith(HIDDEN);
+    }
+
+    private Block optimizeBlock(Block block) {
+        List<Statement> statements = new ArrayList<>();
+        for (Statement statement : block.getStatements()) {
+            if (statement instanceof While && unroll((While) statement, statements)) { continue; }
+
+            statement.accept(this);
+            statements.add(optimized);
+        }
+        return new Block(statements);
+    }
+
+    // ---- unrolling
+
+    // the counter of a loop: a variable set to a number right before it and
+    // assigned once in it, by a top level "I := I + <number>" or "I := I - <number>"
+    private static final class Counter {
+        final Assignment start;
+        final int step;                         // index of the step in the body
+        final BinaryExpression.Arithm update;   // its right side
+
+        Counter(Assignment start, int step, BinaryExpression.Arithm update) {
+            this.start = start;
+            this.step = step;
+            this.update = update;
+        }
+
+        String name() { return start.getVariable().getLexeme(); }
+
+        Object first() { return ((Literal) start.getRight()).getValue(); }
+
+        Object delta() { return ((Literal) update.getRight()).getValue(); }
+    }
+
+    // the counter of whileStmt, which comes after statements, null if it has none
+    private static Counter counter(While whileStmt, List<Statement> statements) {
+        if (statements.isEmpty() || !(statements.get(statements.size() - 1) instanceof Assignment)) { return null; }
+        Assignment start = (Assignment) statements.get(statements.size() - 1);
+        String counter = start.getVariable().getLexeme();
+        if (!isNumber(start.getRight())) { return null; }
+
+        List<Statement> body = whileStmt.getBody().getStatements();
+        int step = -1;
+        for (int i = 0; i < body.size(); ++i) {
+            if (body.get(i) instanceof Assignment && isStep((Assignment) body.get(i), counter)) { step = i; }
+        }
+        if (step < 0 || count(whileStmt.getBody(), counter) != 1) { return null; }
+        return new Counter(start, step, (BinaryExpression.Arithm) ((Assignment) body.get(step)).getRight());
+    }
+
+    // the values of the counter at the start of every iteration and after the
+    // last one, if the loop is tested against a constant and unrolled; null if not
+    private static List<Object> trips(While whileStmt, Counter counter) {
+        if (!(whileStmt.getCondition() instanceof BinaryExpression.Arithm)) { return null; }
+        BinaryExpression.Arithm condition = (BinaryExpression.Arithm) whileStmt.getCondition();
+        TokenType test = condition.getOperation().getType();
+        if (!isVariable(condition.getLeft(), counter.name()) || !isNumber(condition.getRight()) || !isComparison(test)) {
+            return null;
+        }
+
+        int statements = whileStmt.getBody().getStatements().size();
+        Object limit = ((Literal) condition.getRight()).getValue();
+        List<Object> values = new ArrayList<>();
+        values.add(counter.first());
+        while (holds(test, values.get(values.size() - 1), limit)) {
+            if (values.size() > MAX_TRIPS || values.size() * statements > MAX_UNROLLED) { return null; }
+            Object value = values.get(values.size() - 1);
+            values.add((counter.update.getOperation().getType() == TokenType.PLUS)
+                    ? Numbers.add(value, counter.delta()) : Numbers.subtract(value, counter.delta()));
+        }
+        return values;
+    }
+
+    // appends the unrolled loop to statements, false if it can't be unrolled
+    private boolean unroll(While whileStmt, List<Statement> statements) {
+        Counter counter = counter(whileStmt, statements);
+        List<Object> values = (counter == null) ? null : trips(whileStmt, counter);
+        if (values == null) { return false; }
+
+        Assignment start = counter.start;
+        int step = counter.step;
+        List<Statement> body = whileStmt.getBody().getStatements();
+        for (int trip = 0; trip < values.size() - 1; ++trip) {
+            Optimizer before = new Optimizer(Collections.singletonMap(counter.name(), values.get(trip)));
+            Optimizer after = new Optimizer(Collections.singletonMap(counter.name(), values.get(trip + 1)));
+
+            List<Statement> copy = new ArrayList<>();
+            for (int i = 0; i < body.size(); ++i) {
+                Statement statement = (i == step)
+                        ? new Assignment(start.getVariable(), new Literal(values.get(trip + 1)))
+                        : (i < step ? before : after).optimizeStatement(body.get(i));
+                if (statement != null) { copy.add(statement); }
+            }
+            // every iteration runs in a fresh environment, so does every copy
+            statements.add(optimizeBlock(new Block(copy)));
+        }
+        return true;
+    }
+
+    private static boolean isStep(Assignment assignment, String counter) {
+        if (!assignment.getVariable().getLexeme().equals(counter)) { return false; }
+        if (!(assignment.getRight() instanceof BinaryExpression.Arithm)) { return false; }
+
+        BinaryExpression.Arithm right = (BinaryExpression.Arithm) assignment.getRight();
+        TokenType operation = right.getOperation().getType();
+        return (operation == TokenType.PLUS || operation == TokenType.MINUS)
+                && isVariable(right.getLeft(), counter) && isNumber(right.getRight());
+    }
+
+    private static boolean isComparison(TokenType type) {
+        switch (type) {
+            case EQUAL: case NOT_EQUAL: case GREATER: case GREATER_EQUAL: case LESS: case LESS_EQUAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean holds(TokenType test, Object value, Object limit) {
+        switch (test) {
+            case EQUAL: return value.equals(limit);
+            case NOT_EQUAL: return !value.equals(limit);
+            case GREATER: return Numbers.compare(value, limit) > 0;
+            case GREATER_EQUAL: return Numbers.compare(value, limit) >= 0;
+            case LESS: return Numbers.compare(value, limit) < 0;
+            default: return Numbers.compare(value, limit) <= 0;
+        }
+    }
+
+    // ---- strength reduction
+
+    // block with the loops in it reduced, the inner ones first
+    private Block reduceBlock(Block block) {
+        List<Statement> statements = new ArrayList<>();
+        for (Statement statement : block.getStatements()) {
+            statements.add(reduce(statement, statements));
+        }
+        return new Block(statements);
+    }
+
+    // statement, after statements, reduced; the hidden variables of a loop
+    // are set in statements, before the start of its counter
+    private Statement reduce(Statement statement, List<Statement> statements) {
+        if (statement instanceof Block) { return reduceBlock((Block) statement); }
+        if (statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) statement;
+            Block elseBranch = (ifStatement.getElseBranch() == null) ? null : reduceBlock(ifStatement.getElseBranch());
+            return new IfStatement(ifStatement.getIfToken(), ifStatement.getCondition(),
+                    reduceBlock(ifStatement.getThenBranch()), elseBranch);
+        }
+        if (!(statement instanceof While)) { return statement; }
+
+        While whileStmt = new While(((While) statement).getWhileToken(), ((While) statement).getCondition(),
+                reduceBlock(((While) statement).getBody()));
+        Counter counter = counter(whileStmt, statements);
+        if (counter == null || trips(whileStmt, counter) != null) { return whileStmt; }
+
+        // a hidden variable for every number the counter is multiplied by
+        Map<Object, Token> products = new LinkedHashMap<>();
+        Expression condition = replaceProducts(whileStmt.getCondition(), counter, products);
+        List<Statement> body = new ArrayList<>();
+        for (Statement inner : whileStmt.getBody().getStatements()) {
+            body.add(replaceProductsIn(inner, counter, products));
+        }
+        if (products.isEmpty()) { return whileStmt; }
+
+        int at = counter.step + 1;
+        for (Map.Entry<Object, Token> product : products.entrySet()) {
+            Token name = product.getValue();
+            statements.add(statements.size() - 1,
+                    new Assignment(name, new Literal(Numbers.multiply(counter.first(), product.getKey()))));
+            body.add(at++, new Assignment(name, new BinaryExpression.Arithm(new Variable(name),
+                    counter.update.getOperation(), new Literal(Numbers.multiply(counter.delta(), product.getKey())))));
+        }
+        return new While(whileStmt.getWhileToken(), condition, new Block(body));
+    }
+
+    private Statement replaceProductsIn(Statement statement, Counter counter, Map<Object, Token> products) {
+        if (statement instanceof Assignment) {
+            Assignment assignment = (Assignment) statement;
+            return new Assignment(assignment.getVariable(), replaceProducts(assignment.getRight(), counter, products));
+        }
+        if (statement instanceof Block) {
+            List<Statement> statements = new ArrayList<>();
+            for (Statement inner : ((Block) statement).getStatements()) {
+                statements.add(replaceProductsIn(inner, counter, products));
+            }
+            return new Block(statements);
+        }
+        if (statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) statement;
+            Block elseBranch = ifStatement.getElseBranch();
+            return new IfStatement(ifStatement.getIfToken(), replaceProducts(ifStatement.getCondition(), counter, products),
+                    (Block) replaceProductsIn(ifStatement.getThenBranch(), counter, products),
+                    (elseBranch == null) ? null : (Block) replaceProductsIn(elseBranch, counter, products));
+        }
+        if (statement instanceof While) {
+            While whileStmt = (While) statement;
+            return new While(whileStmt.getWhileToken(), replaceProducts(whileStmt.getCondition(), counter, products),
+                    (Block) replaceProductsIn(whileStmt.getBody(), counter, products));
+        }
+        return statement;
+    }
+
+    private Expression replaceProducts(Expression expression, Counter counter, Map<Object, Token> products) {
+        if (expression instanceof BinaryExpression.Arithm) {
+            BinaryExpression.Arithm arithm = (BinaryExpression.Arithm) expression;
+            Object factor = factor(arithm, counter.name());
+            if (factor != null) {
+                Token name = products.computeIfAbsent(factor, f -> new Token(TokenType.IDENTIFIER,
+                        HIDDEN + ++hidden, counter.start.getVariable().getLine(), null));
+                return new Variable(name);
+            }
+            return new BinaryExpression.Arithm(replaceProducts(arithm.getLeft(), counter, products),
+                    arithm.getOperation(), replaceProducts(arithm.getRight(), counter, products));
+        }
+        if (expression instanceof BinaryExpression.Logical) {
+            BinaryExpression.Logical logical = (BinaryExpression.Logical) expression;
+            return new BinaryExpression.Logical(replaceProducts(logical.getLeft(), counter, products),
+                    logical.getOperation(), replaceProducts(logical.getRight(), counter, products));
+        }
+        if (expression instanceof Unary) {
+            Unary unary = (Unary) expression;
+            return new Unary(unary.getOperation(), replaceProducts(unary.getRight(), counter, products));
+        }
+        if (expression instanceof IfExpression) {
+            IfExpression ifExpression = (IfExpression) expression;
+            Expression elseBranch = ifExpression.getElseBranch();
+            return new IfExpression(ifExpression.getIfToken(), replaceProducts(ifExpression.getCondition(), counter, products),
+                    replaceProducts(ifExpression.getThenBranch(), counter, products),
+                    (elseBranch == null) ? null : replaceProducts(elseBranch, counter, products));
+        }
+        if (expression instanceof CallExpression && ((CallExpression) expression).getArguments() != null) {
+            CallExpression callExpression = (CallExpression) expression;
+            List<Expression> arguments = new ArrayList<>();
+            for (Expression argument : callExpression.getArguments()) {
+                arguments.add(replaceProducts(argument, counter, products));
+            }
+            return new CallExpression(callExpression.getName(), arguments);
+        }
+        return expression;
+    }
+
+    // C of "I * C" or "C * I" with the counter I and a number C, null for other expressions
+    private static Object factor(BinaryExpression.Arithm arithm, String counter) {
+        if (arithm.getOperation().getType() != TokenType.ASTERISK) { return null; }
+        if (isVariable(arithm.getLeft(), counter) && isNumber(arithm.getRight())) {
+            return ((Literal) arithm.getRight()).getValue();
+        }
+        if (isNumber(arithm.getLeft()) && isVariable(arithm.getRight(), counter)) {
+            return ((Literal) arithm.getLeft()).getValue();
+        }
+        return null;
+    }
+
+    // assignments to name anywhere in statement
+    private static int count(Statement statement, String name) {
+        if (statement instanceof Assignment) {
+            return ((Assignment) statement).getVariable().getLexeme().equals(name) ? 1 : 0;
+        }
+        if (statement instanceof Block) {
+            int count = 0;
+            for (Statement inner : ((Block) statement).getStatements()) {
+                count += count(inner, name);
+            }
+            return count;
+        }
+        if (statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) statement;
+            int count = count(ifStatement.getThenBranch(), name);
+            return (ifStatement.getElseBranch() == null) ? count : count + count(ifStatement.getElseBranch(), name);
+        }
+        if (statement instanceof While) {
+            return count(((While) statement).getBody(), name);
+        }
+        return 0;
+    }
+
+    // ---- invariants
+
+    // variables assigned anywhere in statement
+    private static void assigned(Statement statement, Set<String> names) {
+        if (statement instanceof Assignment) {
+            names.add(((Assignment) statement).getVariable().getLexeme());
+        } else if (statement instanceof Block) {
+            for (Statement inner : ((Block) statement).getStatements()) {
+                assigned(inner, names);
+            }
+        } else if (statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) statement;
+            assigned(ifStatement.getThenBranch(), names);
+            if (ifStatement.getElseBranch() != null) { assigned(ifStatement.getElseBranch(), names); }
+        } else if (statement instanceof While) {
+            assigned(((While) statement).getBody(), names);
+        }
+    }
+
+    // whether expression reads one of names
+    private static boolean reads(Expression expression, Set<String> names) {
+        if (expression == null || expression instanceof Literal) { return false; }
+        if (expression instanceof Variable) {
+            return names.contains(((Variable) expression).getName().getLexeme());
+        }
+        if (expression instanceof BinaryExpression) {
+            BinaryExpression binary = (BinaryExpression) expression;
+            return reads(binary.getLeft(), names) || reads(binary.getRight(), names);
+        }
+        if (expression instanceof Unary) {
+            return reads(((Unary) expression).getRight(), names);
+        }
+        if (expression instanceof IfExpression) {
+            IfExpression ifExpression = (IfExpression) expression;
+            return reads(ifExpression.getCondition(), names) || reads(ifExpression.getThenBranch(), names)
+                    || reads(ifExpression.getElseBranch(), names);
+        }
+        if (expression instanceof CallExpression) {
+            List<Expression> arguments = ((CallExpression) expression).getArguments();
+            if (arguments != null) {
+                for (Expression argument : arguments) {
+                    if (reads(argument, names)) { return true; }
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private Expression optimize(Expression expression) {
+        if (expression == null) { return null; }
+
+        // an operation is kept for the outermost loop that doesn't change it
+        if (!(expression instanceof Literal || expression instanceof Variable)) {
+            for (int loop = 0; loop < loops.size(); ++loop) {
+                if (!reads(expression, loops.get(loop))) {
+                    return new Invariant(expression, loops.size() - 1 - loop);
+                }
+            }
+        }
+        return (Expression) expression.accept(this);
+    }
+
+    // ---- statements
+
+    @Override
+    public void visitIfStmt(IfStatement ifStatement) {
+        Expression condition = optimize(ifStatement.getCondition());
+        Block elseBranch = (ifStatement.getElseBranch() == null) ? null : optimizeBlock(ifStatement.getElseBranch());
+        optimized = new IfStatement(ifStatement.getIfToken(), condition,
+                optimizeBlock(ifStatement.getThenBranch()), elseBranch);
+    }
+
+    @Override
+    public void visitWhile(While whileStmt) {
+        Set<String> names = new HashSet<>();
+        assigned(whileStmt.getBody(), names);
+
+        loops.add(names);
+        try {
+            Expression condition = optimize(whileStmt.getCondition());
+            optimized = new While(whileStmt.getWhileToken(), condition, optimizeBlock(whileStmt.getBody()));
+        } finally {
+            loops.remove(loops.size() - 1);
+        }
+    }
+
+    @Override
+    public void visitAssignment(Assignment assignment) {
+        optimized = new Assignment(assignment.getVariable(), optimize(assignment.getRight()));
+    }
+
+    @Override
+    public void visitBlock(Block block) {
+        optimized = optimizeBlock(block);
+    }
+
+    @Override
+    public void visitFunction(Function function) {
+        // see optimize(Program)
+    }
+
+    // ---- expressions, rebuilt around their invariant parts
+
+    @Override
+    public Object visitArithmBinary(BinaryExpression.Arithm binaryArithm) {
+        return new BinaryExpression.Arithm(optimize(binaryArithm.getLeft()), binaryArithm.getOperation(),
+                optimize(binaryArithm.getRight()));
+    }
+
+    @Override
+    public Object visitLogicalBinary(BinaryExpression.Logical binaryLogical) {
+        return new BinaryExpression.Logical(optimize(binaryLogical.getLeft()), binaryLogical.getOperation(),
+                optimize(binaryLogical.getRight()));
+    }
+
+    @Override
+    public Object visitCall(CallExpression callExpression) {
+        if (callExpression.getArguments() == null) { return callExpression; }
+
+        List<Expression> arguments = new ArrayList<>();
+        for (Expression argument : callExpression.getArguments()) {
+            arguments.add(optimize(argument));
+        }
+        return new CallExpression(callExpression.getName(), arguments);
+    }
+
+    @Override
+    public Object visitIfExpr(IfExpression ifExpression) {
+        return new IfExpression(ifExpression.getIfToken(), optimize(ifExpression.getCondition()),
+                optimize(ifExpression.getThenBranch()), optimize(ifExpression.getElseBranch()));
+    }
+
+    @Override
+    public Object visitLiteral(Literal literal) {
+        return literal;
+    }
+
+    @Override
+    public Object visitUnary(Unary unary) {
+        return new Unary(unary.getOperation(), optimize(unary.getRight()));
+    }
+
+    @Override
+    public Object visitVariable(Variable variable) {
+        return variable;
+    }
+
+    @Override
+    public Object visitInvariant(Invariant invariant) {
+        return invariant;
+    }
+
+    private static boolean isNumber(Expression expression) {
+        return expression instanceof Literal && Numbers.isNumber(((Literal) expression).getValue());
+    }
+
+    private static boolean isVariable(Expression expression, String name) {
+        return expression instanceof Variable && ((Variable) expression).getName().getLexeme().equals(name);
+    }
+}
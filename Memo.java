@@ -0,0 +1,72 @@
+import ast.Function;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Results of function calls, keyed on the function and its argument values.
+//
+// A function body only sees its parameters, so a call's result depends on
+// nothing but its arguments and can be reused. The cache keeps at most
+// capacity results and evicts the least recently used one.
+class Memo {
+    static final int DEFAULT_CAPACITY = 10000;
+
+    private static final class Key {
+        private final Function function;
+        private final Object[] arguments;
+        private final int hash;
+
+        Key(Function function, Object[] arguments) {
+            this.function = function;
+            this.arguments = arguments;
+            this.hash = 31 * System.identityHashCode(function) + Arrays.hashCode(arguments);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) { return false; }
+            Key other = (Key) obj;
+            return function == other.function && Arrays.equals(arguments, other.arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final Map<Key, Object> results;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    Memo(int capacity) {
+        results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                if (size() <= capacity) { return false; }
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    // cached result or null
+    Object get(Function function, Object[] arguments) {
+        Object result = results.get(new Key(function, arguments));
+        if (result == null) { misses++; }
+        else { hits++; }
+        return result;
+    }
+
+    void put(Function function, Object[] arguments, Object result) {
+        results.put(new Key(function, arguments), result);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("memo: %d hits, %d misses, %d evictions, %d cached",
+                hits, misses, evictions, results.size());
+    }
+}
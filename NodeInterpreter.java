@@ -0,0 +1,177 @@
+import ast.*;
+import token.TokenType;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs a resolved Program as a tree of self-specializing executable nodes
+// (see ExecNode and ArithmNode). The node tree of a function body is built
+// on its first call and shared by all of its call sites.
+//
+// With a Budget, every loop iteration and every call is a step, charged
+// where the Interpreter charges it.
+public class NodeInterpreter implements Visitor {
+    private final Map<Function, ExprNode.Body> bodies = new IdentityHashMap<>();
+    ExprNode.Call tailCall;     // tail call left for the enclosing ExprNode.Body
+    Budget budget;              // null unless loop iterations and calls are limited
+
+    // before interpret, the nodes are built with it
+    void useBudget(Budget budget) {
+        this.budget = budget;
+    }
+
+    public Environment interpret(Program program) {
+        return interpret(program, new Errors(System.err));
+    }
+
+    public Environment interpret(Program program, Errors errors) {
+        return interpret(program, new Object[0], errors);
+    }
+
+    // inputs are the values of the variables the program was resolved with as inputs
+    public Environment interpret(Program program, Object[] inputs, Errors errors) {
+        Block body = program.getBody();
+        Environment global = Environment.global(body.getLocals(), inputs);
+        try {
+            ((StmtNode.Block) buildStatement(body)).executeBody(global);
+        } catch (RuntimeError error) {
+            errors.runtimeError(error);
+        }
+        return global;
+    }
+
+    ExprNode.Body body(Function function) {
+        ExprNode.Body body = bodies.get(function);
+        if (body == null) {
+            body = new ExprNode.Body(this, buildTail(function.getBody()));
+            bodies.put(function, body);
+        }
+        return body;
+    }
+
+    // ---- building nodes from the ast
+
+    private StmtNode built;
+    private boolean tailPosition;   // expression being built is the value of a function body
+
+    private StmtNode buildStatement(Statement statement) {
+        statement.accept(this);
+        return built;
+    }
+
+    private ExprNode buildExpression(Expression expression) {
+        return buildExpression(expression, false);
+    }
+
+    private ExprNode buildTail(Expression expression) {
+        return buildExpression(expression, true);
+    }
+
+    private ExprNode buildExpression(Expression expression, boolean tail) {
+        tailPosition = tail;
+        return (expression == null) ? null : (ExprNode) expression.accept(this);
+    }
+
+    private ExprNode[] buildExpressions(List<Expression> expressions) {
+        ExprNode[] nodes = new ExprNode[expressions.size()];
+        for (int i = 0; i < nodes.length; ++i) {
+            nodes[i] = buildExpression(expressions.get(i));
+        }
+        return nodes;
+    }
+
+    @Override
+    public void visitIfStmt(IfStatement ifStatement) {
+        ExprNode condition = buildExpression(ifStatement.getCondition());
+        StmtNode thenBranch = buildStatement(ifStatement.getThenBranch());
+        StmtNode elseBranch = (ifStatement.getElseBranch() == null) ? null : buildStatement(ifStatement.getElseBranch());
+        built = new StmtNode.If(ifStatement.getIfToken(), condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public void visitWhile(While whileStmt) {
+        ExprNode condition = buildExpression(whileStmt.getCondition());
+        built = new StmtNode.While(whileStmt.getWhileToken(), condition, buildStatement(whileStmt.getBody()), budget);
+    }
+
+    @Override
+    public void visitAssignment(Assignment assignment) {
+        built = new StmtNode.Assign(assignment.getDepth(), assignment.getSlot(), buildExpression(assignment.getRight()));
+    }
+
+    @Override
+    public void visitBlock(Block block) {
+        StmtNode[] statements = new StmtNode[block.getStatements().size()];
+        for (int i = 0; i < statements.length; ++i) {
+            statements[i] = buildStatement(block.getStatements().get(i));
+        }
+        built = new StmtNode.Block(block.getLocals(), statements);
+    }
+
+    @Override
+    public void visitFunction(Function function) {
+        // function bodies are built on their first call
+    }
+
+    @Override
+    public Object visitArithmBinary(BinaryExpression.Arithm binaryArithm) {
+        return ArithmNode.create(buildExpression(binaryArithm.getLeft()), binaryArithm.getOperation(), buildExpression(binaryArithm.getRight()));
+    }
+
+    @Override
+    public Object visitLogicalBinary(BinaryExpression.Logical binaryLogical) {
+        return new ExprNode.Logical(buildExpression(binaryLogical.getLeft()), binaryLogical.getOperation(), buildExpression(binaryLogical.getRight()));
+    }
+
+    @Override
+    public Object visitCall(CallExpression callExpression) {
+        boolean tail = tailPosition;
+        Function function = callExpression.getFunction();
+
+        // same checks, in the same order, as Interpreter.visitCall
+        if (function == null) {
+            return new ExprNode.Failure(callExpression.getName(), "Function with this name doesn't exist.");
+        }
+        if (callExpression.getArguments() == null || function.getParameters() == null) {
+            return new ExprNode.Failure(callExpression.getName(), "Wrong number of arguments.");
+        }
+
+        ExprNode[] arguments = buildExpressions(callExpression.getArguments());
+        if (arguments.length != function.getParameterSlots().length) {
+            return new ExprNode.Failure(callExpression.getName(), "Wrong number of arguments.", arguments);
+        }
+        return new ExprNode.Call(this, callExpression.getName(), function, arguments, tail);
+    }
+
+    @Override
+    public Object visitIfExpr(IfExpression ifExpression) {
+        boolean tail = tailPosition;
+        return new ExprNode.If(ifExpression.getIfToken(), buildExpression(ifExpression.getCondition()),
+                buildExpression(ifExpression.getThenBranch(), tail), buildExpression(ifExpression.getElseBranch(), tail));
+    }
+
+    @Override
+    public Object visitLiteral(Literal literal) {
+        return new ExprNode.Literal(literal.getValue());
+    }
+
+    @Override
+    public Object visitUnary(Unary unary) {
+        ExprNode right = buildExpression(unary.getRight());
+        if (unary.getOperation().getType() == TokenType.MINUS) {
+            return new ExprNode.Negate(unary.getOperation(), right);
+        }
+        return new ExprNode.Not(unary.getOperation(), right);
+    }
+
+    @Override
+    public Object visitInvariant(Invariant invariant) {
+        return new ExprNode.Invariant(invariant.getDepth(), invariant.getSlot(), buildExpression(invariant.getExpression()));
+    }
+
+    @Override
+    public Object visitVariable(Variable variable) {
+        return new ExprNode.Variable(variable.getName(), variable.getDepth(), variable.getSlot());
+    }
+}
@@ -0,0 +1,102 @@
+import java.math.BigInteger;
+
+// SIPL numbers are arbitrary precision, but almost all of them fit into a long.
+// A number is kept as a Long while it fits and as a BigInteger only when it
+// doesn't, so every value has exactly one representation and plain equals()
+// still compares numbers. Small values come from a cache of boxes, so
+// typical loop counters don't allocate at all.
+public final class Numbers {
+    private static final int CACHE_LOW = -1024;
+    private static final int CACHE_HIGH = 1024;
+    private static final Long[] cache = new Long[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < cache.length; ++i) {
+            cache[i] = (long) (i + CACHE_LOW);
+        }
+    }
+
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private Numbers() {}
+
+    static Object valueOf(long value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return cache[(int) value - CACHE_LOW];
+        }
+        return value;
+    }
+
+    static Object valueOf(BigInteger value) {
+        if (value.compareTo(LONG_MIN) >= 0 && value.compareTo(LONG_MAX) <= 0) {
+            return valueOf(value.longValue());
+        }
+        return value;
+    }
+
+    static boolean isNumber(Object obj) {
+        return obj instanceof Long || obj instanceof BigInteger;
+    }
+
+    static boolean isZero(Object number) {
+        // zero always fits into a long
+        return number instanceof Long && (Long) number == 0;
+    }
+
+    static Object add(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            long a = (Long) left, b = (Long) right;
+            long result = a + b;
+            // overflow iff both operands have the sign the result doesn't
+            if (((a ^ result) & (b ^ result)) >= 0) { return valueOf(result); }
+        }
+        return valueOf(big(left).add(big(right)));
+    }
+
+    static Object subtract(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            long a = (Long) left, b = (Long) right;
+            long result = a - b;
+            if (((a ^ b) & (a ^ result)) >= 0) { return valueOf(result); }
+        }
+        return valueOf(big(left).subtract(big(right)));
+    }
+
+    static Object multiply(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            long a = (Long) left, b = (Long) right;
+            long high = Math.multiplyHigh(a, b);
+            long result = a * b;
+            if (high == (result >> 63)) { return valueOf(result); }
+        }
+        return valueOf(big(left).multiply(big(right)));
+    }
+
+    // caller checks for division by zero
+    static Object divide(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            long a = (Long) left, b = (Long) right;
+            if (!(a == Long.MIN_VALUE && b == -1)) { return valueOf(a / b); }
+        }
+        return valueOf(big(left).divide(big(right)));
+    }
+
+    static Object negate(Object number) {
+        if (number instanceof Long && (Long) number != Long.MIN_VALUE) {
+            return valueOf(-(Long) number);
+        }
+        return valueOf(big(number).negate());
+    }
+
+    static int compare(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            return Long.compare((Long) left, (Long) right);
+        }
+        return big(left).compareTo(big(right));
+    }
+
+    static BigInteger big(Object number) {
+        return (number instanceof Long) ? BigInteger.valueOf((Long) number) : (BigInteger) number;
+    }
+}
@@ -0,0 +1,45 @@
+// Instruction set of the bytecode VM. Every instruction is an opcode followed
+// by its operands in the int[] code of a Chunk; "k" operands index the chunk's
+// constant pool, which also holds the tokens used for error reporting.
+final class OpCode {
+    private OpCode() {}
+
+    static final int CONST = 0;             // k                push constants[k]
+    static final int LOAD = 1;              // slot, kToken     push variable, error if unassigned
+    static final int STORE = 2;             // slot             pop into variable
+    static final int CLEAR = 3;             // slot, count      forget the locals of a block being entered
+
+    static final int ADD = 4;               // kToken           arithmetic and comparisons pop
+    static final int SUBTRACT = 5;          // kToken           two numbers and push the result
+    static final int MULTIPLY = 6;          // kToken
+    static final int DIVIDE = 7;            // kToken
+    static final int EQUAL = 8;             // kToken
+    static final int NOT_EQUAL = 9;         // kToken
+    static final int GREATER = 10;          // kToken
+    static final int GREATER_EQUAL = 11;    // kToken
+    static final int LESS = 12;             // kToken
+    static final int LESS_EQUAL = 13;       // kToken
+
+    static final int NEGATE = 14;           // kToken
+    static final int NOT = 15;              // kToken
+    static final int CHECK_BOOL = 16;       // kToken           error if top isn't a boolean
+
+    static final int JUMP = 17;             // target
+    static final int JUMP_IF_FALSE = 18;    // target, kToken, kMessage   pop condition
+    static final int JUMP_IF_TRUE_KEEP = 19;    // target       jump keeping top if true, else pop
+    static final int JUMP_IF_FALSE_KEEP = 20;   // target       jump keeping top if false, else pop
+
+    static final int CALL = 21;             // function, argc, kToken   call with argc arguments on the stack
+    static final int RETURN = 22;           // return top from a function
+    static final int HALT = 23;             // end of program
+
+    static final int ERROR = 24;            // kToken, kMessage throw RuntimeError
+    static final int MISSING_ELSE = 25;     // if-expression without else took the else branch
+
+    static final int TAIL_CALL = 26;        // function, argc, kToken   call in tail position, replaces the running frame
+
+    static final int CACHED = 27;           // target, slot     push variable and jump if it is assigned
+    static final int CACHE = 28;            // slot             copy top into variable
+
+    static final int ITERATE = 29;          // target, kToken, kMessage   JUMP_IF_FALSE of a while, a step if it doesn't jump
+}
@@ -0,0 +1,260 @@
+import ast.*;
+import token.TokenType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Rewrites a parsed Program before it is resolved: folds operations on
+// constants, drops the branches of ifs and the whiles whose conditions are
+// constant, and drops the functions that can never be called.
+//
+// Whatever would fail at run time is left in place, e.g. a division by a
+// constant zero, so errors are reported as without the optimizer, from the
+// same line. Operands that are never evaluated, like the left operand of
+// "x or true", are dropped along with the errors they could have raised.
+public class Optimizer implements Visitor {
+
+    private final Map<String, Object> constants;   // variables known to hold a value
+    private Statement optimized;    // result of the last statement visited, null if it was dropped
+    private Set<String> calls = new HashSet<>();    // names called by the function or body being optimized
+
+    public Optimizer() {
+        this(new HashMap<>());
+    }
+
+    // for code in which the given variables are known to hold the given values
+    Optimizer(Map<String, Object> constants) {
+        this.constants = constants;
+    }
+
+    public Program optimize(Program program) {
+        Map<Function, Set<String>> callsOf = new IdentityHashMap<>();
+        List<Function> functions = null;
+        if (program.getFunctions() != null) {
+            functions = new ArrayList<>();
+            for (Function function : program.getFunctions()) {
+                calls = new HashSet<>();
+                Function optimizedFunction = new Function(function.getName(), function.getParameters(),
+                        optimizeExpression(function.getBody()));
+                functions.add(optimizedFunction);
+                callsOf.put(optimizedFunction, calls);
+            }
+        }
+
+        calls = new HashSet<>();
+        Block body = optimizeBlock(program.getBody());
+        if (functions == null) { return new Program(null, body); }
+
+        return new Program(called(functions, callsOf, calls), body);
+    }
+
+    // functions reachable from the calls of the program body, in declaration order
+    private static List<Function> called(List<Function> functions, Map<Function, Set<String>> callsOf,
+                                         Set<String> bodyCalls) {
+        // a later declaration with the same name wins, as in the interpreter
+        Map<String, Function> byName = new HashMap<>();
+        for (Function function : functions) {
+            byName.put(function.getName().getLexeme(), function);
+        }
+
+        Set<Function> reached = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(bodyCalls);
+        while (!pending.isEmpty()) {
+            Function function = byName.get(pending.pop());
+            if (function != null && reached.add(function)) {
+                pending.addAll(callsOf.get(function));
+            }
+        }
+
+        List<Function> called = new ArrayList<>();
+        for (Function function : functions) {
+            if (reached.contains(function)) { called.add(function); }
+        }
+        return called;
+    }
+
+    // ---- statements
+
+    // the optimized statement, null if it was dropped
+    Statement optimizeStatement(Statement statement) {
+        statement.accept(this);
+        return optimized;
+    }
+
+    private Block optimizeBlock(Block block) {
+        List<Statement> statements = new ArrayList<>();
+        for (Statement statement : block.getStatements()) {
+            Statement result = optimizeStatement(statement);
+            if (result != null) { statements.add(result); }
+        }
+        return new Block(statements);
+    }
+
+    @Override
+    public void visitIfStmt(IfStatement ifStatement) {
+        Expression condition = optimizeExpression(ifStatement.getCondition());
+        if (isBoolean(condition)) {
+            Block branch = (Boolean) ((Literal) condition).getValue()
+                    ? ifStatement.getThenBranch() : ifStatement.getElseBranch();
+            optimized = (branch == null) ? null : optimizeStatement(branch);
+            return;
+        }
+
+        Block elseBranch = (ifStatement.getElseBranch() == null) ? null : optimizeBlock(ifStatement.getElseBranch());
+        optimized = new IfStatement(ifStatement.getIfToken(), condition,
+                optimizeBlock(ifStatement.getThenBranch()), elseBranch);
+    }
+
+    @Override
+    public void visitWhile(While whileStmt) {
+        Expression condition = optimizeExpression(whileStmt.getCondition());
+        if (isBoolean(condition) && !(Boolean) ((Literal) condition).getValue()) {
+            optimized = null;
+            return;
+        }
+        optimized = new While(whileStmt.getWhileToken(), condition, optimizeBlock(whileStmt.getBody()));
+    }
+
+    @Override
+    public void visitAssignment(Assignment assignment) {
+        optimized = new Assignment(assignment.getVariable(), optimizeExpression(assignment.getRight()));
+    }
+
+    @Override
+    public void visitBlock(Block block) {
+        Block result = optimizeBlock(block);
+        // an empty block has nothing to run
+        optimized = result.getStatements().isEmpty() ? null : result;
+    }
+
+    @Override
+    public void visitFunction(Function function) {
+        // functions are optimized by optimize(Program)
+    }
+
+    // ---- expressions
+
+    private Expression optimizeExpression(Expression expression) {
+        return (expression == null) ? null : (Expression) expression.accept(this);
+    }
+
+    @Override
+    public Object visitArithmBinary(BinaryExpression.Arithm binaryArithm) {
+        Expression left = optimizeExpression(binaryArithm.getLeft());
+        Expression right = optimizeExpression(binaryArithm.getRight());
+
+        if (isNumber(left) && isNumber(right)) {
+            Object a = ((Literal) left).getValue();
+            Object b = ((Literal) right).getValue();
+            switch (binaryArithm.getOperation().getType()) {
+                case PLUS:
+                    return new Literal(Numbers.add(a, b));
+                case MINUS:
+                    return new Literal(Numbers.subtract(a, b));
+                case ASTERISK:
+                    return new Literal(Numbers.multiply(a, b));
+                case SLASH:
+                    // division by zero keeps failing at run time
+                    if (!Numbers.isZero(b)) { return new Literal(Numbers.divide(a, b)); }
+                    break;
+                case EQUAL:
+                    return new Literal(a.equals(b));
+                case NOT_EQUAL:
+                    return new Literal(!a.equals(b));
+                case GREATER:
+                    return new Literal(Numbers.compare(a, b) > 0);
+                case GREATER_EQUAL:
+                    return new Literal(Numbers.compare(a, b) >= 0);
+                case LESS:
+                    return new Literal(Numbers.compare(a, b) < 0);
+                case LESS_EQUAL:
+                    return new Literal(Numbers.compare(a, b) <= 0);
+            }
+        }
+        return new BinaryExpression.Arithm(left, binaryArithm.getOperation(), right);
+    }
+
+    @Override
+    public Object visitLogicalBinary(BinaryExpression.Logical binaryLogical) {
+        // the right operand is evaluated first, the left one only if it decides nothing
+        Expression right = optimizeExpression(binaryLogical.getRight());
+        if (isBoolean(right)) {
+            boolean value = (Boolean) ((Literal) right).getValue();
+            if (value == (binaryLogical.getOperation().getType() == TokenType.OR)) {
+                return right;
+            }
+
+            Expression left = optimizeExpression(binaryLogical.getLeft());
+            if (isBoolean(left)) { return left; }
+            return new BinaryExpression.Logical(left, binaryLogical.getOperation(), right);
+        }
+        return new BinaryExpression.Logical(optimizeExpression(binaryLogical.getLeft()), binaryLogical.getOperation(), right);
+    }
+
+    @Override
+    public Object visitCall(CallExpression callExpression) {
+        calls.add(callExpression.getName().getLexeme());
+        if (callExpression.getArguments() == null) { return new CallExpression(callExpression.getName(), null); }
+
+        List<Expression> arguments = new ArrayList<>();
+        for (Expression argument : callExpression.getArguments()) {
+            arguments.add(optimizeExpression(argument));
+        }
+        return new CallExpression(callExpression.getName(), arguments);
+    }
+
+    @Override
+    public Object visitIfExpr(IfExpression ifExpression) {
+        Expression condition = optimizeExpression(ifExpression.getCondition());
+        if (isBoolean(condition)) {
+            Expression branch = (Boolean) ((Literal) condition).getValue()
+                    ? ifExpression.getThenBranch() : ifExpression.getElseBranch();
+            // a missing else branch keeps failing at run time
+            if (branch != null) { return optimizeExpression(branch); }
+        }
+        return new IfExpression(ifExpression.getIfToken(), condition,
+                optimizeExpression(ifExpression.getThenBranch()), optimizeExpression(ifExpression.getElseBranch()));
+    }
+
+    @Override
+    public Object visitLiteral(Literal literal) {
+        return literal;
+    }
+
+    @Override
+    public Object visitUnary(Unary unary) {
+        Expression right = optimizeExpression(unary.getRight());
+        if (unary.getOperation().getType() == TokenType.MINUS) {
+            if (isNumber(right)) { return new Literal(Numbers.negate(((Literal) right).getValue())); }
+        } else if (isBoolean(right)) {
+            return new Literal(!(Boolean) ((Literal) right).getValue());
+        }
+        return new Unary(unary.getOperation(), right);
+    }
+
+    @Override
+    public Object visitVariable(Variable variable) {
+        Object value = constants.get(variable.getName().getLexeme());
+        return (value == null) ? new Variable(variable.getName()) : new Literal(value);
+    }
+
+    @Override
+    public Object visitInvariant(Invariant invariant) {
+        return new Invariant(optimizeExpression(invariant.getExpression()), invariant.getLoop());
+    }
+
+    private static boolean isNumber(Expression expression) {
+        return expression instanceof Literal && Numbers.isNumber(((Literal) expression).getValue());
+    }
+
+    private static boolean isBoolean(Expression expression) {
+        return expression instanceof Literal && ((Literal) expression).getValue() instanceof Boolean;
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Command line switches of SIPL.
+final class Options {
+    enum Engine {
+        TREE,   // Interpreter walking the ast, the default
+        VM,     // --vm: bytecode compiled by Compiler, run by VM
+        NODES   // --nodes: self-specializing node tree run by NodeInterpreter
+    }
+
+    String path = "/Users/Vlada/Desktop/SIPL_Interpreter/src/tests/test1.txt";
+    List<String> paths = new ArrayList<>();     // all files given, run at the same time if there are several
+    Engine engine = Engine.TREE;
+    boolean jit = false;        // --jit: compile hot functions and loops of the tree interpreter
+    int memo = 0;               // --memo[=N]: cache up to N call results in the tree interpreter, 0 for off
+    int parallel = 0;           // --parallel[=N]: evaluate calls on N threads in the tree interpreter, 0 for off
+    int parallelDepth = Parallel.DEFAULT_DEPTH;     // --parallel-depth=N: no new tasks in calls nested N deep
+    boolean stream = false;     // --stream: parse tokens as they are scanned from the file instead of reading it whole
+    boolean optimize = false;   // --optimize: rewrite the program with Optimizer and LoopOptimizer before running it, Inliner and CommonSubexpressions after resolving it, and skip the type checks TypeInference proves can't fail
+    boolean types = false;      // --types: report the type errors TypeInference finds before running the program, and don't run it if there are any
+    boolean cache = false;      // --cache: load the parsed program from a .siplc file next to the source, see ProgramCache; not with --stream
+    boolean profile = false;    // --profile: count and time statements and calls of the tree interpreter, report the hot ones
+    long fuel = 0;              // --fuel=N: fail after N loop iterations and calls, 0 for no limit
+    long timeout = 0;           // --timeout=MS: fail a run after MS milliseconds, 0 for no limit
+
+    // fails with an IllegalArgumentException, its message for the user, if
+    // an option that takes a number has something else
+    static Options parse(String[] args) {
+        Options options = new Options();
+        for (String arg : args) {
+            switch (arg) {
+                case "--vm": options.engine = Engine.VM; break;
+                case "--nodes": options.engine = Engine.NODES; break;
+                case "--jit": options.jit = true; break;
+                case "--memo": options.memo = Memo.DEFAULT_CAPACITY; break;
+                case "--optimize": options.optimize = true; break;
+                case "--types": options.types = true; break;
+                case "--stream": options.stream = true; break;
+                case "--profile": options.profile = true; break;
+                case "--cache": options.cache = true; break;
+                case "--parallel": options.parallel = Runtime.getRuntime().availableProcessors(); break;
+                default:
+                    if (arg.startsWith("--memo=")) { options.memo = (int) number(arg, Integer.MAX_VALUE); }
+                    else if (arg.startsWith("--parallel=")) {
+                        options.parallel = (int) number(arg, Integer.MAX_VALUE);
+                    } else if (arg.startsWith("--parallel-depth=")) {
+                        options.parallelDepth = (int) number(arg, Integer.MAX_VALUE);
+                    } else if (arg.startsWith("--fuel=")) {
+                        options.fuel = number(arg, Long.MAX_VALUE);
+                    } else if (arg.startsWith("--timeout=")) {
+                        options.timeout = number(arg, Long.MAX_VALUE);
+                    } else {
+                        options.path = arg;
+                        options.paths.add(arg);
+                    }
+            }
+        }
+        return options;
+    }
+
+    // the number after the '=' of arg, from 0 to max
+    private static long number(String arg, long max) {
+        String value = arg.substring(arg.indexOf('=') + 1);
+        try {
+            long number = Long.parseLong(value);
+            if (number >= 0 && number <= max) { return number; }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        String range = (max == Long.MAX_VALUE) ? "of 0 or more" : "from 0 to " + max;
+        throw new IllegalArgumentException(arg.substring(0, arg.indexOf('=')) + " takes a number " + range
+                + ", not '" + value + "'");
+    }
+}
@@ -0,0 +1,143 @@
+import ast.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+// Parallel evaluation for the Interpreter.
+//
+// Expressions never assign variables and function bodies only see their
+// arguments, so the operands of an arithmetic operation and the arguments of
+// a call can be evaluated at the same time, each by an Interpreter of its
+// own reading the same environment. Only operands containing a call are
+// worth a task, and only while calls are nested less than maxDepth deep and
+// the pool has little queued work, so the leaves of a recursion stay
+// sequential.
+//
+// Results are taken in evaluation order: the error reported is the one the
+// sequential evaluation would have run into first. The tasks after it are
+// discarded before it is thrown.
+class Parallel {
+    static final int DEFAULT_DEPTH = 12;
+    private static final int MAX_SURPLUS = 2;   // queued tasks of a worker above which nothing is forked
+
+    private final ForkJoinPool pool;
+    private final int maxDepth;
+    private final Map<Expression, Boolean> costly = new ConcurrentHashMap<>();
+    private final LongAdder forked = new LongAdder();
+
+    Parallel(int threads, int maxDepth) {
+        this.pool = new ForkJoinPool(threads);
+        this.maxDepth = maxDepth;
+    }
+
+    // runs work, e.g. a whole program, in the pool so that it can fork
+    <T> T run(Callable<T> work) {
+        try {
+            return pool.invoke(ForkJoinTask.adapt(work));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // a task evaluating expression with interpreter, forked
+    Evaluation fork(Interpreter interpreter, Expression expression) {
+        Evaluation task = new Evaluation(interpreter, expression);
+        task.fork();
+        forked.increment();
+        return task;
+    }
+
+    // how many tasks were forked
+    long forked() { return forked.sum(); }
+
+    boolean worthForking(int depth) {
+        return depth < maxDepth && ForkJoinTask.inForkJoinPool()
+                && ForkJoinTask.getSurplusQueuedTaskCount() <= MAX_SURPLUS;
+    }
+
+    // whether evaluating expression calls a function
+    boolean isCostly(Expression expression) {
+        Boolean result = costly.get(expression);
+        if (result == null) {
+            result = hasCall(expression);
+            costly.put(expression, result);
+        }
+        return result;
+    }
+
+    // whether more than one of expressions is costly
+    boolean severalCostly(List<Expression> expressions) {
+        int count = 0;
+        for (Expression expression : expressions) {
+            if (isCostly(expression) && ++count > 1) { return true; }
+        }
+        return false;
+    }
+
+    private static boolean hasCall(Expression expression) {
+        if (expression instanceof CallExpression) { return true; }
+        if (expression instanceof BinaryExpression) {
+            BinaryExpression binary = (BinaryExpression) expression;
+            return hasCall(binary.getLeft()) || hasCall(binary.getRight());
+        }
+        if (expression instanceof Unary) { return hasCall(((Unary) expression).getRight()); }
+        if (expression instanceof IfExpression) {
+            IfExpression ifExpression = (IfExpression) expression;
+            return hasCall(ifExpression.getCondition()) || hasCall(ifExpression.getThenBranch())
+                    || hasCall(ifExpression.getElseBranch());
+        }
+        if (expression instanceof Invariant) { return hasCall(((Invariant) expression).getExpression()); }
+        if (expression instanceof Common) { return hasCall(((Common) expression).getExpression()); }
+        return false;
+    }
+
+    // an expression evaluated by another Interpreter; failures are kept for
+    // the forking thread instead of being thrown in the pool
+    static class Evaluation extends RecursiveTask<Object> {
+        private static final long serialVersionUID = 1L;
+
+        private final Interpreter interpreter;
+        private final Expression expression;
+        private Throwable failure;
+
+        Evaluation(Interpreter interpreter, Expression expression) {
+            this.interpreter = interpreter;
+            this.expression = expression;
+        }
+
+        @Override
+        protected Object compute() {
+            try {
+                return interpreter.evaluate(expression);
+            } catch (RuntimeException | Error e) {
+                failure = e;
+                return null;
+            }
+        }
+
+        Object result() {
+            Object value = join();
+            if (failure != null) { rethrow(failure); }
+            return value;
+        }
+
+        // for a task whose result isn't needed any more because an operand
+        // before it failed: cancels it if it hasn't started and waits for it
+        // if it has, so no work of a failed evaluation is left in the pool
+        void discard() {
+            cancel(true);
+            quietlyJoin();
+        }
+    }
+
+    private static void rethrow(Throwable failure) {
+        if (failure instanceof RuntimeException) { throw (RuntimeException) failure; }
+        throw (Error) failure;
+    }
+}
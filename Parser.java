@@ -9,15 +9,81 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
 
 public class Parser {
-    private List<Token> tokens;
+    private TokenStream tokens;
+    private final Errors errors;
     private int current = 0;
+    private Map<Node, int[]> spans;     // tokens of the functions, blocks and statements parsed, if kept
+    private int firstError = -1;        // first and last token an error was reported at
+    private int lastError = -1;
+    private boolean quiet = false;      // errors are only recorded, not reported
+    private IntConsumer units;          // told where the functions and statements of the program body start, if set
 
     public Parser(List<Token> tokens) {
-        this.tokens = tokens;
+        this.tokens = new TokenStream(tokens);
+        this.errors = new Errors(System.err);
     }
 
+    // parses tokens as the lexer scans them, reports errors where it does
+    public Parser(Lexer lexer) {
+        this.tokens = new TokenStream(lexer::nextToken);
+        this.errors = lexer.getErrors();
+    }
+
+    public Parser(TokenBuffer tokens) {
+        this(tokens, new Errors(System.err));
+    }
+
+    public Parser(TokenBuffer tokens, Errors errors) {
+        this.tokens = new TokenStream(tokens);
+        this.errors = errors;
+    }
+
+    public Errors getErrors() { return errors; }
+
+    // ---- for IncrementalParser
+
+    // keeps the first token and the one after the last of every Function,
+    // Block and Statement parsed in spans
+    void keepSpans(Map<Node, int[]> spans) { this.spans = spans; }
+
+    void quiet(boolean quiet) { this.quiet = quiet; }
+
+    // tells units the first token of every function and of every statement
+    // of the program body, before taking any of their tokens
+    void keepUnits(IntConsumer units) { this.units = units; }
+
+    int position() { return current; }
+
+    int firstError() { return firstError; }
+
+    int lastError() { return lastError; }
+
+    Function parseFunctionAt(int index) {
+        current = index;
+        return parseFunction();
+    }
+
+    Block parseBlockAt(int index) {
+        current = index;
+        return parseBlock();
+    }
+
+    Statement parseStatementAt(int index) {
+        current = index;
+        return parseStatement();
+    }
+
+    private <T extends Node> T span(T node, int first) {
+        if (spans != null && node != null) { spans.put(node, new int[] {first, current}); }
+        return node;
+    }
+
+    // ----
+
     public Program parseProgram(){
         try {
             consume(TokenType.PROGRAM, "Expect 'program'.");
@@ -25,7 +91,7 @@ public class Parser {
             if (check(TokenType.FUNC)) {
                 functions = parseFunctions();
             }
-            Block body = parseBlock();
+            Block body = parseBlock(true);
             return new Program(functions, body);
 
         } catch (ParseError parseError) {
@@ -44,9 +110,12 @@ public class Parser {
     }
 
     private Function parseFunction() {
+        int first = current;
+        if (units != null) { units.accept(first); }
         try {
             consume(TokenType.FUNC, "Expect 'func' for function declaration.");
-            Token name = consume(TokenType.IDENTIFIER, "Expect function name.");
+            consume(TokenType.IDENTIFIER, "Expect function name.");
+            Token name = previous();
             consume(TokenType.LEFT_PAREN, "Expect '(' after function name.");
 
             List<Token> arguments = null;
@@ -59,7 +128,7 @@ public class Parser {
 
             Expression body = parseExpression();
 
-            return new Function(name, arguments, body);
+            return span(new Function(name, arguments, body), first);
         } catch (ParseError parseError) {
             skipFuncError();
             return null;
@@ -78,17 +147,24 @@ public class Parser {
     }
 
     private Block parseBlock() {
+        return parseBlock(false);
+    }
+
+    private Block parseBlock(boolean body) {
+        int first = current;
         try {
             List<Statement> statements = new ArrayList<>();
             consume(TokenType.BEGIN, "Expect 'begin'");
 
+            if (body && units != null) { units.accept(current); }
             statements.add(parseStatement());
             while (match(TokenType.SEMICOLON)) {
+                if (body && units != null) { units.accept(current); }
                 statements.add(parseStatement());
             }
 
             consume(TokenType.END, "Expect 'end' after block.");
-            return new Block(statements);
+            return span(new Block(statements), first);
 
         } catch (ParseError parseError) {
             skipError();
@@ -97,15 +173,16 @@ public class Parser {
     }
 
     private Statement parseStatement() {
+        int first = current;
         try {
             if (match(TokenType.IF)) {
-                return parseIfStmt();
+                return span(parseIfStmt(), first);
             }
             if (match(TokenType.WHILE)) {
-                return parseWhile();
+                return span(parseWhile(), first);
             }
             if (match(TokenType.IDENTIFIER)) {
-                return parseAssignment();
+                return span(parseAssignment(), first);
             }
             throw error(peek(), "Invalid statement");
         } catch (ParseError parseError) {
@@ -229,7 +306,7 @@ public class Parser {
         if (match(TokenType.NUMBER, TokenType.TRUE, TokenType.FALSE)) {
             return new Literal(previous().getLiteral());
         }
-        if (check(TokenType.IDENTIFIER) && peekNext().getType() == TokenType.LEFT_PAREN) {
+        if (check(TokenType.IDENTIFIER) && tokens.type(current + 1) == TokenType.LEFT_PAREN) {
             return parseCallExpression();
         } else
         if (match(TokenType.IDENTIFIER)) {
@@ -276,21 +353,26 @@ public class Parser {
         return new IfExpression(ifToken, condition, thenBranch, elseBranch);
     }
 
-    private Token consume(TokenType type, String message) {
-        if (check(type)) { return nextToken(); }
+    private void consume(TokenType type, String message) {
+        if (check(type)) {
+            ++current;
+            return;
+        }
 
         throw error(peek(), message);
     }
 
     private ParseError error(Token token, String message) {
-        SIPL.error(token, message);
+        if (firstError < 0) { firstError = current; }
+        lastError = current;
+        if (!quiet) { errors.error(token, message); }
         return new ParseError();
     }
 
     private boolean match(TokenType... tokenTypes) {
         for (TokenType type : tokenTypes) {
             if (check(type)) {
-                nextToken();
+                ++current;
                 return true;
             }
         }
@@ -299,19 +381,15 @@ public class Parser {
 
     private boolean check(TokenType tokenType) {
         if (isAtEnd()) return false;
-        return peek().getType() == tokenType;
+        return tokens.type(current) == tokenType;
     }
 
     private Token peek() {
         return tokens.get(current);
     }
 
-    private Token peekNext() {
-        return tokens.get(current + 1);
-    }
-
     private boolean isAtEnd() {
-        return peek().getType() == TokenType.EOF;
+        return tokens.type(current) == TokenType.EOF;
     }
 
     private Token nextToken() {
@@ -325,19 +403,19 @@ public class Parser {
     private void skipFuncError() {
 
         while (!isAtEnd()) {
-            switch (peek().getType()) {
+            switch (tokens.type(current)) {
                 case SEMICOLON:
                 case FUNC:
                 case BEGIN:
                     return;
             }
-            nextToken();
+            ++current;
         }
     }
 
     private void skipError() {
         while (!isAtEnd()) {
-            switch (peek().getType()) {
+            switch (tokens.type(current)) {
                 case END:
                 case SEMICOLON:
                 case FUNC:
@@ -345,7 +423,7 @@ public class Parser {
                 case WHILE:
                     return;
             }
-            nextToken();
+            ++current;
         }
     }
 }
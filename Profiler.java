@@ -0,0 +1,106 @@
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Execution counts and times of the statements and functions the
+// Interpreter runs, for finding where a slow program spends its time.
+//
+// Every assignment, if and while executed and every function called is
+// entered when it starts and left when it ends. Its total time runs from
+// entering to leaving it, its self time leaves out what was entered in
+// between. A recursive function's total time is only counted for the
+// outermost call, so it isn't counted again for every call in it. A tail
+// call leaves the caller and enters the callee, as the interpreter runs it
+// in the caller's place.
+//
+// What compiled code of the JIT runs is part of the loop or the function it
+// was compiled from.
+class Profiler {
+    private static final class Entry {
+        final String kind;
+        final String name;
+        final int line;
+        long count;
+        long total;     // nanoseconds
+        long self;
+        int active;     // times it is on the stack
+
+        Entry(String kind, String name, int line) {
+            this.kind = kind;
+            this.name = name;
+            this.line = line;
+        }
+    }
+
+    private final Map<Node, Entry> entries = new IdentityHashMap<>();
+    private Entry[] stack = new Entry[64];
+    private long[] starts = new long[64];
+    private long[] inner = new long[64];    // time of what was entered from the one on the stack
+    private int size = 0;
+
+    void enter(Node node) {
+        Entry entry = entries.get(node);
+        if (entry == null) {
+            entry = entry(node);
+            entries.put(node, entry);
+        }
+        if (size == stack.length) {
+            stack = Arrays.copyOf(stack, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            inner = Arrays.copyOf(inner, size * 2);
+        }
+        entry.count++;
+        entry.active++;
+        stack[size] = entry;
+        inner[size] = 0;
+        starts[size++] = System.nanoTime();
+    }
+
+    // leaves what was entered last
+    void exit() {
+        long time = System.nanoTime() - starts[--size];
+        Entry entry = stack[size];
+        stack[size] = null;
+        entry.self += time - inner[size];
+        if (--entry.active == 0) { entry.total += time; }
+        if (size > 0) { inner[size - 1] += time; }
+    }
+
+    private static Entry entry(Node node) {
+        if (node instanceof Function) {
+            Function function = (Function) node;
+            return new Entry("func", function.getName().getLexeme(), function.getName().getLine());
+        }
+        if (node instanceof While) {
+            return new Entry("while", "", ((While) node).getWhileToken().getLine());
+        }
+        if (node instanceof IfStatement) {
+            return new Entry("if", "", ((IfStatement) node).getIfToken().getLine());
+        }
+        Assignment assignment = (Assignment) node;
+        return new Entry("assign", assignment.getVariable().getLexeme(), assignment.getVariable().getLine());
+    }
+
+    // the entries by self time, most first
+    @Override
+    public String toString() {
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort((a, b) -> (a.self != b.self) ? Long.compare(b.self, a.self) : Integer.compare(a.line, b.line));
+
+        long all = 0;
+        for (Entry entry : sorted) {
+            all += entry.self;
+        }
+        StringBuilder report = new StringBuilder(String.format("profile: %.3f ms%n", all / 1e6));
+        report.append(String.format("%6s %12s %12s %12s  %s%n", "line", "self ms", "total ms", "count", "node"));
+        for (Entry entry : sorted) {
+            report.append(String.format("%6d %12.3f %12.3f %12d  %s%n", entry.line, entry.self / 1e6,
+                    entry.total / 1e6, entry.count, entry.name.isEmpty() ? entry.kind : entry.kind + " " + entry.name));
+        }
+        return report.toString();
+    }
+}
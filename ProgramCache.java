@@ -0,0 +1,517 @@
+import ast.*;
+import token.Token;
+import token.TokenType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Parsed programs kept on disk, so a source that didn't change since it was
+// last run isn't scanned and parsed again: a .siplc file next to it holds
+// its Program as it came out of the Parser, before it is optimized or
+// resolved.
+//
+// The file starts with MAGIC, VERSION and the SHA-256 of the source it was
+// made from, and is only used for a source with the same hash. Then follow
+// the CRC-32 of the rest, the strings, the tokens, each a type, a string, a
+// line and a literal, and the nodes, each a tag and its fields in the order
+// of their constructor, with tokens and strings by their index. Counts,
+// indexes and lines are varints. A token the Parser shared between
+// nodes is written once and shared again.
+//
+// A file that can't be read, is from another VERSION, doesn't match its
+// CRC or doesn't decode is not used and is written again once the source is
+// parsed. Every count is checked against the bytes left before anything is
+// allocated for it, so a damaged file can't make the reader run out of
+// memory.
+class ProgramCache {
+    static final String EXTENSION = ".siplc";
+
+    private static final int MAGIC = 0x5349504c;    // "SIPL"
+    private static final int VERSION = 2;
+
+    // tags of the nodes
+    private static final byte NONE = 0, FUNCTION = 1, BLOCK = 2, ASSIGNMENT = 3, IF = 4, WHILE = 5,
+            ARITHM = 6, LOGICAL = 7, UNARY = 8, CALL = 9, IF_EXPRESSION = 10, VARIABLE = 11, LITERAL = 12;
+
+    // tags of literals
+    private static final byte NULL = 0, FALSE = 1, TRUE = 2, LONG = 3, BIG = 4;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final Path file;
+
+    ProgramCache(Path source) {
+        String name = source.getFileName().toString();
+        this.file = source.resolveSibling(name.endsWith(".sipl") ? name + "c" : name + EXTENSION);
+    }
+
+    // the program cached for source, null if there is none for it
+    Program load(byte[] source) {
+        if (!Files.isRegularFile(file)) { return null; }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) { return null; }
+
+            byte[] hash = new byte[32];
+            buffer.get(hash);
+            if (!Arrays.equals(hash, hash(source))) { return null; }
+            int crc = buffer.getInt();
+            if (crc != crc(buffer.duplicate())) { return null; }
+            return new Reader(buffer).program();
+        } catch (IOException | RuntimeException e) {
+            // whatever is wrong with the file, the source is parsed again
+            return null;
+        }
+    }
+
+    // keeps program, parsed from source, for the next run; a file that can't
+    // be written only means it is parsed again next time
+    void store(byte[] source, Program program) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(hash(source));
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream payloadOut = new DataOutputStream(payload);
+            new Writer().write(program, payloadOut);
+            payloadOut.flush();
+            out.writeInt(crc(ByteBuffer.wrap(payload.toByteArray())));
+            payload.writeTo(out);
+            out.flush();
+
+            // written whole and then moved, so a run at the same time never reads half of it
+            Path temporary = file.resolveSibling(file.getFileName() + "." + System.nanoTime() + ".tmp");
+            try {
+                Files.write(temporary, bytes.toByteArray(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // no cache then
+        }
+    }
+
+    private static int crc(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] hash(byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ---- writing
+
+    // writes the nodes it visits to tree, and the tokens and strings they
+    // refer to to their tables, which come first in the file
+    private static class Writer implements Visitor {
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Map<Token, Integer> tokens = new IdentityHashMap<>();
+        private final ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        private final DataOutputStream stringTable = new DataOutputStream(stringBytes);
+        private final ByteArrayOutputStream tokenBytes = new ByteArrayOutputStream();
+        private final DataOutputStream tokenTable = new DataOutputStream(tokenBytes);
+        private final ByteArrayOutputStream treeBytes = new ByteArrayOutputStream();
+        private final DataOutputStream tree = new DataOutputStream(treeBytes);
+
+        void write(Program program, DataOutputStream out) throws IOException {
+            write(program.getFunctions());
+            write(program.getBody());
+
+            varint(out, strings.size());
+            stringTable.flush();
+            stringBytes.writeTo(out);
+            varint(out, tokens.size());
+            tokenTable.flush();
+            tokenBytes.writeTo(out);
+            tree.flush();
+            treeBytes.writeTo(out);
+        }
+
+        private void write(Node node) {
+            if (node == null) {
+                tag(NONE);
+            } else if (node instanceof Statement) {
+                ((Statement) node).accept(this);
+            } else {
+                ((Expression) node).accept(this);
+            }
+        }
+
+        private void write(List<? extends Node> nodes) {
+            integer((nodes == null) ? 0 : nodes.size() + 1);
+            if (nodes == null) { return; }
+            for (Node node : nodes) {
+                write(node);
+            }
+        }
+
+        private void writeTokens(List<Token> list) {
+            integer((list == null) ? 0 : list.size() + 1);
+            if (list == null) { return; }
+            for (Token token : list) {
+                token(token);
+            }
+        }
+
+        @Override
+        public void visitIfStmt(IfStatement ifStatement) {
+            tag(IF);
+            token(ifStatement.getIfToken());
+            write(ifStatement.getCondition());
+            write(ifStatement.getThenBranch());
+            write(ifStatement.getElseBranch());
+        }
+
+        @Override
+        public void visitWhile(While whileStmt) {
+            tag(WHILE);
+            token(whileStmt.getWhileToken());
+            write(whileStmt.getCondition());
+            write(whileStmt.getBody());
+        }
+
+        @Override
+        public void visitAssignment(Assignment assignment) {
+            tag(ASSIGNMENT);
+            token(assignment.getVariable());
+            write(assignment.getRight());
+        }
+
+        @Override
+        public void visitBlock(Block block) {
+            tag(BLOCK);
+            write(block.getStatements());
+        }
+
+        @Override
+        public void visitFunction(Function function) {
+            tag(FUNCTION);
+            token(function.getName());
+            writeTokens(function.getParameters());
+            write(function.getBody());
+        }
+
+        @Override
+        public Object visitArithmBinary(BinaryExpression.Arithm binaryArithm) {
+            tag(ARITHM);
+            binary(binaryArithm);
+            return null;
+        }
+
+        @Override
+        public Object visitLogicalBinary(BinaryExpression.Logical binaryLogical) {
+            tag(LOGICAL);
+            binary(binaryLogical);
+            return null;
+        }
+
+        private void binary(BinaryExpression binary) {
+            write(binary.getLeft());
+            token(binary.getOperation());
+            write(binary.getRight());
+        }
+
+        @Override
+        public Object visitCall(CallExpression callExpression) {
+            tag(CALL);
+            token(callExpression.getName());
+            write(callExpression.getArguments());
+            return null;
+        }
+
+        @Override
+        public Object visitIfExpr(IfExpression ifExpression) {
+            tag(IF_EXPRESSION);
+            token(ifExpression.getIfToken());
+            write(ifExpression.getCondition());
+            write(ifExpression.getThenBranch());
+            write(ifExpression.getElseBranch());
+            return null;
+        }
+
+        @Override
+        public Object visitUnary(Unary unary) {
+            tag(UNARY);
+            token(unary.getOperation());
+            write(unary.getRight());
+            return null;
+        }
+
+        @Override
+        public Object visitVariable(Variable variable) {
+            tag(VARIABLE);
+            token(variable.getName());
+            return null;
+        }
+
+        @Override
+        public Object visitLiteral(Literal literal) {
+            tag(LITERAL);
+            literal(tree, literal.getValue());
+            return null;
+        }
+
+        @Override
+        public Object visitInvariant(Invariant invariant) {
+            // only made by LoopOptimizer, after the program was cached
+            throw new IllegalStateException("Invariant in a parsed program");
+        }
+
+        private void tag(byte tag) {
+            try {
+                tree.writeByte(tag);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void integer(int value) {
+            try {
+                varint(tree, value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // seven bits a byte, the low ones first, with the high bit set in all
+        // but the last byte; counts of lists that can be null are written one
+        // up, so that -1 is 0
+        private static void varint(DataOutputStream out, int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                out.writeByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+        private void token(Token token) {
+            Integer index = tokens.get(token);
+            if (index == null) {
+                try {
+                    tokenTable.writeByte(token.getType().ordinal());
+                    varint(tokenTable, string(token.getLexeme()));
+                    varint(tokenTable, token.getLine());
+                    literal(tokenTable, token.getLiteral());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                index = tokens.size();
+                tokens.put(token, index);
+            }
+            integer(index);
+        }
+
+        private int string(String string) throws IOException {
+            Integer index = strings.get(string);
+            if (index == null) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                varint(stringTable, bytes.length);
+                stringTable.write(bytes);
+                index = strings.size();
+                strings.put(string, index);
+            }
+            return index;
+        }
+
+        private static void literal(DataOutputStream out, Object value) {
+            try {
+                if (value == null) {
+                    out.writeByte(NULL);
+                } else if (value instanceof Boolean) {
+                    out.writeByte((Boolean) value ? TRUE : FALSE);
+                } else if (value instanceof Long) {
+                    out.writeByte(LONG);
+                    out.writeLong((Long) value);
+                } else {
+                    byte[] bytes = ((BigInteger) value).toByteArray();
+                    out.writeByte(BIG);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // ---- reading
+
+    // throws an IllegalArgumentException or another RuntimeException for
+    // bytes that aren't a program written by Writer
+    private static class Reader {
+        private final ByteBuffer in;
+        private final String[] strings;
+        private final Token[] tokens;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+            // a string takes at least its length, a token its type, string,
+            // line and literal tag
+            strings = new String[count(varint(), 1)];
+            for (int i = 0; i < strings.length; ++i) {
+                byte[] bytes = new byte[count(varint(), 1)];
+                in.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            tokens = new Token[count(varint(), 4)];
+            for (int i = 0; i < tokens.length; ++i) {
+                int type = in.get() & 0xff;
+                if (type >= TYPES.length) { throw new IllegalArgumentException("Unknown token type " + type); }
+                String lexeme = strings[index(varint(), strings.length)];
+                int line = varint();
+                tokens[i] = new Token(TYPES[type], lexeme, line, literal());
+            }
+        }
+
+        Program program() {
+            Program program = new Program(nodes(Function.class), node(Block.class));
+            if (in.hasRemaining()) { throw new IllegalArgumentException("Trailing bytes"); }
+            return program;
+        }
+
+        // count things of at least bytes each, if that many are left
+        private int count(int count, int bytes) {
+            if (count < 0 || count > in.remaining() / bytes) {
+                throw new IllegalArgumentException("Count " + count + " past the end");
+            }
+            return count;
+        }
+
+        private static int index(int index, int length) {
+            if (index < 0 || index >= length) { throw new IllegalArgumentException("Index " + index + " out of " + length); }
+            return index;
+        }
+
+        // the next node, which has to be a type or null
+        private <T extends Node> T node(Class<T> type) {
+            Node node = node();
+            if (node != null && !type.isInstance(node)) {
+                throw new IllegalArgumentException(node.getClass().getSimpleName() + " where " + type.getSimpleName() + " belongs");
+            }
+            return type.cast(node);
+        }
+
+        private Node node() {
+            byte tag = in.get();
+            switch (tag) {
+                case NONE:
+                    return null;
+                case FUNCTION:
+                    return new Function(token(), tokens(), expression());
+                case BLOCK:
+                    return new Block(nodes(Statement.class));
+                case ASSIGNMENT:
+                    return new Assignment(token(), expression());
+                case IF:
+                    return new IfStatement(token(), expression(), node(Block.class), node(Block.class));
+                case WHILE:
+                    return new While(token(), expression(), node(Block.class));
+                case ARITHM:
+                    return new BinaryExpression.Arithm(expression(), token(), expression());
+                case LOGICAL:
+                    return new BinaryExpression.Logical(expression(), token(), expression());
+                case UNARY:
+                    return new Unary(token(), expression());
+                case CALL:
+                    return new CallExpression(token(), nodes(Expression.class));
+                case IF_EXPRESSION:
+                    return new IfExpression(token(), expression(), expression(), expression());
+                case VARIABLE:
+                    return new Variable(token());
+                case LITERAL:
+                    return new Literal(literal());
+                default:
+                    throw new IllegalArgumentException("Unknown node " + tag);
+            }
+        }
+
+        private Expression expression() {
+            return node(Expression.class);
+        }
+
+        // a node takes at least its tag, a token its index
+        private <T extends Node> List<T> nodes(Class<T> type) {
+            int count = varint() - 1;
+            if (count < 0) { return null; }
+            List<T> nodes = new ArrayList<>(count(count, 1));
+            for (int i = 0; i < count; ++i) {
+                nodes.add(node(type));
+            }
+            return nodes;
+        }
+
+        private List<Token> tokens() {
+            int count = varint() - 1;
+            if (count < 0) { return null; }
+            List<Token> list = new ArrayList<>(count(count, 1));
+            for (int i = 0; i < count; ++i) {
+                list.add(token());
+            }
+            return list;
+        }
+
+        private Token token() {
+            return tokens[index(varint(), tokens.length)];
+        }
+
+        private int varint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (shift > 28) { throw new IllegalArgumentException("Varint too long"); }
+                byte b = in.get();
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) { return value; }
+            }
+        }
+
+        private Object literal() {
+            byte tag = in.get();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case FALSE:
+                    return Boolean.FALSE;
+                case TRUE:
+                    return Boolean.TRUE;
+                case LONG:
+                    return Numbers.valueOf(in.getLong());
+                case BIG:
+                    byte[] bytes = new byte[count(in.getInt(), 1)];
+                    in.get(bytes);
+                    return new BigInteger(bytes);
+                default:
+                    throw new IllegalArgumentException("Unknown literal " + tag);
+            }
+        }
+    }
+}
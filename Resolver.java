@@ -0,0 +1,236 @@
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Static pass that gives every variable access a (depth, slot) address
+// and binds every call to its function, so the interpreter never has to
+// look anything up by name.
+//
+// Scoping is fully static: a block's statements run in order and a fresh
+// environment is created on every entry, so a variable belongs to the
+// innermost block whose earlier statements assigned it. Reads of variables
+// that aren't visible yet stay unresolved and fail when they are executed.
+public class Resolver implements Visitor {
+
+    private static class Scope {
+        private final Map<String, Integer> slots = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        int declare(String name) {
+            Integer slot = slots.get(name);
+            if (slot != null) { return slot; }
+
+            // hidden variables of LoopOptimizer have no name in the environment
+            names.add(LoopOptimizer.isHidden(name) ? null : name);
+            slots.put(name, names.size() - 1);
+            return names.size() - 1;
+        }
+
+        // slot no name can refer to
+        int declareHidden() {
+            names.add(null);
+            return names.size() - 1;
+        }
+
+        String[] names() { return names.toArray(new String[0]); }
+    }
+
+    private List<Scope> scopes = new ArrayList<>();
+    private final List<Integer> loopScopes = new ArrayList<>();    // scope around every enclosing while
+    private final Map<String, Function> functions = new HashMap<>();
+
+    public void resolve(Program program) {
+        resolve(program, Collections.emptyList());
+    }
+
+    // inputs are global variables assigned before the program runs, in
+    // the first slots of the global environment in this order
+    public void resolve(Program program, List<String> inputs) {
+        if (program.getFunctions() != null) {
+            // a later declaration with the same name wins, as in the interpreter
+            for (Function function : program.getFunctions()) {
+                functions.put(function.getName().getLexeme(), function);
+            }
+            for (Function function : program.getFunctions()) {
+                function.accept(this);
+            }
+        }
+        // program body runs directly in the global environment
+        resolveBody(program.getBody(), inputs);
+    }
+
+    @Override
+    public void visitIfStmt(IfStatement ifStatement) {
+        resolve(ifStatement.getCondition());
+        ifStatement.getThenBranch().accept(this);
+        if (ifStatement.getElseBranch() != null) {
+            ifStatement.getElseBranch().accept(this);
+        }
+    }
+
+    @Override
+    public void visitWhile(While whileStmt) {
+        loopScopes.add(scopes.size() - 1);
+        try {
+            resolve(whileStmt.getCondition());
+            whileStmt.getBody().accept(this);
+        } finally {
+            loopScopes.remove(loopScopes.size() - 1);
+        }
+    }
+
+    @Override
+    public void visitAssignment(Assignment assignment) {
+        // right side first: "X := X + 1" must not see its own X
+        resolve(assignment.getRight());
+
+        String name = assignment.getVariable().getLexeme();
+        for (int depth = 0; depth < scopes.size(); ++depth) {
+            Integer slot = scope(depth).slots.get(name);
+            if (slot != null) {
+                assignment.resolve(depth, slot);
+                return;
+            }
+        }
+        assignment.resolve(0, scope(0).declare(name));
+    }
+
+    @Override
+    public void visitBlock(Block block) {
+        resolveBody(block, Collections.emptyList());
+    }
+
+    @Override
+    public void visitFunction(Function function) {
+        // function bodies see nothing but their own parameters
+        List<Scope> enclosing = scopes;
+        scopes = new ArrayList<>();
+        try {
+            Scope scope = new Scope();
+            scopes.add(scope);
+
+            int[] parameterSlots = new int[0];
+            if (function.getParameters() != null) {
+                parameterSlots = new int[function.getParameters().size()];
+                for (int i = 0; i < parameterSlots.length; ++i) {
+                    parameterSlots[i] = scope.declare(function.getParameters().get(i).getLexeme());
+                }
+            }
+            function.setLocals(scope.names(), parameterSlots);
+            function.setTailCalls(hasTailCall(function.getBody()));
+
+            resolve(function.getBody());
+        } finally {
+            scopes = enclosing;
+        }
+    }
+
+    // a call that is the whole body, or a branch of an if expression in tail position
+    private static boolean hasTailCall(Expression expression) {
+        if (expression instanceof CallExpression) { return true; }
+        if (expression instanceof IfExpression) {
+            IfExpression ifExpression = (IfExpression) expression;
+            return hasTailCall(ifExpression.getThenBranch()) || hasTailCall(ifExpression.getElseBranch());
+        }
+        return false;
+    }
+
+    @Override
+    public Object visitArithmBinary(BinaryExpression.Arithm binaryArithm) {
+        resolve(binaryArithm.getLeft());
+        resolve(binaryArithm.getRight());
+        return null;
+    }
+
+    @Override
+    public Object visitLogicalBinary(BinaryExpression.Logical binaryLogical) {
+        resolve(binaryLogical.getLeft());
+        resolve(binaryLogical.getRight());
+        return null;
+    }
+
+    @Override
+    public Object visitCall(CallExpression callExpression) {
+        // unknown functions stay unbound and fail when the call is executed
+        callExpression.bind(functions.get(callExpression.getName().getLexeme()));
+
+        if (callExpression.getArguments() != null) {
+            for (Expression argument : callExpression.getArguments()) {
+                resolve(argument);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitIfExpr(IfExpression ifExpression) {
+        resolve(ifExpression.getCondition());
+        resolve(ifExpression.getThenBranch());
+        resolve(ifExpression.getElseBranch());
+        return null;
+    }
+
+    @Override
+    public Object visitLiteral(Literal literal) {
+        return null;
+    }
+
+    @Override
+    public Object visitUnary(Unary unary) {
+        resolve(unary.getRight());
+        return null;
+    }
+
+    @Override
+    public Object visitVariable(Variable variable) {
+        String name = variable.getName().getLexeme();
+        for (int depth = 0; depth < scopes.size(); ++depth) {
+            Integer slot = scope(depth).slots.get(name);
+            if (slot != null) {
+                variable.resolve(depth, slot);
+                return null;
+            }
+        }
+        // a tree reused by IncrementalParser may have been resolved before
+        variable.resolve(-1, -1);
+        return null;
+    }
+
+    @Override
+    public Object visitInvariant(Invariant invariant) {
+        // the value is kept in the scope around the loop it doesn't change in
+        int home = loopScopes.get(loopScopes.size() - 1 - invariant.getLoop());
+        invariant.resolve(scopes.size() - 1 - home, scopes.get(home).declareHidden());
+        resolve(invariant.getExpression());
+        return null;
+    }
+
+    private void resolveBody(Block block, List<String> declared) {
+        Scope scope = new Scope();
+        for (String name : declared) {
+            scope.declare(name);
+        }
+        scopes.add(scope);
+        try {
+            for (Statement statement : block.getStatements()) {
+                statement.accept(this);
+            }
+        } finally {
+            scopes.remove(scopes.size() - 1);
+        }
+        block.setLocals(scope.names());
+    }
+
+    // innermost scope has depth 0
+    private Scope scope(int depth) {
+        return scopes.get(scopes.size() - 1 - depth);
+    }
+
+    private void resolve(Expression expression) {
+        if (expression != null) { expression.accept(this); }
+    }
+}
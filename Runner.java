@@ -0,0 +1,60 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Runs Scripts at the same time, every run on a thread of its own.
+//
+// The threads are virtual threads where the JVM has them (Java 21 on), so
+// thousands of runs can be waiting at once; before that they are a pool of
+// a thread per processor. A run only shares its Script with the others, its
+// result and its errors are its own.
+final class Runner implements AutoCloseable {
+    // what a run ended with: the variables of the program, null if it
+    // failed, and the errors reported
+    static final class Run {
+        final Environment result;
+        final Errors errors;
+
+        Run(Environment result, Errors errors) {
+            this.result = result;
+            this.errors = errors;
+        }
+    }
+
+    private final ExecutorService executor = newExecutor();
+
+    CompletableFuture<Run> submit(Script script) {
+        return CompletableFuture.supplyAsync(() -> {
+            Errors errors = new Errors();
+            Environment result = script.run(errors);
+            return new Run(errors.hadRuntimeError() ? null : result, errors);
+        }, executor);
+    }
+
+    // waits for the runs submitted; if the thread is interrupted, the runs
+    // are interrupted as well and still waited for, and the thread is left
+    // interrupted, as ExecutorService.close() does
+    @Override
+    public void close() {
+        executor.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) { break; }
+            } catch (InterruptedException e) {
+                if (!interrupted) { executor.shutdownNow(); }
+                interrupted = true;
+            }
+        }
+        if (interrupted) { Thread.currentThread().interrupt(); }
+    }
+
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
@@ -1,70 +1,126 @@
 import ast.Program;
-import token.Token;
-import token.TokenType;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class SIPL {
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
-
-    public static void main(String[] args) throws IOException{
-        String path = "/Users/Vlada/Desktop/SIPL_Interpreter/src/tests/test1.txt";
-        runFile(path);
 
+    public static void main(String[] args) throws IOException {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(64);    // command line usage error
+            return;
+        }
+        if (options.paths.size() > 1) {
+            runConcurrently(options);
+        } else {
+            runFile(options);
+        }
     }
 
-    private static void runFile(String path) throws IOException{
-        String fileContent = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
-        run(fileContent);
+    private static void runFile(Options options) throws IOException{
+        Errors errors = new Errors(System.err);
+        Program program = parse(Paths.get(options.path), options, errors);
+        if (!errors.hadError()) { run(program, options, errors); }
 
-        if (hadError) { System.exit(65); }      // data format error
-        if (hadRuntimeError) {System.exit(70);} // internal software error
+        if (errors.hadError()) { System.exit(65); }      // data format error
+        if (errors.hadRuntimeError()) {System.exit(70);} // internal software error
     }
 
-    private static void run(String content) {
-        Lexer lexer = new Lexer(content);
-        List<Token> tokens = lexer.scanTokens();
-        Program program = new Parser(tokens).parseProgram();
+    // the program in the file at path, with errors reported to errors
+    private static Program parse(Path path, Options options, Errors errors) throws IOException {
+        if (options.stream) {
+            try (Reader reader = new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8)) {
+                Lexer lexer = new Lexer(reader, errors);
+                Program program = new Parser(lexer).parseProgram();
+                // the rest of the source is still scanned for errors
+                while (lexer.nextToken() != null) { }
+                return program;
+            }
+        }
 
-        if (hadError) { return; }
+        byte[] source = Files.readAllBytes(path);
+        ProgramCache cache = options.cache ? new ProgramCache(path) : null;
+        Program program = (cache == null) ? null : cache.load(source);
+        if (program == null) {
+            String fileContent = new String(source, StandardCharsets.UTF_8);
+            program = new Parser(new Lexer(fileContent, errors).scanBuffer(), errors).parseProgram();
+            if (cache != null && !errors.hadError()) { cache.store(source, program); }
+        }
+        return program;
+    }
 
-        Interpreter interpreter = new Interpreter();
+    private static void run(Program program, Options options, Errors errors) {
         Environment result = null;
         try {
-            result = interpreter.interpret(program);
-
+            Script script = new Script(program, options);
+            if (!script.check(errors)) { return; }
+            result = script.run(errors);
         } catch (Throwable e) {
-            System.err.println(e.getClass().getSimpleName());
-            hadRuntimeError = true;
+            errors.failure(e);
         }
-        if (!hadRuntimeError) { System.out.println(result); }
+        if (!errors.hadRuntimeError()) { System.out.println(result); }
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
-        hadError = true;
-    }
+    // runs the programs in all the files given at the same time, see Runner.
+    // A file given more than once is parsed once and run as often as it is
+    // given. Results are printed in the order of the files, each after its
+    // path, and so are errors.
+    private static void runConcurrently(Options options) {
+        Map<String, Script> scripts = new HashMap<>();
+        List<CompletableFuture<Runner.Run>> runs = new ArrayList<>();
+        boolean hadError = false;
+        boolean hadRuntimeError = false;
 
-    static private void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
-    }
+        try (Runner runner = new Runner()) {
+            for (String path : options.paths) {
+                if (!scripts.containsKey(path)) {
+                    Errors errors = new Errors();
+                    Program program = null;
+                    try {
+                        program = parse(Paths.get(path), options, errors);
+                    } catch (IOException e) {
+                        // reported like an error in the file, the other files still run
+                        errors.unreadable(e);
+                    }
+                    Script script = errors.hadError() ? null : new Script(program, options);
+                    scripts.put(path, (script != null && script.check(errors)) ? script : null);
+                    report(path, errors);
+                    hadError |= errors.hadError();
+                }
+                Script script = scripts.get(path);
+                runs.add((script == null) ? null : runner.submit(script));
+            }
 
-    static void error(Token token, String message) {
-        if (token.getType() == TokenType.EOF) {
-            report(token.getLine(), " at end", message);
-        } else {
-            report(token.getLine(), " at '" + token.getLexeme() + "'", message);
+            for (int i = 0; i < runs.size(); ++i) {
+                if (runs.get(i) == null) { continue; }
+                Runner.Run run = runs.get(i).join();
+                report(options.paths.get(i), run.errors);
+                hadRuntimeError |= run.errors.hadRuntimeError();
+                if (run.result != null) { System.out.println(options.paths.get(i) + ": " + run.result); }
+            }
         }
-        hadError = true;
+
+        if (hadError) { System.exit(65); }
+        if (hadRuntimeError) { System.exit(70); }
     }
 
-    static void runtimeError(RuntimeError error) {
-        report(error.token.getLine(), "", error.getMessage());
-        hadRuntimeError = true;
+    private static void report(String path, Errors errors) {
+        for (String message : errors.getMessages()) {
+            System.err.println(path + ": " + message);
+        }
     }
 }
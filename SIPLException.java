@@ -0,0 +1,23 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Errors a program embedded with SIPLProgram was compiled or run with, in
+// the format SIPL prints them, e.g. "[line 3] Error: Division by zero!".
+public class SIPLException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> messages;
+    private final int line;
+
+    SIPLException(Errors errors) {
+        super(String.join("\n", errors.getMessages()));
+        this.messages = Collections.unmodifiableList(new ArrayList<>(errors.getMessages()));
+        this.line = errors.getLine();
+    }
+
+    public List<String> getMessages() { return messages; }
+
+    // line of the first error, -1 if it wasn't on a line, e.g. a stack overflow
+    public int getLine() { return line; }
+}
@@ -0,0 +1,139 @@
+import ast.Program;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Entry point for programs embedding SIPL: a source compiled once and run
+// any number of times, also at the same time on different threads.
+//
+//   SIPLProgram program = SIPLProgram.compile(source);
+//   SIPLResult result = program.execute(Map.of("N", 20));
+//   long sum = result.getLong("S");
+//
+// The inputs given to execute are global variables assigned before the
+// program runs. The Resolver gives them their slots, so a program is
+// resolved once for every set of input names it runs with, from a copy of
+// the tree parsed by compile; that Script is kept and shared by all later
+// runs with the same names. The Scripts of the MAX_SCRIPTS sets of names
+// used last are kept, others are resolved again when they come back.
+//
+// A program from an untrusted source should be compiled with a limit on its
+// steps or time, so a run can't loop forever.
+//
+// Code outside the default package can't refer to these classes, it runs
+// SIPL through javax.script instead, see SIPLScriptEngine.
+public final class SIPLProgram {
+    static final int MAX_SCRIPTS = 16;
+
+    private final Program parsed;       // never resolved, only copied
+    private final Options options;
+    private final Map<List<String>, Script> scripts;    // by their sorted input names, the last used last
+
+    private SIPLProgram(Program parsed, Options options) {
+        this.parsed = parsed;
+        this.options = options;
+        this.scripts = new LinkedHashMap<List<String>, Script>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, Script> eldest) {
+                return size() > MAX_SCRIPTS;
+            }
+        };
+    }
+
+    public static SIPLProgram compile(String source) throws SIPLException {
+        return compile(source, new Options());
+    }
+
+    // every run fails with a SIPLException after fuel loop iterations and calls,
+    // or once it ran timeoutMillis; 0 for no limit
+    public static SIPLProgram compile(String source, long fuel, long timeoutMillis) throws SIPLException {
+        Options options = new Options();
+        options.fuel = fuel;
+        options.timeout = timeoutMillis;
+        return compile(source, options);
+    }
+
+    static SIPLProgram compile(String source, Options options) throws SIPLException {
+        Errors errors = new Errors();
+        Program parsed = new Parser(new Lexer(source, errors).scanBuffer(), errors).parseProgram();
+        if (errors.hadError()) { throw new SIPLException(errors); }
+        SIPLProgram program = new SIPLProgram(parsed, options);
+        Script script = program.resolve(Collections.emptyList());
+        if (!script.check(errors)) { throw new SIPLException(errors); }
+        program.scripts.put(Collections.emptyList(), script);
+        return program;
+    }
+
+    public SIPLResult execute() throws SIPLException {
+        return execute(Collections.emptyMap());
+    }
+
+    // runs the program with inputs assigned to the variables of their names;
+    // values are Integer, Long, Short, Byte, BigInteger or Boolean
+    public SIPLResult execute(Map<String, ?> inputs) throws SIPLException {
+        Map<String, Object> sorted = new TreeMap<>();
+        for (Map.Entry<String, ?> input : inputs.entrySet()) {
+            sorted.put(checkName(input.getKey()), value(input.getKey(), input.getValue()));
+        }
+        Script script = script(new ArrayList<>(sorted.keySet()));
+
+        Errors errors = new Errors();
+        Environment result = script.run(sorted.values().toArray(), errors);
+        if (errors.hadRuntimeError()) { throw new SIPLException(errors); }
+        return new SIPLResult(result.variables());
+    }
+
+    // the Script for the input names, resolved outside the lock, as that
+    // takes a while; two threads may both resolve it, one of them is kept
+    private Script script(List<String> names) {
+        synchronized (scripts) {
+            Script script = scripts.get(names);
+            if (script != null) { return script; }
+        }
+        Script script = resolve(names);
+        synchronized (scripts) {
+            Script resolved = scripts.putIfAbsent(names, script);
+            return (resolved != null) ? resolved : script;
+        }
+    }
+
+    // resolving writes to the tree, so every Script gets a copy of its own
+    private Script resolve(List<String> names) {
+        return new Script(new Copier().copy(parsed), options, names);
+    }
+
+    private static String checkName(String name) {
+        if (!isVariableName(name)) { throw new IllegalArgumentException("Not a variable name: " + name); }
+        return name;
+    }
+
+    static boolean isVariableName(String name) {
+        if (name.isEmpty() || Lexer.keyword(name) != null) { return false; }
+        for (int i = 0; i < name.length(); ++i) {
+            char c = name.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_')) { return false; }
+        }
+        return true;
+    }
+
+    // whether value can be an input
+    static boolean isValue(Object value) {
+        return value instanceof Boolean || value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte || value instanceof BigInteger;
+    }
+
+    // the value as the engines hold it
+    private static Object value(String name, Object value) {
+        if (!isValue(value)) {
+            throw new IllegalArgumentException("Input " + name + " is neither an integer nor a boolean: " + value);
+        }
+        if (value instanceof Boolean) { return value; }
+        if (value instanceof BigInteger) { return Numbers.valueOf((BigInteger) value); }
+        return Numbers.valueOf(((Number) value).longValue());
+    }
+}
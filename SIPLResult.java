@@ -0,0 +1,55 @@
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// Global variables of a program after a run of it, see SIPLProgram.
+//
+// Numbers are Long where they fit and BigInteger where they don't, the
+// others Boolean.
+public final class SIPLResult {
+    private final Map<String, Object> variables;
+
+    SIPLResult(Map<String, Object> variables) {
+        this.variables = Collections.unmodifiableMap(variables);
+    }
+
+    public Map<String, Object> getVariables() { return variables; }
+
+    public boolean has(String name) { return variables.containsKey(name); }
+
+    // Long, BigInteger or Boolean
+    public Object get(String name) {
+        Object value = variables.get(name);
+        if (value == null) { throw new NoSuchElementException("No variable " + name); }
+        return value;
+    }
+
+    // fails with an ArithmeticException if the number doesn't fit in a long
+    public long getLong(String name) {
+        Object value = number(name);
+        return (value instanceof Long) ? (Long) value : ((BigInteger) value).longValueExact();
+    }
+
+    public BigInteger getBigInteger(String name) {
+        Object value = number(name);
+        return (value instanceof Long) ? BigInteger.valueOf((Long) value) : (BigInteger) value;
+    }
+
+    public boolean getBoolean(String name) {
+        Object value = get(name);
+        if (!(value instanceof Boolean)) { throw new ClassCastException(name + " is not a boolean"); }
+        return (Boolean) value;
+    }
+
+    private Object number(String name) {
+        Object value = get(name);
+        if (!Numbers.isNumber(value)) { throw new ClassCastException(name + " is not a number"); }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return variables.toString();
+    }
+}
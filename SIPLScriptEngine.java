@@ -0,0 +1,128 @@
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+// SIPL as a javax.script engine, so code in any package can embed it, once
+// the services file is on the class path (see SIPLScriptEngineFactory):
+//
+//   ScriptEngine engine = new ScriptEngineManager().getEngineByName("sipl");
+//   CompiledScript script = ((Compilable) engine).compile(source);
+//   Bindings bindings = engine.createBindings();
+//   bindings.put("N", 20);
+//   Map<?, ?> variables = (Map<?, ?>) script.eval(bindings);
+//
+// The attributes of the global and then of the engine scope whose names are
+// variable names and whose values are integers or booleans are the inputs
+// of a run, see SIPLProgram; others are left out. The global variables of
+// a run are returned as a Map, by name, and not put in a scope, so they
+// never become inputs of the next run in the same context; a caller who
+// wants that puts them there.
+//
+// A compiled script can be run by several threads at the same time, with
+// a context each.
+public class SIPLScriptEngine extends AbstractScriptEngine implements Compilable {
+    private final SIPLScriptEngineFactory factory;
+
+    SIPLScriptEngine(SIPLScriptEngineFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script).eval(context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return compile(reader).eval(context);
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        try {
+            return new Compiled(SIPLProgram.compile(script));
+        } catch (SIPLException e) {
+            throw scriptException(e, get(ScriptEngine.FILENAME));
+        }
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        StringBuilder source = new StringBuilder();
+        char[] buffer = new char[8192];
+        try {
+            for (int read = script.read(buffer); read >= 0; read = script.read(buffer)) {
+                source.append(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return compile(source.toString());
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    private class Compiled extends CompiledScript {
+        private final SIPLProgram program;
+
+        Compiled(SIPLProgram program) {
+            this.program = program;
+        }
+
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            Map<String, Object> inputs = new HashMap<>();
+            inputs(context.getBindings(ScriptContext.GLOBAL_SCOPE), inputs);
+            inputs(context.getBindings(ScriptContext.ENGINE_SCOPE), inputs);
+
+            SIPLResult result;
+            try {
+                result = program.execute(inputs);
+            } catch (SIPLException e) {
+                throw scriptException(e, context.getAttribute(ScriptEngine.FILENAME));
+            }
+            return result.getVariables();
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return SIPLScriptEngine.this;
+        }
+    }
+
+    // with the line of the first error, and the file named by the FILENAME
+    // attribute if there is one
+    private static ScriptException scriptException(SIPLException e, Object fileName) {
+        ScriptException exception = new ScriptException(e.getMessage(),
+                (fileName == null) ? null : fileName.toString(), e.getLine());
+        exception.initCause(e);
+        return exception;
+    }
+
+    private static void inputs(Bindings bindings, Map<String, Object> inputs) {
+        if (bindings == null) { return; }
+        for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+            if (SIPLProgram.isVariableName(binding.getKey()) && SIPLProgram.isValue(binding.getValue())) {
+                inputs.put(binding.getKey(), binding.getValue());
+            }
+        }
+    }
+}
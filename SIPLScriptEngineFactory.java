@@ -0,0 +1,73 @@
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Makes SIPLScriptEngine known to javax.script.ScriptEngineManager, through
+// META-INF/services/javax.script.ScriptEngineFactory on the class path.
+// javac doesn't copy that file next to the classes: bin/sipl-compile copies
+// it to out, bin/sipl-archive puts it in cds/sipl.jar, and the Gradle build
+// has it as a resource. Without it getEngineByName("sipl") returns null.
+public class SIPLScriptEngineFactory implements ScriptEngineFactory {
+    private static final String VERSION = "1.0";
+    static final String OUTPUT = "Output";    // variable of getOutputStatement
+
+    @Override
+    public String getEngineName() { return "SIPL"; }
+
+    @Override
+    public String getEngineVersion() { return VERSION; }
+
+    @Override
+    public List<String> getExtensions() { return Collections.singletonList("sipl"); }
+
+    @Override
+    public List<String> getMimeTypes() { return Collections.singletonList("text/x-sipl"); }
+
+    @Override
+    public List<String> getNames() { return Arrays.asList("sipl", "SIPL"); }
+
+    @Override
+    public String getLanguageName() { return "SIPL"; }
+
+    @Override
+    public String getLanguageVersion() { return VERSION; }
+
+    @Override
+    public Object getParameter(String key) {
+        switch (key) {
+            case ScriptEngine.ENGINE: return getEngineName();
+            case ScriptEngine.ENGINE_VERSION: return getEngineVersion();
+            case ScriptEngine.NAME: return getNames().get(0);
+            case ScriptEngine.LANGUAGE: return getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION: return getLanguageVersion();
+            // compiled scripts share nothing but their tree, which isn't changed by a run
+            case "THREADING": return "MULTITHREADED";
+            default: return null;
+        }
+    }
+
+    // functions only see their parameters, a call is all there is
+    @Override
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        return m + "(" + String.join(", ", args) + ")";
+    }
+
+    // the variables of a program are its output, so a value is shown by
+    // assigning it to OUTPUT, which is in the result like any other
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return OUTPUT + " := " + toDisplay;
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        return "program\nbegin\n" + String.join(";\n", statements) + "\nend\n";
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new SIPLScriptEngine(this);
+    }
+}
@@ -0,0 +1,121 @@
+import ast.Program;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// A program parsed, rewritten if the options ask for it and resolved once,
+// which can then be run any number of times, also at the same time on
+// different threads.
+//
+// Nothing writes to the tree or to the compiled code of a Script while it
+// runs: every run has an engine of its own, with its own environments,
+// memo, JIT, profiler and budget, and reports to an Errors of its own.
+// Resolving and the marks of TypeInference are the last changes made to the
+// tree, before the Script is shared.
+final class Script {
+    private final Program program;
+    private final CompiledProgram compiled;     // for the VM, null for the other engines
+    private final Options options;
+    private final List<String> inputs;
+    private final TypeInference types;          // null unless --optimize or --types
+
+    // program as the Parser made it, without errors
+    Script(Program program, Options options) {
+        this(program, options, Collections.emptyList());
+    }
+
+    // inputs are the variables assigned before every run, see run
+    Script(Program program, Options options, List<String> inputs) {
+        if (options.optimize) {
+            program = new Optimizer().optimize(program);
+            program = new LoopOptimizer().optimize(program);
+        }
+        new Resolver().resolve(program, inputs);
+        if (options.optimize) {
+            program = new Inliner().inline(program);
+            if (options.engine == Options.Engine.TREE) { program = new CommonSubexpressions().eliminate(program); }
+        }
+        if (options.engine == Options.Engine.TREE) { program = new Fuser().fuse(program); }
+        if (options.optimize || options.types) {
+            types = new TypeInference(program, inputs.size());
+            types.infer();
+        } else {
+            types = null;
+        }
+        this.program = program;
+        this.compiled = (options.engine == Options.Engine.VM) ? new Compiler().compile(program) : null;
+        this.options = options;
+        this.inputs = new ArrayList<>(inputs);
+    }
+
+    // the program in source, null if it has errors, which are reported to errors
+    static Script compile(String source, Options options, List<String> inputs, Errors errors) {
+        Program program = new Parser(new Lexer(source, errors).scanBuffer(), errors).parseProgram();
+        if (errors.hadError()) { return null; }
+        Script script = new Script(program, options, inputs);
+        return script.check(errors) ? script : null;
+    }
+
+    // with --types, reports the type errors of the program to errors;
+    // returns whether it may run
+    boolean check(Errors errors) {
+        return !options.types || !types.report(errors);
+    }
+
+    Program getProgram() { return program; }
+
+    List<String> getInputs() { return Collections.unmodifiableList(inputs); }
+
+    Environment run(Errors errors) {
+        return run(new Object[0], errors);
+    }
+
+    // runs the program once, with the values of the inputs, in their order,
+    // already assigned; what stopped it is reported to errors
+    Environment run(Object[] inputs, Errors errors) {
+        Environment result = null;
+        Profiler profiler = null;
+        try {
+            switch (options.engine) {
+                case VM: {
+                    VM vm = new VM();
+                    vm.useBudget(budget());
+                    result = vm.interpret(compiled, inputs, errors);
+                    break;
+                }
+                case NODES: {
+                    NodeInterpreter interpreter = new NodeInterpreter();
+                    interpreter.useBudget(budget());
+                    result = interpreter.interpret(program, inputs, errors);
+                    break;
+                }
+                default:
+                    Interpreter interpreter = new Interpreter(options.jit);
+                    Memo memo = (options.memo > 0) ? new Memo(options.memo) : null;
+                    interpreter.useMemo(memo);
+                    if (options.profile) { interpreter.useProfiler(profiler = new Profiler()); }
+                    interpreter.useBudget(budget());
+                    if (options.parallel > 0) {
+                        Parallel parallel = new Parallel(options.parallel, options.parallelDepth);
+                        interpreter.useParallel(parallel);
+                        result = parallel.run(() -> interpreter.interpret(program, inputs, errors));
+                    } else {
+                        result = interpreter.interpret(program, inputs, errors);
+                    }
+                    if (memo != null) { System.err.println(memo); }
+            }
+
+        } catch (Throwable e) {
+            errors.failure(e);
+        }
+        // also for a program that failed, up to where it failed
+        if (profiler != null) { System.err.print(profiler); }
+        return result;
+    }
+
+    // a budget of its own for every run, null if there is no limit
+    private Budget budget() {
+        return (options.fuel > 0 || options.timeout > 0) ? new Budget(options.fuel, options.timeout) : null;
+    }
+}
@@ -0,0 +1,119 @@
+import token.Token;
+
+// Executable statement, see ExprNode.
+abstract class StmtNode extends ExecNode {
+
+    abstract void execute(Environment env);
+
+    static class Assign extends StmtNode {
+        private final int depth;
+        private final int slot;
+        private ExprNode right;
+
+        Assign(int depth, int slot, ExprNode right) {
+            this.depth = depth;
+            this.slot = slot;
+            this.right = adopt(right);
+        }
+
+        @Override
+        void execute(Environment env) {
+            env.assign(depth, slot, right.execute(env));
+        }
+
+        @Override
+        void replaceChild(ExecNode child, ExecNode replacement) {
+            if (right == child) { right = (ExprNode) replacement; }
+        }
+    }
+
+    static class Block extends StmtNode {
+        private final String[] locals;
+        private final StmtNode[] statements;
+
+        Block(String[] locals, StmtNode[] statements) {
+            this.locals = locals;
+            this.statements = statements;
+            for (StmtNode statement : statements) {
+                adopt(statement);
+            }
+        }
+
+        @Override
+        void execute(Environment env) {
+            executeBody(env.createInnerEnvironment(locals));
+        }
+
+        // runs the statements right in env, as for the program body
+        void executeBody(Environment env) {
+            for (StmtNode statement : statements) {
+                statement.execute(env);
+            }
+        }
+
+        @Override
+        void replaceChild(ExecNode child, ExecNode replacement) {
+            for (int i = 0; i < statements.length; ++i) {
+                if (statements[i] == child) { statements[i] = (StmtNode) replacement; }
+            }
+        }
+    }
+
+    static class If extends StmtNode {
+        private final Token ifToken;
+        private ExprNode condition;
+        private StmtNode thenBranch;
+        private StmtNode elseBranch;
+
+        If(Token ifToken, ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+            this.ifToken = ifToken;
+            this.condition = adopt(condition);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+
+        @Override
+        void execute(Environment env) {
+            if (condition.executeBoolean(env, ifToken, "Condition should be boolean.")) {
+                thenBranch.execute(env);
+            } else if (elseBranch != null) {
+                elseBranch.execute(env);
+            }
+        }
+
+        @Override
+        void replaceChild(ExecNode child, ExecNode replacement) {
+            if (condition == child) { condition = (ExprNode) replacement; }
+            else if (thenBranch == child) { thenBranch = (StmtNode) replacement; }
+            else if (elseBranch == child) { elseBranch = (StmtNode) replacement; }
+        }
+    }
+
+    static class While extends StmtNode {
+        private final Token whileToken;
+        private ExprNode condition;
+        private StmtNode body;
+        private final Budget budget;    // null unless iterations are limited
+
+        While(Token whileToken, ExprNode condition, StmtNode body, Budget budget) {
+            this.whileToken = whileToken;
+            this.condition = adopt(condition);
+            this.body = adopt(body);
+            this.budget = budget;
+        }
+
+        @Override
+        void execute(Environment env) {
+            while (condition.executeBoolean(env, whileToken, "Condition must be boolean")) {
+                if (budget != null) { budget.charge(whileToken); }
+                body.execute(env);
+            }
+        }
+
+        @Override
+        void replaceChild(ExecNode child, ExecNode replacement) {
+            if (condition == child) { condition = (ExprNode) replacement; }
+            else if (body == child) { body = (StmtNode) replacement; }
+        }
+    }
+}
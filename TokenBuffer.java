@@ -0,0 +1,430 @@
+import token.Token;
+import token.TokenType;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+// All tokens of a source, scanned by Lexer.scanBuffer, held in parallel
+// arrays instead of one Token object each: the type, the offsets of the
+// first character and of the one after the last, and the line.
+//
+// Words and numbers are interned: every occurrence of a name refers to the
+// same symbol, and so to the same String, which is made once when the name
+// is first seen. The keywords are the first symbols. Other tokens always
+// have the same text, which their type gives.
+//
+// A Token is made only when the Parser keeps one in the tree; tokens for
+// the same symbol on the same line are shared.
+//
+// For IncrementalParser, tokens scanned again after an edit are put in a
+// buffer sharing the symbols of the old one, and replace the old tokens.
+// The arrays then have a gap where the last edit was: the tokens after it
+// hold their offsets and lines counted back from the end of the source, so
+// an edit moves no more tokens than there are between it and the last one,
+// and changes none of the tokens after it. Tokens made while an Anchor is
+// set count their line from the anchor's, see Anchored.
+class TokenBuffer {
+    private static final int CAPACITY = 1024;
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final String[] TEXT = new String[TYPES.length];  // lexeme of the tokens without a symbol
+
+    static {
+        TEXT[TokenType.LEFT_PAREN.ordinal()] = "(";
+        TEXT[TokenType.RIGHT_PAREN.ordinal()] = ")";
+        TEXT[TokenType.SEMICOLON.ordinal()] = ";";
+        TEXT[TokenType.COMMA.ordinal()] = ",";
+        TEXT[TokenType.SLASH.ordinal()] = "/";
+        TEXT[TokenType.MINUS.ordinal()] = "-";
+        TEXT[TokenType.PLUS.ordinal()] = "+";
+        TEXT[TokenType.ASTERISK.ordinal()] = "*";
+        TEXT[TokenType.ASSIGN.ordinal()] = ":=";
+        TEXT[TokenType.EQUAL.ordinal()] = "=";
+        TEXT[TokenType.GREATER.ordinal()] = ">";
+        TEXT[TokenType.LESS.ordinal()] = "<";
+        TEXT[TokenType.LESS_EQUAL.ordinal()] = "<=";
+        TEXT[TokenType.GREATER_EQUAL.ordinal()] = ">=";
+        TEXT[TokenType.NOT_EQUAL.ordinal()] = "!=";
+        TEXT[TokenType.EOF.ordinal()] = "";
+    }
+
+    private int size = 0;
+    private int gap = 0;            // index of the first token after the gap, from where on the gap is
+    private int gapLength = CAPACITY;   // free entries in the arrays at gap
+    private int length = 0;         // of the source and its lines, which the tokens after the gap count back from
+    private int lineCount = 0;
+    private byte[] types = new byte[CAPACITY];
+    private int[] starts = new int[CAPACITY];
+    private int[] ends = new int[CAPACITY];
+    private int[] lines = new int[CAPACITY];
+    private int[] symbols = new int[CAPACITY];      // symbol of words and numbers, -1 for the others
+
+    private int firstError = -1;    // offsets of the first and last unexpected character
+    private int lastError = -1;
+
+    private final Symbols names;
+    private Token[] shared = new Token[TYPES.length + 64];     // last token made for a type or a symbol
+    private Anchor anchor;          // of the tokens made, null for tokens with their line
+
+    TokenBuffer() {
+        this.names = new Symbols();
+    }
+
+    // an empty buffer for tokens that will replace some in tokens
+    TokenBuffer(TokenBuffer tokens) {
+        this.names = tokens.names;
+    }
+
+    int size() { return size; }
+
+    int firstError() { return firstError; }
+
+    int lastError() { return lastError; }
+
+    TokenType type(int index) {
+        return TYPES[types[slot(index)]];
+    }
+
+    int start(int index) {
+        int slot = slot(index);
+        return (index < gap) ? starts[slot] : starts[slot] + length;
+    }
+
+    int end(int index) {
+        int slot = slot(index);
+        return (index < gap) ? ends[slot] : ends[slot] + length;
+    }
+
+    int line(int index) {
+        int slot = slot(index);
+        return (index < gap) ? lines[slot] : lines[slot] + lineCount;
+    }
+
+    String lexeme(int index) {
+        int slot = slot(index);
+        int symbol = symbols[slot];
+        return (symbol < 0) ? TEXT[types[slot]] : names.name(symbol);
+    }
+
+    Object literal(int index) {
+        switch (type(index)) {
+            case NUMBER:
+                return names.number(symbols[slot(index)]);
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+
+    // the token at index as a Token
+    Token token(int index) {
+        int slot = slot(index);
+        int symbol = symbols[slot];
+        int key = (symbol < 0) ? types[slot] : TYPES.length + symbol;
+        if (key >= shared.length) { shared = Arrays.copyOf(shared, Math.max(key + 1, shared.length * 2)); }
+
+        int line = line(index);
+        Token token = shared[key];
+        if (token == null || token.getLine() != line
+                || (token instanceof Anchored ? ((Anchored) token).anchor : null) != anchor) {
+            token = (anchor == null) ? new Token(type(index), lexeme(index), line, literal(index))
+                    : new Anchored(type(index), lexeme(index), line, literal(index), anchor);
+            shared[key] = token;
+        }
+        return token;
+    }
+
+    // the line the tokens made from now on count their lines from, null for
+    // tokens that hold their line
+    void anchor(Anchor anchor) {
+        this.anchor = anchor;
+    }
+
+    // index of the token starting at offset, -1 if there is none
+    int find(int offset) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int start = start(middle);
+            if (start < offset) {
+                low = middle + 1;
+            } else if (start > offset) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    // index of the last token ending before offset, -1 if there is none
+    int lastEndingBefore(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (end(middle) < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    // whether the token at index is the same as the one at other in tokens
+    boolean same(int index, TokenBuffer tokens, int other) {
+        int slot = slot(index);
+        int otherSlot = tokens.slot(other);
+        return types[slot] == tokens.types[otherSlot] && symbols[slot] == tokens.symbols[otherSlot]
+                && start(index) == tokens.start(other) && end(index) == tokens.end(other)
+                && line(index) == tokens.line(other);
+    }
+
+    // replaces the tokens from index from up to to with those of fresh from
+    // index skip on, which has no gap; the tokens after them move by chars
+    // and lines
+    void replace(int from, int to, TokenBuffer fresh, int skip, int chars, int lines) {
+        if (gap == size) {
+            // nothing counts back from the end yet, which is where EOF ends
+            length = end(size - 1);
+            lineCount = line(size - 1);
+        }
+        moveGap(to);
+        gapLength += to - from;
+        gap = from;
+        size -= to - from;
+
+        int count = fresh.size - skip;
+        ensure(size + count);
+        System.arraycopy(fresh.types, skip, types, gap, count);
+        System.arraycopy(fresh.symbols, skip, symbols, gap, count);
+        System.arraycopy(fresh.starts, skip, starts, gap, count);
+        System.arraycopy(fresh.ends, skip, ends, gap, count);
+        System.arraycopy(fresh.lines, skip, this.lines, gap, count);
+        gap += count;
+        gapLength -= count;
+        size += count;
+
+        // the tokens after the gap count back from the end, which moves
+        length += chars;
+        lineCount += lines;
+        // the tokens replaced were scanned from at least all the text with errors
+        firstError = fresh.firstError;
+        lastError = fresh.lastError;
+    }
+
+    // drops the tokens from index on, of a buffer without a gap
+    void truncate(int index) {
+        gapLength += size - index;
+        size = index;
+        gap = index;
+    }
+
+    // moves the gap to index, the tokens it passes count their offsets and
+    // lines from the start of the source before it and back from the end
+    // after it
+    private void moveGap(int index) {
+        if (index < gap) {
+            int count = gap - index;
+            shift(index, index + gapLength, count);
+            for (int slot = index + gapLength; slot < gap + gapLength; ++slot) {
+                starts[slot] -= length;
+                ends[slot] -= length;
+                lines[slot] -= lineCount;
+            }
+        } else if (index > gap) {
+            int count = index - gap;
+            shift(gap + gapLength, gap, count);
+            for (int slot = gap; slot < index; ++slot) {
+                starts[slot] += length;
+                ends[slot] += length;
+                lines[slot] += lineCount;
+            }
+        }
+        gap = index;
+    }
+
+    private void shift(int from, int to, int count) {
+        System.arraycopy(types, from, types, to, count);
+        System.arraycopy(symbols, from, symbols, to, count);
+        System.arraycopy(starts, from, starts, to, count);
+        System.arraycopy(ends, from, ends, to, count);
+        System.arraycopy(lines, from, lines, to, count);
+    }
+
+    // ---- filled by Lexer
+
+    void error(int offset) {
+        if (firstError < 0) { firstError = offset; }
+        lastError = offset;
+    }
+
+    void add(TokenType type, int start, int end, int line) {
+        add(type, -1, start, end, line);
+    }
+
+    void addNumber(CharSequence text, int start, int end, int line) {
+        add(TokenType.NUMBER, names.intern(text), start, end, line);
+    }
+
+    // an identifier or a keyword
+    void addWord(CharSequence text, int start, int end, int line) {
+        int symbol = names.intern(text);
+        TokenType keyword = names.keyword(symbol);
+        add((keyword == null) ? TokenType.IDENTIFIER : keyword, symbol, start, end, line);
+    }
+
+    // the Lexer adds tokens at the end of a buffer without a gap
+    private void add(TokenType type, int symbol, int start, int end, int line) {
+        ensure(size + 1);
+        types[size] = (byte) type.ordinal();
+        symbols[size] = symbol;
+        starts[size] = start;
+        ends[size] = end;
+        lines[size] = line;
+        ++size;
+        ++gap;
+        --gapLength;
+    }
+
+    // makes room for capacity tokens, keeping the tokens after the gap at the end
+    private void ensure(int capacity) {
+        if (capacity <= types.length) { return; }
+
+        capacity = Math.max(capacity, types.length * 2);
+        int after = size - gap;
+        int moved = capacity - after;
+        types = grown(types, capacity, after);
+        starts = grown(starts, capacity, after);
+        ends = grown(ends, capacity, after);
+        lines = grown(lines, capacity, after);
+        symbols = grown(symbols, capacity, after);
+        gapLength = moved - gap;
+    }
+
+    private byte[] grown(byte[] array, int capacity, int after) {
+        byte[] copy = Arrays.copyOf(array, capacity);
+        System.arraycopy(array, array.length - after, copy, capacity - after, after);
+        return copy;
+    }
+
+    private int[] grown(int[] array, int capacity, int after) {
+        int[] copy = Arrays.copyOf(array, capacity);
+        System.arraycopy(array, array.length - after, copy, capacity - after, after);
+        return copy;
+    }
+
+    // where the token at index is in the arrays
+    private int slot(int index) {
+        // reading past EOF fails as it did with a list of tokens
+        if (index >= size) { throw new IndexOutOfBoundsException("Index " + index + " after EOF"); }
+        return (index < gap) ? index : index + gapLength;
+    }
+
+    // ---- lines counted from an anchor
+
+    // a line that can move, e.g. the first line of a function being edited;
+    // the tokens made while it is set keep how far they are from it
+    abstract static class Anchor {
+        abstract int line();
+    }
+
+    static final class Anchored extends Token {
+        private final Anchor anchor;
+        private final int offset;   // lines from the anchor's
+
+        Anchored(TokenType type, String lexeme, int line, Object literal, Anchor anchor) {
+            super(type, lexeme, line, literal);
+            this.anchor = anchor;
+            this.offset = line - anchor.line();
+        }
+
+        @Override
+        public int getLine() {
+            return anchor.line() + offset;
+        }
+    }
+
+    // interned names: an open addressing table of symbol numbers, looked
+    // up from the characters of the lexeme without making a String
+    private static class Symbols {
+        private String[] names = new String[64];
+        private Object[] numbers = new Object[64];     // values of the symbols that are numbers, made when first asked for
+        private TokenType[] keywords;
+        private int count = 0;
+        private int[] table = new int[128];             // symbol + 1, 0 for a free entry
+
+        Symbols() {
+            keywords = new TokenType[Lexer.KEYWORDS.length];
+            for (String word : Lexer.KEYWORDS) {
+                keywords[intern(word)] = Lexer.keyword(word);
+            }
+        }
+
+        String name(int symbol) { return names[symbol]; }
+
+        TokenType keyword(int symbol) {
+            return (symbol < keywords.length) ? keywords[symbol] : null;
+        }
+
+        Object number(int symbol) {
+            if (numbers[symbol] == null) {
+                numbers[symbol] = Numbers.valueOf(new BigInteger(names[symbol]));
+            }
+            return numbers[symbol];
+        }
+
+        int intern(CharSequence text) {
+            int hash = hash(text);
+            int mask = table.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                int entry = table[i];
+                if (entry == 0) {
+                    table[i] = add(text) + 1;
+                    if (count * 2 > table.length) { rehash(); }
+                    return count - 1;
+                }
+                if (equal(names[entry - 1], text)) { return entry - 1; }
+            }
+        }
+
+        private int add(CharSequence text) {
+            if (count == names.length) {
+                names = Arrays.copyOf(names, count * 2);
+                numbers = Arrays.copyOf(numbers, count * 2);
+            }
+            names[count] = text.toString();
+            return count++;
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int symbol = 0; symbol < count; ++symbol) {
+                int i = hash(names[symbol]) & mask;
+                while (table[i] != 0) { i = (i + 1) & mask; }
+                table[i] = symbol + 1;
+            }
+        }
+
+        private static int hash(CharSequence text) {
+            int hash = 0;
+            for (int i = 0; i < text.length(); ++i) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean equal(String name, CharSequence text) {
+            if (name.length() != text.length()) { return false; }
+            for (int i = 0; i < name.length(); ++i) {
+                if (name.charAt(i) != text.charAt(i)) { return false; }
+            }
+            return true;
+        }
+    }
+}
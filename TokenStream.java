@@ -0,0 +1,59 @@
+import token.Token;
+import token.TokenType;
+
+import java.util.Iterator;
+import java.util.List;
+
+// Tokens of the Parser, indexed from the start of the source.
+//
+// Only a small window around the parser's position is kept: the parser looks
+// at most one token back (previous) and one ahead (peekNext). Tokens come
+// from a Lexer as they are needed, so a source of any size is parsed in
+// constant memory, or from a list scanned before. A stream over a
+// TokenBuffer reads it directly, making a Token only when asked for one.
+class TokenStream {
+    private static final int WINDOW = 4;    // a power of two
+
+    interface Source {
+        // the next token, null after EOF
+        Token next();
+    }
+
+    private final Source source;
+    private final TokenBuffer buffer;
+    private final Token[] window = new Token[WINDOW];
+    private int fetched = 0;    // tokens taken from source
+
+    TokenStream(Source source) {
+        this.source = source;
+        this.buffer = null;
+    }
+
+    TokenStream(List<Token> tokens) {
+        Iterator<Token> iterator = tokens.iterator();
+        this.source = () -> iterator.hasNext() ? iterator.next() : null;
+        this.buffer = null;
+    }
+
+    TokenStream(TokenBuffer buffer) {
+        this.source = null;
+        this.buffer = buffer;
+    }
+
+    TokenType type(int index) {
+        return (buffer != null) ? buffer.type(index) : get(index).getType();
+    }
+
+    Token get(int index) {
+        if (buffer != null) { return buffer.token(index); }
+        while (fetched <= index) {
+            Token token = source.next();
+            if (token == null) { throw new IndexOutOfBoundsException("Index " + index + " after EOF"); }
+            window[fetched++ & (WINDOW - 1)] = token;
+        }
+        if (index < fetched - WINDOW) {
+            throw new IllegalStateException("Token " + index + " is out of the window");
+        }
+        return window[index & (WINDOW - 1)];
+    }
+}
@@ -0,0 +1,290 @@
+import ast.*;
+import token.Token;
+import token.TokenType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Infers the types of the variables, parameters and function results of a
+// resolved Program, with --optimize or --types. Operations and conditions
+// whose operands are proven to have the types they need are marked type
+// safe, and the Interpreter doesn't check them; the ones proven to have a
+// wrong type are found as well, and reported with --types before the
+// program runs.
+//
+// A type is what values an expression can have: numbers, booleans, ANY for
+// either, or NONE for an expression that never has a value, because it
+// fails or never runs. A variable has one type in its block, everything
+// assigned to it joined; a parameter has the arguments of every call bound
+// to its function joined, the inputs of a program are ANY. A function's
+// result is the type of its body. All of these depend on each other, so
+// the program is gone through until none of them changes any more, and
+// once more to mark the nodes.
+//
+// An operand of a node marked safe has the type needed or none at all, and
+// then the node never gets to check it. Nodes with an operand that can be
+// anything keep their checks, and so do nodes the pass doesn't know.
+class TypeInference {
+
+    enum Type {
+        NONE, NUMBER, BOOLEAN, ANY;
+
+        Type join(Type other) {
+            if (this == other || other == NONE) { return this; }
+            return (this == NONE) ? other : ANY;
+        }
+
+        // whether every value of this type is one of type
+        boolean isOnly(Type type) {
+            return this == NONE || this == type;
+        }
+
+        // whether every value of this type is one of the other type than type
+        boolean isNot(Type type) {
+            return (this == NUMBER || this == BOOLEAN) && this != type;
+        }
+    }
+
+    // an operation or condition that fails whenever it is evaluated
+    private static final class TypeError {
+        final Token token;
+        final String message;
+
+        TypeError(Token token, String message) {
+            this.token = token;
+            this.message = message;
+        }
+    }
+
+    private final Program program;
+    private final Map<Node, Type[]> scopes = new IdentityHashMap<>();     // slot types of every Block and Function
+    private final Map<Function, Type> results = new IdentityHashMap<>();
+    private final List<TypeError> typeErrors = new ArrayList<>();
+    private boolean changed;
+    private boolean marking = false;    // in the last pass, which marks nodes and finds type errors
+
+    // inputs are the number of input variables the program was resolved with
+    TypeInference(Program program, int inputs) {
+        this.program = program;
+        Type[] global = types(program.getBody());
+        for (int slot = 0; slot < inputs; ++slot) {
+            global[slot] = Type.ANY;
+        }
+    }
+
+    // infers the types and marks the nodes of the program
+    void infer() {
+        do {
+            changed = false;
+            pass();
+        } while (changed);
+
+        marking = true;
+        pass();
+    }
+
+    // reports the type errors found to errors, returns whether there were any
+    boolean report(Errors errors) {
+        for (TypeError typeError : typeErrors) {
+            errors.error(typeError.token, typeError.message);
+        }
+        return !typeErrors.isEmpty();
+    }
+
+    private void pass() {
+        if (program.getFunctions() != null) {
+            for (Function function : program.getFunctions()) {
+                List<Type[]> scope = new ArrayList<>();
+                scope.add(types(function));
+                Type result = expression(function.getBody(), scope);
+                Type joined = results.getOrDefault(function, Type.NONE).join(result);
+                if (joined != results.getOrDefault(function, Type.NONE)) {
+                    results.put(function, joined);
+                    changed = true;
+                }
+            }
+        }
+        // program body runs directly in the global environment
+        List<Type[]> global = new ArrayList<>();
+        global.add(types(program.getBody()));
+        for (Statement statement : program.getBody().getStatements()) {
+            statement(statement, global);
+        }
+    }
+
+    private Type[] types(Block block) {
+        return scopes.computeIfAbsent(block, b -> none(block.getLocals()));
+    }
+
+    private Type[] types(Function function) {
+        return scopes.computeIfAbsent(function, f -> none(function.getLocals()));
+    }
+
+    private static Type[] none(String[] locals) {
+        Type[] types = new Type[(locals == null) ? 0 : locals.length];
+        Arrays.fill(types, Type.NONE);
+        return types;
+    }
+
+    private void assign(Type[] types, int slot, Type type) {
+        Type joined = types[slot].join(type);
+        if (joined != types[slot]) {
+            types[slot] = joined;
+            changed = true;
+        }
+    }
+
+    // scopes has the innermost one last, depth counts from there
+    private static Type[] scope(List<Type[]> scopes, int depth) {
+        return scopes.get(scopes.size() - 1 - depth);
+    }
+
+    private void fails(boolean fails, Token token, String message) {
+        if (fails) { typeErrors.add(new TypeError(token, message)); }
+    }
+
+    // ---- statements
+
+    private void statement(Statement statement, List<Type[]> scopes) {
+        if (statement instanceof Block) {
+            Block block = (Block) statement;
+            scopes.add(types(block));
+            for (Statement inner : block.getStatements()) {
+                statement(inner, scopes);
+            }
+            scopes.remove(scopes.size() - 1);
+        } else if (statement instanceof While) {
+            While whileStmt = (While) statement;
+            Type condition = expression(whileStmt.getCondition(), scopes);
+            if (marking) {
+                whileStmt.setTypeSafe(condition.isOnly(Type.BOOLEAN));
+                fails(condition.isNot(Type.BOOLEAN), whileStmt.getWhileToken(), "Condition must be boolean");
+            }
+            statement(whileStmt.getBody(), scopes);
+        } else if (statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) statement;
+            Type condition = expression(ifStatement.getCondition(), scopes);
+            if (marking) {
+                ifStatement.setTypeSafe(condition.isOnly(Type.BOOLEAN));
+                fails(condition.isNot(Type.BOOLEAN), ifStatement.getIfToken(), "Condition should be boolean.");
+            }
+            statement(ifStatement.getThenBranch(), scopes);
+            if (ifStatement.getElseBranch() != null) { statement(ifStatement.getElseBranch(), scopes); }
+        } else if (statement instanceof Assignment) {
+            // an Update too, its right side is the operation it was fused from
+            Assignment assignment = (Assignment) statement;
+            Type type = expression(assignment.getRight(), scopes);
+            if (assignment.getDepth() >= 0) { assign(scope(scopes, assignment.getDepth()), assignment.getSlot(), type); }
+        }
+    }
+
+    // ---- expressions
+
+    // the type of expression; every expression in it is gone through, also
+    // the ones that don't run, for the arguments of the calls in them
+    private Type expression(Expression expression, List<Type[]> scopes) {
+        if (expression == null) { return Type.NONE; }
+        if (expression instanceof Literal) {
+            Object value = ((Literal) expression).getValue();
+            if (value instanceof Boolean) { return Type.BOOLEAN; }
+            return Numbers.isNumber(value) ? Type.NUMBER : Type.ANY;
+        }
+        if (expression instanceof Variable) {
+            // one that isn't resolved fails, one that is has been assigned
+            Variable variable = (Variable) expression;
+            return (variable.getDepth() < 0) ? Type.NONE : scope(scopes, variable.getDepth())[variable.getSlot()];
+        }
+        if (expression instanceof BinaryExpression.Logical) { return logical((BinaryExpression.Logical) expression, scopes); }
+        if (expression instanceof BinaryExpression.Arithm) { return arithm((BinaryExpression.Arithm) expression, scopes); }
+        if (expression instanceof Unary) { return unary((Unary) expression, scopes); }
+        if (expression instanceof IfExpression) { return ifExpression((IfExpression) expression, scopes); }
+        if (expression instanceof CallExpression) { return call((CallExpression) expression, scopes); }
+        if (expression instanceof Invariant) { return expression(((Invariant) expression).getExpression(), scopes); }
+        if (expression instanceof Common) { return expression(((Common) expression).getExpression(), scopes); }
+        return Type.ANY;
+    }
+
+    // arithmetic operations and comparisons, Comparisons too
+    private Type arithm(BinaryExpression.Arithm arithm, List<Type[]> scopes) {
+        Type left = expression(arithm.getLeft(), scopes);
+        Type right = expression(arithm.getRight(), scopes);
+        if (marking) {
+            arithm.setTypeSafe(left.isOnly(Type.NUMBER) && right.isOnly(Type.NUMBER));
+            fails(left != Type.NONE && right != Type.NONE && (left.isNot(Type.NUMBER) || right.isNot(Type.NUMBER)),
+                    arithm.getOperation(), "Operands must be numbers.");
+        }
+
+        if (left == Type.NONE || right == Type.NONE || left.isNot(Type.NUMBER) || right.isNot(Type.NUMBER)) {
+            return Type.NONE;
+        }
+        return isArithmetic(arithm.getOperation().getType()) ? Type.NUMBER : Type.BOOLEAN;
+    }
+
+    // the right operand is evaluated first, the left one only if the right
+    // one doesn't decide the result
+    private Type logical(BinaryExpression.Logical logical, List<Type[]> scopes) {
+        Type right = expression(logical.getRight(), scopes);
+        Type left = expression(logical.getLeft(), scopes);
+        if (marking) {
+            logical.setTypeSafe(left.isOnly(Type.BOOLEAN) && right.isOnly(Type.BOOLEAN));
+            fails(right.isNot(Type.BOOLEAN) || (right != Type.NONE && left.isNot(Type.BOOLEAN)),
+                    logical.getOperation(), "Operand must be boolean");
+        }
+
+        return (right == Type.NONE || right.isNot(Type.BOOLEAN)) ? Type.NONE : Type.BOOLEAN;
+    }
+
+    private Type unary(Unary unary, List<Type[]> scopes) {
+        Type right = expression(unary.getRight(), scopes);
+        boolean minus = unary.getOperation().getType() == TokenType.MINUS;
+        Type needed = minus ? Type.NUMBER : Type.BOOLEAN;
+        if (marking) {
+            unary.setTypeSafe(right.isOnly(needed));
+            fails(right.isNot(needed), unary.getOperation(), minus ? "Operand must be a number." : "Operand must be boolean");
+        }
+
+        return (right == Type.NONE || right.isNot(needed)) ? Type.NONE : needed;
+    }
+
+    private Type ifExpression(IfExpression ifExpression, List<Type[]> scopes) {
+        Type condition = expression(ifExpression.getCondition(), scopes);
+        Type thenBranch = expression(ifExpression.getThenBranch(), scopes);
+        Type elseBranch = expression(ifExpression.getElseBranch(), scopes);
+        if (marking) {
+            ifExpression.setTypeSafe(condition.isOnly(Type.BOOLEAN));
+            fails(condition.isNot(Type.BOOLEAN), ifExpression.getIfToken(), "Condition should be boolean.");
+        }
+
+        if (condition == Type.NONE || condition.isNot(Type.BOOLEAN)) { return Type.NONE; }
+        return thenBranch.join(elseBranch);
+    }
+
+    private Type call(CallExpression call, List<Type[]> scopes) {
+        List<Type> arguments = new ArrayList<>();
+        if (call.getArguments() != null) {
+            for (Expression argument : call.getArguments()) {
+                arguments.add(expression(argument, scopes));
+            }
+        }
+
+        // a call that isn't bound, or has the wrong number of arguments, fails
+        Function function = call.getFunction();
+        if (function == null || call.getArguments() == null || function.getParameters() == null) { return Type.NONE; }
+        int[] parameterSlots = function.getParameterSlots();
+        if (arguments.size() != parameterSlots.length) { return Type.NONE; }
+
+        Type[] parameters = types(function);
+        for (int i = 0; i < parameterSlots.length; ++i) {
+            assign(parameters, parameterSlots[i], arguments.get(i));
+        }
+        return results.getOrDefault(function, Type.NONE);
+    }
+
+    private static boolean isArithmetic(TokenType type) {
+        return type == TokenType.PLUS || type == TokenType.MINUS
+                || type == TokenType.ASTERISK || type == TokenType.SLASH;
+    }
+}
@@ -0,0 +1,266 @@
+import token.Token;
+
+import java.util.Arrays;
+
+// Stack based virtual machine running the output of Compiler.
+//
+// Frames and operands share one stack: a chunk's variables start at the
+// frame's base pointer and its operands are pushed right above them.
+// Calls recurse into run(), like Interpreter.visitCall does, except for
+// tail calls, which replace the frame of the running function.
+//
+// With a Budget, every call and every iteration of a while, once its
+// condition held, is a step, charged where the Interpreter charges it.
+public class VM {
+    private Object[] stack = new Object[1024];
+    private CompiledProgram program;
+    private Budget budget;      // null unless loop iterations and calls are limited
+
+    void useBudget(Budget budget) {
+        this.budget = budget;
+    }
+
+    public Environment interpret(CompiledProgram program) {
+        return interpret(program, new Errors(System.err));
+    }
+
+    public Environment interpret(CompiledProgram program, Errors errors) {
+        return interpret(program, new Object[0], errors);
+    }
+
+    // inputs are the values of the variables the program was resolved with as
+    // inputs, which are the first of the frame of main
+    public Environment interpret(CompiledProgram program, Object[] inputs, Errors errors) {
+        this.program = program;
+        Chunk main = program.main;
+        ensureCapacity(main.frameSize + main.maxStack);
+        System.arraycopy(inputs, 0, stack, 0, inputs.length);
+        try {
+            run(main, 0);
+        } catch (RuntimeError error) {
+            errors.runtimeError(error);
+        }
+        return new Environment(main.names, Arrays.copyOf(stack, main.names.length));
+    }
+
+    private Object run(Chunk chunk, int bp) {
+        int[] code = chunk.code;
+        Object[] constants = chunk.constants;
+        Object[] stack = this.stack;
+        int sp = bp + chunk.frameSize;
+        int pc = 0;
+
+        while (true) {
+            switch (code[pc++]) {
+                case OpCode.CONST:
+                    stack[sp++] = constants[code[pc++]];
+                    break;
+                case OpCode.LOAD: {
+                    Object value = stack[bp + code[pc++]];
+                    if (value == null) {
+                        throw new RuntimeError((Token) constants[code[pc]], "Variable with this name doesn't exist.");
+                    }
+                    pc++;
+                    stack[sp++] = value;
+                    break;
+                }
+                case OpCode.STORE:
+                    stack[bp + code[pc++]] = stack[--sp];
+                    break;
+                case OpCode.CLEAR: {
+                    int from = bp + code[pc++];
+                    Arrays.fill(stack, from, from + code[pc++], null);
+                    break;
+                }
+
+                case OpCode.ADD:
+                case OpCode.SUBTRACT:
+                case OpCode.MULTIPLY:
+                case OpCode.DIVIDE:
+                case OpCode.EQUAL:
+                case OpCode.NOT_EQUAL:
+                case OpCode.GREATER:
+                case OpCode.GREATER_EQUAL:
+                case OpCode.LESS:
+                case OpCode.LESS_EQUAL: {
+                    Token operation = (Token) constants[code[pc++]];
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    stack[sp - 1] = arithm(code[pc - 2], operation, left, right);
+                    break;
+                }
+
+                case OpCode.NEGATE: {
+                    Object right = stack[sp - 1];
+                    if (!Numbers.isNumber(right)) {
+                        throw new RuntimeError((Token) constants[code[pc]], "Operand must be a number.");
+                    }
+                    pc++;
+                    stack[sp - 1] = Numbers.negate(right);
+                    break;
+                }
+                case OpCode.NOT: {
+                    Object right = stack[sp - 1];
+                    if (!(right instanceof Boolean)) {
+                        throw new RuntimeError((Token) constants[code[pc]], "Operand must be boolean");
+                    }
+                    pc++;
+                    stack[sp - 1] = !(Boolean) right;
+                    break;
+                }
+                case OpCode.CHECK_BOOL:
+                    if (!(stack[sp - 1] instanceof Boolean)) {
+                        throw new RuntimeError((Token) constants[code[pc]], "Operand must be boolean");
+                    }
+                    pc++;
+                    break;
+
+                case OpCode.JUMP:
+                    pc = code[pc];
+                    break;
+                case OpCode.ITERATE: {
+                    Object condition = stack[--sp];
+                    if (!(condition instanceof Boolean)) {
+                        throw new RuntimeError((Token) constants[code[pc + 1]], (String) constants[code[pc + 2]]);
+                    }
+                    if (!(Boolean) condition) {
+                        pc = code[pc];
+                        break;
+                    }
+                    if (budget != null) { budget.charge((Token) constants[code[pc + 1]]); }
+                    pc += 3;
+                    break;
+                }
+                case OpCode.JUMP_IF_FALSE: {
+                    Object condition = stack[--sp];
+                    if (!(condition instanceof Boolean)) {
+                        throw new RuntimeError((Token) constants[code[pc + 1]], (String) constants[code[pc + 2]]);
+                    }
+                    pc = ((Boolean) condition) ? pc + 3 : code[pc];
+                    break;
+                }
+                case OpCode.JUMP_IF_TRUE_KEEP:
+                    if ((Boolean) stack[sp - 1]) { pc = code[pc]; }
+                    else { sp--; pc++; }
+                    break;
+                case OpCode.JUMP_IF_FALSE_KEEP:
+                    if (!(Boolean) stack[sp - 1]) { pc = code[pc]; }
+                    else { sp--; pc++; }
+                    break;
+
+                case OpCode.CALL: {
+                    Chunk callee = program.functions[code[pc++]];
+                    int argc = code[pc++];
+                    if (budget != null) { budget.charge((Token) constants[code[pc]]); }
+                    pc++;
+                    int calleeBp = sp;
+
+                    ensureCapacity(calleeBp + callee.frameSize + callee.maxStack);
+                    stack = this.stack;
+                    Arrays.fill(stack, calleeBp, calleeBp + callee.frameSize, null);
+                    int[] parameterSlots = callee.parameterSlots;
+                    for (int i = 0; i < argc; ++i) {
+                        stack[calleeBp + parameterSlots[i]] = stack[sp - argc + i];
+                    }
+
+                    Object result = run(callee, calleeBp);
+                    stack = this.stack;
+                    sp -= argc;
+                    stack[sp++] = result;
+                    break;
+                }
+                case OpCode.TAIL_CALL: {
+                    Chunk callee = program.functions[code[pc++]];
+                    int argc = code[pc++];
+                    if (budget != null) { budget.charge((Token) constants[code[pc]]); }
+                    int arguments = sp - argc;
+                    int frameEnd = bp + callee.frameSize;
+
+                    ensureCapacity(frameEnd + argc + callee.maxStack);
+                    stack = this.stack;
+                    if (arguments < frameEnd) {
+                        // the callee's frame is larger, move the arguments out of its way
+                        System.arraycopy(stack, arguments, stack, frameEnd, argc);
+                        arguments = frameEnd;
+                    }
+                    Arrays.fill(stack, bp, frameEnd, null);
+                    int[] parameterSlots = callee.parameterSlots;
+                    for (int i = 0; i < argc; ++i) {
+                        stack[bp + parameterSlots[i]] = stack[arguments + i];
+                    }
+
+                    code = callee.code;
+                    constants = callee.constants;
+                    sp = frameEnd;
+                    pc = 0;
+                    break;
+                }
+                case OpCode.CACHED: {
+                    Object value = stack[bp + code[pc + 1]];
+                    if (value != null) {
+                        stack[sp++] = value;
+                        pc = code[pc];
+                    } else {
+                        pc += 2;
+                    }
+                    break;
+                }
+                case OpCode.CACHE:
+                    stack[bp + code[pc++]] = stack[sp - 1];
+                    break;
+
+                case OpCode.RETURN:
+                    return stack[sp - 1];
+                case OpCode.HALT:
+                    return null;
+
+                case OpCode.ERROR:
+                    throw new RuntimeError((Token) constants[code[pc]], (String) constants[code[pc + 1]]);
+                case OpCode.MISSING_ELSE:
+                    // the interpreter evaluates the missing branch as a null expression
+                    throw new NullPointerException();
+
+                default:
+                    throw new IllegalStateException("Unknown opcode " + code[pc - 1]);
+            }
+        }
+    }
+
+    private Object arithm(int op, Token operation, Object left, Object right) {
+        if (!Numbers.isNumber(left) || !Numbers.isNumber(right)) {
+            throw new RuntimeError(operation, "Operands must be numbers.");
+        }
+
+        switch (op) {
+            case OpCode.ADD:
+                return Numbers.add(left, right);
+            case OpCode.SUBTRACT:
+                return Numbers.subtract(left, right);
+            case OpCode.MULTIPLY:
+                return Numbers.multiply(left, right);
+            case OpCode.DIVIDE:
+                if (Numbers.isZero(right)) {
+                    throw new RuntimeError(operation, "Division by zero!");
+                }
+                return Numbers.divide(left, right);
+            case OpCode.EQUAL:
+                return left.equals(right);
+            case OpCode.NOT_EQUAL:
+                return !left.equals(right);
+            case OpCode.GREATER:
+                return Numbers.compare(left, right) > 0;
+            case OpCode.GREATER_EQUAL:
+                return Numbers.compare(left, right) >= 0;
+            case OpCode.LESS:
+                return Numbers.compare(left, right) < 0;
+            default:
+                return Numbers.compare(left, right) <= 0;
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(size, stack.length * 2));
+        }
+    }
+}
@@ -5,12 +5,23 @@ import token.Token;
 public class Assignment implements Statement{
     private Token variable;
     private Expression right;
+    private int depth = -1;     // environments to walk outwards
+    private int slot = -1;      // index inside that environment
 
     public Assignment(Token variable, Expression right) {
         this.variable = variable;
         this.right = right;
     }
 
+    public int getDepth() { return depth; }
+
+    public int getSlot() { return slot; }
+
+    public void resolve(int depth, int slot) {
+        this.depth = depth;
+        this.slot = slot;
+    }
+
     public Token getVariable() {
         return variable;
     }
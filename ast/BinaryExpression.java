@@ -6,6 +6,7 @@ public abstract class BinaryExpression implements Expression {
     private Expression left;
     private Token operation;
     private Expression right;
+    private boolean typeSafe;       // operands proven to have the types needed, see TypeInference
 
     public BinaryExpression(Expression left, Token operation, Expression right) {
         this.left = left;
@@ -25,6 +26,10 @@ public abstract class BinaryExpression implements Expression {
         return right;
     }
 
+    public boolean isTypeSafe() { return typeSafe; }
+
+    public void setTypeSafe(boolean typeSafe) { this.typeSafe = typeSafe; }
+
     @Override
     public String toString() {
         return String.format("%s %s %s%n", left.toString(), operation.getLexeme(), right.toString());
@@ -5,6 +5,7 @@ import java.util.List;
 
 public class Block implements Statement{
     private List<Statement> statements;
+    private String[] locals = new String[0];    // variable names declared in this block, by slot
 
     public Block(List<Statement> statements) {
         this.statements = statements;
@@ -14,6 +15,10 @@ public class Block implements Statement{
         return statements;
     }
 
+    public String[] getLocals() { return locals; }
+
+    public void setLocals(String[] locals) { this.locals = locals; }
+
     @Override
     public void accept(Visitor visitor) {
         visitor.visitBlock(this);
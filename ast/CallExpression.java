@@ -8,12 +8,17 @@ import java.util.List;
 public class CallExpression implements Expression{
     private Token name;
     private List<Expression> arguments = new ArrayList<>();
+    private Function function;      // callee, bound once it has been looked up
 
     public CallExpression(Token name, List<Expression> arguments) {
         this.name = name;
         this.arguments = arguments;
     }
 
+    public Function getFunction() { return function; }
+
+    public void bind(Function function) { this.function = function; }
+
     public Token getName() {
         return name;
     }
@@ -0,0 +1,34 @@
+package ast;
+
+// Expression that a statement, or a run of statements in one block, would
+// otherwise compute more than once, made by CommonSubexpressions. Every
+// occurrence is a Common with the same hidden variable of that block: the
+// first one evaluated keeps its value there, the others read it. Engines
+// that don't know it evaluate the expression every time.
+public class Common implements Expression {
+    private Expression expression;
+    private int depth = -1;     // environments to walk outwards to the hidden variable
+    private int slot = -1;      // index of the hidden variable inside that environment
+
+    public Common(Expression expression, int depth, int slot) {
+        this.expression = expression;
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    public Expression getExpression() { return expression; }
+
+    public int getDepth() { return depth; }
+
+    public int getSlot() { return slot; }
+
+    @Override
+    public Object accept(Visitor visitor) {
+        return visitor.visitCommon(this);
+    }
+
+    @Override
+    public String toString() {
+        return expression.toString();
+    }
+}
@@ -0,0 +1,18 @@
+package ast;
+
+import token.Token;
+
+// "I < 10" or "I != J": a comparison of a variable with a constant or another
+// variable, made by Fuser from the condition of a while or an if. The
+// Interpreter reads the operands itself instead of visiting them; the
+// engines that don't know it run it as any other comparison.
+public class Comparison extends BinaryExpression.Arithm {
+    public Comparison(BinaryExpression.Arithm comparison) {
+        super(comparison.getLeft(), comparison.getOperation(), comparison.getRight());
+    }
+
+    @Override
+    public Object accept(Visitor visitor) {
+        return visitor.visitComparison(this);
+    }
+}
@@ -9,6 +9,9 @@ public class Function implements Statement{
     private Token name;
     private List<Token> parameters;
     private Expression body;
+    private String[] locals = new String[0];    // parameter names, by slot
+    private int[] parameterSlots = new int[0];  // slot of every parameter
+    private boolean tailCalls;                  // body has a call in tail position
 
     public Function(Token name, List<Token> parameters, Expression body) {
         this.name = name;
@@ -16,6 +19,19 @@ public class Function implements Statement{
         this.body = body;
     }
 
+    public String[] getLocals() { return locals; }
+
+    public int[] getParameterSlots() { return parameterSlots; }
+
+    public void setLocals(String[] locals, int[] parameterSlots) {
+        this.locals = locals;
+        this.parameterSlots = parameterSlots;
+    }
+
+    public boolean hasTailCalls() { return tailCalls; }
+
+    public void setTailCalls(boolean tailCalls) { this.tailCalls = tailCalls; }
+
     public Token getName() {
         return name;
     }
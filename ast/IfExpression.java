@@ -7,6 +7,7 @@ public class IfExpression implements Expression {
     private Expression condition;
     private Expression thenBranch;
     private Expression elseBranch;
+    private boolean typeSafe;       // condition proven to be a boolean, see TypeInference
 
     public IfExpression(Token ifToken, Expression condition, Expression thenBranch, Expression elseBranch) {
         this.ifToken = ifToken;
@@ -27,6 +28,10 @@ public class IfExpression implements Expression {
         return elseBranch;
     }
 
+    public boolean isTypeSafe() { return typeSafe; }
+
+    public void setTypeSafe(boolean typeSafe) { this.typeSafe = typeSafe; }
+
     @Override
     public Object accept(Visitor visitor) {
         return visitor.visitIfExpr(this);
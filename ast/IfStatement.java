@@ -7,6 +7,7 @@ public class IfStatement implements Statement{
     private Expression condition;
     private Block thenBranch;
     private Block elseBranch;
+    private boolean typeSafe;       // condition proven to be a boolean, see TypeInference
 
     public IfStatement(Token ifToken, Expression condition, Block thenBranch, Block elseBranch) {
         this.ifToken = ifToken;
@@ -29,6 +30,10 @@ public class IfStatement implements Statement{
         return elseBranch;
     }
 
+    public boolean isTypeSafe() { return typeSafe; }
+
+    public void setTypeSafe(boolean typeSafe) { this.typeSafe = typeSafe; }
+
     @Override
     public void accept(Visitor visitor) {
         visitor.visitIfStmt(this);
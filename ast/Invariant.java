@@ -0,0 +1,40 @@
+package ast;
+
+// Expression that doesn't change while an enclosing while loop runs, made
+// by LoopOptimizer. Its value is kept in a hidden variable of the scope
+// around that loop after the first evaluation; every entry of that scope
+// starts out with the variable unassigned.
+public class Invariant implements Expression {
+    private Expression expression;
+    private int loop;           // enclosing loops to skip outwards, 0 for the innermost one
+    private int depth = -1;     // environments to walk outwards to the hidden variable
+    private int slot = -1;      // index of the hidden variable inside that environment
+
+    public Invariant(Expression expression, int loop) {
+        this.expression = expression;
+        this.loop = loop;
+    }
+
+    public Expression getExpression() { return expression; }
+
+    public int getLoop() { return loop; }
+
+    public int getDepth() { return depth; }
+
+    public int getSlot() { return slot; }
+
+    public void resolve(int depth, int slot) {
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    @Override
+    public Object accept(Visitor visitor) {
+        return visitor.visitInvariant(this);
+    }
+
+    @Override
+    public String toString() {
+        return expression.toString();
+    }
+}
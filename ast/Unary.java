@@ -5,6 +5,7 @@ import token.Token;
 public class Unary implements Expression{
     private Token operation;
     private Expression right;
+    private boolean typeSafe;       // operand proven to have the type needed, see TypeInference
 
     public Unary(Token operation, Expression right) {
         this.operation = operation;
@@ -19,6 +20,10 @@ public class Unary implements Expression{
         return right;
     }
 
+    public boolean isTypeSafe() { return typeSafe; }
+
+    public void setTypeSafe(boolean typeSafe) { this.typeSafe = typeSafe; }
+
     @Override
     public Object accept(Visitor visitor) {
         return visitor.visitUnary(this);
@@ -0,0 +1,37 @@
+package ast;
+
+import token.Token;
+
+// "X := X + 1" or "A := A * B": an assignment of an arithmetic operation on
+// the variable it assigns and a constant or another variable, made by Fuser
+// from a resolved Assignment. The Interpreter runs it in one step, reading
+// and writing the variable in place; getRight is still the operation, for
+// the engines running it as any other Assignment.
+public class Update extends Assignment {
+    private Variable target;        // the variable assigned, as it is read
+    private Expression operand;     // the other operand, a Literal or a Variable
+    private boolean targetFirst;    // whether target is the left operand
+
+    public Update(Assignment assignment, Variable target, Expression operand, boolean targetFirst) {
+        super(assignment.getVariable(), assignment.getRight());
+        resolve(assignment.getDepth(), assignment.getSlot());
+        this.target = target;
+        this.operand = operand;
+        this.targetFirst = targetFirst;
+    }
+
+    public Variable getTarget() { return target; }
+
+    public Expression getOperand() { return operand; }
+
+    public boolean isTargetFirst() { return targetFirst; }
+
+    public Token getOperation() { return ((BinaryExpression) getRight()).getOperation(); }
+
+    public boolean isTypeSafe() { return ((BinaryExpression) getRight()).isTypeSafe(); }
+
+    @Override
+    public void accept(Visitor visitor) {
+        visitor.visitUpdate(this);
+    }
+}
@@ -4,6 +4,8 @@ import token.Token;
 
 public class Variable implements Expression{
     private Token name;
+    private int depth = -1;     // environments to walk outwards, -1 if unresolved
+    private int slot = -1;      // index inside that environment
 
     public Variable(Token name) {
         this.name = name;
@@ -13,6 +15,15 @@ public class Variable implements Expression{
         return name;
     }
 
+    public int getDepth() { return depth; }
+
+    public int getSlot() { return slot; }
+
+    public void resolve(int depth, int slot) {
+        this.depth = depth;
+        this.slot = slot;
+    }
+
     @Override
     public Object accept(Visitor visitor) {
         return visitor.visitVariable(this);
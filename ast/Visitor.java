@@ -15,4 +15,13 @@ public interface Visitor {
     Object visitLiteral(Literal literal);
     Object visitUnary(Unary unary);
     Object visitVariable(Variable variable);
+    Object visitInvariant(Invariant invariant);
+
+    // nodes made from resolved programs by Fuser and CommonSubexpressions run
+    // as the nodes they were made from unless a visitor knows them
+    default void visitUpdate(Update update) { visitAssignment(update); }
+
+    default Object visitComparison(Comparison comparison) { return visitArithmBinary(comparison); }
+
+    default Object visitCommon(Common common) { return common.getExpression().accept(this); }
 }
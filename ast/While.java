@@ -6,6 +6,7 @@ public class While implements Statement{
     private Token whileToken;       //for error handling
     private Expression condition;
     private Block body;
+    private boolean typeSafe;       // condition proven to be a boolean, see TypeInference
 
     public While(Token whileToken, Expression condition, Block body) {
         this.whileToken = whileToken;
@@ -21,6 +22,10 @@ public class While implements Statement{
         return body;
     }
 
+    public boolean isTypeSafe() { return typeSafe; }
+
+    public void setTypeSafe(boolean typeSafe) { this.typeSafe = typeSafe; }
+
     @Override
     public void accept(Visitor visitor) {
         visitor.visitWhile(this);
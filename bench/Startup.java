@@ -0,0 +1,88 @@
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// Startup time of the command line tool, the way jobs running it on many
+// small programs see it, from the root of the repository:
+//
+//   bin/sipl-compile && bin/sipl-archive && java -cp out Startup [options] [program...]
+//
+// Every program, tests/test1.txt by default, is run in a new process, with
+// java -cp out SIPL and with bin/sipl, the startup mode, taking turns. The
+// time is from starting the process until it ended, JVM startup included.
+// Options:
+//   --runs=N     runs of every program in every mode, 20
+//   --warmup=N   runs before those, not measured, so the files are cached, 3
+public class Startup {
+    private int runs = 20;
+    private int warmup = 3;
+    private final List<String> programs = new ArrayList<>();
+    private final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+    public static void main(String[] args) throws Exception {
+        Startup startup = new Startup();
+        for (String arg : args) {
+            if (arg.startsWith("--runs=")) { startup.runs = Integer.parseInt(arg.substring("--runs=".length())); }
+            else if (arg.startsWith("--warmup=")) { startup.warmup = Integer.parseInt(arg.substring("--warmup=".length())); }
+            else { startup.programs.add(arg); }
+        }
+        if (startup.programs.isEmpty()) { startup.programs.add("tests/test1.txt"); }
+        startup.run();
+    }
+
+    private void run() throws Exception {
+        if (!new File("cds/sipl.jsa").exists()) {
+            System.err.println("No cds/sipl.jsa, bin/sipl runs without an archive; make one with bin/sipl-archive");
+        }
+        System.out.printf(Locale.ROOT, "%-32s %-8s %10s %10s %10s %10s%n", "program", "mode", "mean ms", "median ms", "min ms", "max ms");
+        for (String program : programs) {
+            List<String> plain = Arrays.asList(java, "-cp", "out", "SIPL", program);
+            List<String> startup = Arrays.asList("bin/sipl", program);
+
+            for (int i = 0; i < warmup; ++i) {
+                time(plain);
+                time(startup);
+            }
+            List<Double> plainTimes = new ArrayList<>();
+            List<Double> startupTimes = new ArrayList<>();
+            for (int i = 0; i < runs; ++i) {
+                plainTimes.add(time(plain));
+                startupTimes.add(time(startup));
+            }
+            report(program, "plain", plainTimes);
+            report(program, "startup", startupTimes);
+        }
+    }
+
+    // runs command to its end, returns the time it took in ms
+    private double time(List<String> command) throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+        builder.environment().put("JAVA", java);
+
+        long start = System.nanoTime();
+        int status = builder.start().waitFor();
+        double time = (System.nanoTime() - start) / 1e6;
+        if (status != 0 && status != 65 && status != 70) {
+            throw new IllegalStateException(String.join(" ", command) + " exited with " + status);
+        }
+        return time;
+    }
+
+    private static void report(String program, String mode, List<Double> times) {
+        List<Double> sorted = new ArrayList<>(times);
+        Collections.sort(sorted);
+        double sum = 0;
+        for (double time : sorted) { sum += time; }
+        double median = (sorted.get((sorted.size() - 1) / 2) + sorted.get(sorted.size() / 2)) / 2;
+
+        String name = Paths.get(program).getFileName().toString();
+        System.out.printf(Locale.ROOT, "%-32s %-8s %10.1f %10.1f %10.1f %10.1f%n", name, mode,
+                sum / sorted.size(), median, sorted.get(0), sorted.get(sorted.size() - 1));
+    }
+}
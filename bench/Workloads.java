@@ -0,0 +1,184 @@
+import ast.Program;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.function.Supplier;
+
+// What the JMH benchmarks in bench/jmh measure. They are in a package, as
+// JMH wants, and reach these methods by reflection; every method makes the
+// operation one benchmark invocation runs, after the setup it needs.
+//
+// frontEnd: scanning, parsing and resolving a generated source of the given
+// number of statements, with functions, nested ifs and whiles; edit is one
+// keystroke in the middle of it, typed and removed again by
+// IncrementalParser.
+//
+// execution: a program of the corpus directory (bench/corpus) on an engine.
+// The program is parsed, resolved and compiled before it is measured; an
+// operation is one run of it.
+public final class Workloads {
+
+    private Workloads() {
+    }
+
+    public static Supplier<Object> frontEnd(String operation, int statements) {
+        String source = source(statements);
+        switch (operation) {
+            case "lex":
+                return () -> new Lexer(source).scanBuffer();
+            case "lexTokens":
+                return () -> new Lexer(source).scanTokens();
+            case "parse":
+                return () -> parse(source);
+            case "parseStream":
+                return () -> {
+                    Parser parser = new Parser(new Lexer(new StringReader(source)));
+                    return checked(parser.parseProgram(), parser.getErrors());
+                };
+            case "resolve": {
+                Program program = parse(source);
+                return () -> {
+                    new Resolver().resolve(program);
+                    return program;
+                };
+            }
+            case "edit": {
+                IncrementalParser parser = new IncrementalParser(source);
+                // in front of a number, which stays one
+                int offset = source.indexOf(" * ", source.length() / 2) + 3;
+                return () -> {
+                    parser.edit(offset, 0, "1");
+                    return parser.edit(offset, 1, "");
+                };
+            }
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    public static Supplier<Object> execution(Path file, String engine) {
+        Program program = parse(read(file));
+        new Resolver().resolve(program);
+        switch (engine) {
+            case "vm": {
+                CompiledProgram compiled = new Compiler().compile(program);
+                VM vm = new VM();
+                return () -> {
+                    Errors errors = new Errors(System.err);
+                    return checked(vm.interpret(compiled, errors), errors);
+                };
+            }
+            case "nodes": {
+                NodeInterpreter interpreter = new NodeInterpreter();
+                return () -> {
+                    Errors errors = new Errors(System.err);
+                    return checked(interpreter.interpret(program, errors), errors);
+                };
+            }
+            case "tree":
+            case "jit": {
+                Interpreter interpreter = new Interpreter(engine.equals("jit"));
+                Program fused = new Fuser().fuse(program);
+                return () -> {
+                    Errors errors = new Errors(System.err);
+                    return checked(interpreter.interpret(fused, errors), errors);
+                };
+            }
+            default:
+                throw new IllegalArgumentException("Unknown engine " + engine);
+        }
+    }
+
+    private static Program parse(String source) {
+        Errors errors = new Errors(System.err);
+        return checked(new Parser(new Lexer(source, errors).scanBuffer(), errors).parseProgram(), errors);
+    }
+
+    // fails the benchmark instead of measuring a program with errors
+    private static <T> T checked(T result, Errors errors) {
+        if (errors.hadError() || errors.hadRuntimeError()) { throw new IllegalStateException("the program has errors"); }
+        return result;
+    }
+
+    // ---- sources
+
+    // a valid program of about the given number of statements
+    static String source(int statements) {
+        Random random = new Random(statements);
+        StringBuilder source = new StringBuilder("program\n");
+        for (int i = 0; i < 20; ++i) {
+            source.append(i == 0 ? "" : ";\n")
+                    .append("func f").append(name(i)).append("(a, b) = if a < b then a * ").append(i)
+                    .append(" + b else f").append(name(i)).append("(a - b, b + 1)");
+        }
+        source.append("\nbegin\n");
+        int count = 0;
+        while (count < statements) {
+            if (count > 0) { source.append(";\n"); }
+            count += statement(source, random, 0);
+        }
+        return source.append("\nend\n").toString();
+    }
+
+    // appends a statement, returns the statements appended, nested ones included
+    private static int statement(StringBuilder source, Random random, int depth) {
+        String variable = "v" + name(random.nextInt(8));
+        switch ((depth < 3) ? random.nextInt(6) : 0) {
+            case 4:
+                source.append("if ").append(variable).append(" > ").append(random.nextInt(100)).append(" then begin\n");
+                int count = 1 + block(source, random, depth);
+                source.append("end else begin\n");
+                count += block(source, random, depth);
+                source.append("end");
+                return count;
+            case 5:
+                source.append("while ").append(variable).append(" < ").append(random.nextInt(100)).append(" do begin\n");
+                int body = block(source, random, depth);
+                source.append(";\n").append(variable).append(" := ").append(variable).append(" + 1\nend");
+                return 2 + body;
+            case 3:
+                source.append(variable).append(" := f").append(name(random.nextInt(20))).append("(")
+                        .append(random.nextInt(1000)).append(", v").append(name(random.nextInt(8))).append(")");
+                return 1;
+            default:
+                source.append(variable).append(" := v").append(name(random.nextInt(8))).append(" * ")
+                        .append(random.nextInt(1000)).append(" - (").append(random.nextInt(50)).append(" + v")
+                        .append(name(random.nextInt(8))).append(") / 3");
+                return 1;
+        }
+    }
+
+    private static int block(StringBuilder source, Random random, int depth) {
+        int count = 0;
+        int statements = 1 + random.nextInt(3);
+        for (int i = 0; i < statements; ++i) {
+            if (i > 0) { source.append(";\n"); }
+            count += statement(source, random, depth + 1);
+        }
+        source.append('\n');
+        return count;
+    }
+
+    // identifiers are letters only
+    private static String name(int number) {
+        StringBuilder name = new StringBuilder();
+        do {
+            name.append((char) ('a' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return name.toString();
+    }
+
+    private static String read(Path file) {
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// One run of a program of the corpus on an engine (see Workloads). The tree
+// interpreter recurses on the Java stack, so the benchmark threads get a
+// large one.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss1g")
+public class Execution {
+    @Param({"bignum", "dispatch", "loops", "recursion"})
+    String program;
+
+    @Param({"tree", "jit", "vm", "nodes"})
+    String engine;
+
+    // relative to the directory JMH runs in, the root of the repository
+    @Param("bench/corpus")
+    String corpus;
+
+    private Supplier<Object> run;
+
+    @Setup
+    public void setup() {
+        run = Sipl.execution(Paths.get(corpus, program + ".sipl"), engine);
+    }
+
+    @Benchmark
+    public Object run() {
+        return run.get();
+    }
+}
@@ -0,0 +1,76 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Scanning, parsing and resolving a generated source (see Workloads), and
+// one keystroke in the middle of it for IncrementalParser.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FrontEnd {
+    @Param("20000")
+    int statements;
+
+    private Supplier<Object> lex;
+    private Supplier<Object> lexTokens;
+    private Supplier<Object> parse;
+    private Supplier<Object> parseStream;
+    private Supplier<Object> resolve;
+    private Supplier<Object> edit;
+
+    @Setup
+    public void setup() {
+        lex = Sipl.frontEnd("lex", statements);
+        lexTokens = Sipl.frontEnd("lexTokens", statements);
+        parse = Sipl.frontEnd("parse", statements);
+        parseStream = Sipl.frontEnd("parseStream", statements);
+        resolve = Sipl.frontEnd("resolve", statements);
+        edit = Sipl.frontEnd("edit", statements);
+    }
+
+    @Benchmark
+    public Object lex() {
+        return lex.get();
+    }
+
+    @Benchmark
+    public Object lexTokens() {
+        return lexTokens.get();
+    }
+
+    @Benchmark
+    public Object parse() {
+        return parse.get();
+    }
+
+    @Benchmark
+    public Object parseStream() {
+        return parseStream.get();
+    }
+
+    @Benchmark
+    public Object resolve() {
+        return resolve.get();
+    }
+
+    @Benchmark
+    public Object edit() {
+        return edit.get();
+    }
+}
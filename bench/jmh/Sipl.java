@@ -0,0 +1,37 @@
+package jmh;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+// SIPL's classes are in the unnamed package, which a package can't import,
+// and JMH only takes benchmarks in a package; the benchmarks get their
+// operations from Workloads through here, once in their setup, so the
+// reflection isn't measured.
+final class Sipl {
+
+    private Sipl() {
+    }
+
+    static Supplier<Object> frontEnd(String operation, int statements) {
+        return workload("frontEnd", new Class<?>[] {String.class, int.class}, operation, statements);
+    }
+
+    static Supplier<Object> execution(Path file, String engine) {
+        return workload("execution", new Class<?>[] {Path.class, String.class}, file, engine);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<Object> workload(String name, Class<?>[] types, Object... args) {
+        try {
+            Method method = Class.forName("Workloads").getMethod(name, types);
+            return (Supplier<Object>) method.invoke(null, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) { throw (RuntimeException) e.getCause(); }
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Workloads isn't on the class path", e);
+        }
+    }
+}
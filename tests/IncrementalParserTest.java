@@ -0,0 +1,52 @@
+import ast.*;
+
+import java.util.List;
+
+// Checks that an edit adding lines to one function of an IncrementalParser
+// parses that function again and nothing else, and that the tokens after it
+// are on their new lines.
+//
+//     bin/sipl-compile && java -cp out IncrementalParserTest
+public class IncrementalParserTest {
+
+    public static void main(String[] args) {
+        String source = "program\n"
+                + "func f(a) = a + 1;\n"
+                + "func g(b) = b * 2;\n"
+                + "func h(c) = c - 1\n"
+                + "begin\n"
+                + "    x := f(1);\n"
+                + "    y := h(2)\n"
+                + "end";
+        Errors errors = new Errors(System.err);
+        IncrementalParser parser = new IncrementalParser(source, errors);
+        Program before = parser.getProgram();
+
+        // two lines more in g
+        String text = "\n    + 3\n    * b";
+        Program after = parser.edit(source.indexOf("b * 2") + "b * 2".length(), 0, text);
+        String edited = parser.getSource();
+
+        List<Function> functions = after.getFunctions();
+        check(functions.get(0) == before.getFunctions().get(0), "f was parsed again");
+        check(functions.get(1) != before.getFunctions().get(1), "g wasn't parsed again");
+        check(functions.get(2) == before.getFunctions().get(2), "h was parsed again");
+        List<Statement> statements = after.getBody().getStatements();
+        for (int i = 0; i < statements.size(); ++i) {
+            check(statements.get(i) == before.getBody().getStatements().get(i), "statement " + i + " was parsed again");
+        }
+
+        check(functions.get(2).getName().getLine() == 6, "h is on line " + functions.get(2).getName().getLine());
+        check(((Assignment) statements.get(1)).getVariable().getLine() == 9,
+                "y is on line " + ((Assignment) statements.get(1)).getVariable().getLine());
+        check(!errors.hadError(), "errors " + errors.getMessages());
+
+        Program full = new Parser(new Lexer(edited, new Errors(System.err)).scanBuffer(), new Errors(System.err)).parseProgram();
+        check(after.toString().equals(full.toString()), "program differs from a full parse:\n" + after + "\n" + full);
+        System.out.println("IncrementalParserTest passed");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) { throw new AssertionError(message); }
+    }
+}
@@ -0,0 +1,36 @@
+import java.util.Arrays;
+
+// Checks that with --optimize --parallel the operands CommonSubexpressions
+// turned into Commons are still forked when they contain calls.
+//
+//     bin/sipl-compile && java -cp out ParallelTest
+public class ParallelTest {
+
+    public static void main(String[] args) {
+        // f doesn't fork itself, only the operations of the body on two calls can
+        String source = "program\n"
+                + "func f(n) = if n < 1 then 0 else f(n - 1)\n"
+                + "begin\n"
+                + "    X := f(200) * f(100);\n"
+                + "    Y := f(200) - f(100)\n"
+                + "end";
+        Options options = Options.parse(new String[] {"--optimize", "--parallel=2"});
+        Errors errors = new Errors(System.err);
+        Script script = Script.compile(source, options, Arrays.asList(), errors);
+        check(script != null, "errors " + errors.getMessages());
+
+        Parallel parallel = new Parallel(options.parallel, options.parallelDepth);
+        Interpreter interpreter = new Interpreter(options.jit);
+        interpreter.useParallel(parallel);
+        Environment result = parallel.run(() -> interpreter.interpret(script.getProgram(), new Object[0], errors));
+
+        check(!errors.hadError() && !errors.hadRuntimeError(), "errors " + errors.getMessages());
+        check(parallel.forked() > 0, "nothing was forked");
+        check(result.toString().contains("X=0") && result.toString().contains("Y=0"), "result " + result);
+        System.out.println("ParallelTest passed, " + parallel.forked() + " tasks forked");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) { throw new AssertionError(message); }
+    }
+}
@@ -0,0 +1,103 @@
+import ast.Program;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Checks that a program saved by ProgramCache and loaded again prints the
+// same as a fresh parse, and that a .siplc file that is cut short or has a
+// byte changed isn't loaded, so SIPL --cache parses the source again and
+// writes the file anew.
+//
+//     bin/sipl-compile && java -cp out ProgramCacheTest
+public class ProgramCacheTest {
+
+    public static void main(String[] args) throws Exception {
+        // every kind of node, token and literal the cache writes
+        String text = "program\n"
+                + "func f(a, b) = if a < b and not (a = 0) then -a * b else f(a - b, b + 1);\n"
+                + "func g(c) = c / 3 + 123456789012345678901234567890\n"
+                + "begin\n"
+                + "    X := f(10, 2);\n"
+                + "    Y := g(X) - 1;\n"
+                + "    T := true or false;\n"
+                + "    while X < 20 do begin X := X + 3 end;\n"
+                + "    if T then begin Y := Y + 1 end else begin Y := Y - 1 end;\n"
+                + "    if X > 100 then begin X := 0 end\n"
+                + "end";
+        byte[] source = text.getBytes(StandardCharsets.UTF_8);
+        Path directory = Files.createTempDirectory("sipl-cache");
+        Path path = directory.resolve("cached.sipl");
+        Files.write(path, source);
+        Path file = directory.resolve("cached.siplc");
+        ProgramCache cache = new ProgramCache(path);
+
+        Program parsed = parse(text);
+        check(cache.load(source) == null, "loaded a file that doesn't exist");
+        cache.store(source, parsed);
+        check(Files.isRegularFile(file), "no " + file.getFileName() + " was written");
+        Program loaded = cache.load(source);
+        check(loaded != null, "the file that was written isn't loaded");
+        check(loaded.toString().equals(parse(text).toString()),
+                "the loaded program prints\n" + loaded + "\ninstead of\n" + parse(text));
+        check(cache.load("program begin X := 1 end".getBytes(StandardCharsets.UTF_8)) == null,
+                "loaded the program of another source");
+
+        byte[] saved = Files.readAllBytes(file);
+        String result = run(path);
+        check(result.contains("X=") && result.contains("Y="), "SIPL --cache printed " + result);
+        check(Arrays.equals(Files.readAllBytes(file), saved), "SIPL --cache wrote a file it could have loaded");
+
+        // cut short anywhere, the header included
+        for (int length = 0; length < saved.length; ++length) {
+            Files.write(file, Arrays.copyOf(saved, length));
+            check(cache.load(source) == null, "loaded the file cut to " + length + " of " + saved.length + " bytes");
+        }
+        // one bit changed anywhere, the magic number, version, hash and CRC included
+        for (int i = 0; i < saved.length; ++i) {
+            for (int bit = 0; bit < 8; ++bit) {
+                byte[] damaged = saved.clone();
+                damaged[i] ^= 1 << bit;
+                Files.write(file, damaged);
+                check(cache.load(source) == null, "loaded the file with bit " + bit + " of byte " + i + " changed");
+            }
+        }
+
+        // the source is parsed again, gives the same result and is cached again
+        Files.write(file, Arrays.copyOf(saved, saved.length / 2));
+        check(run(path).equals(result), "the result after the file was damaged differs");
+        check(Arrays.equals(Files.readAllBytes(file), saved), "the damaged file wasn't written again");
+
+        Files.delete(file);
+        Files.delete(path);
+        Files.delete(directory);
+        System.out.println("ProgramCacheTest passed, " + saved.length + " bytes damaged in every way");
+    }
+
+    private static Program parse(String text) {
+        Errors errors = new Errors(System.err);
+        Program program = new Parser(new Lexer(text, errors).scanBuffer(), errors).parseProgram();
+        check(!errors.hadError(), "errors " + errors.getMessages());
+        return program;
+    }
+
+    // what SIPL --cache prints for the program at path
+    private static String run(Path path) throws Exception {
+        PrintStream out = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true, "UTF-8"));
+        try {
+            SIPL.main(new String[] {"--cache", path.toString()});
+        } finally {
+            System.setOut(out);
+        }
+        return printed.toString("UTF-8");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) { throw new AssertionError(message); }
+    }
+}
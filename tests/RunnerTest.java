@@ -0,0 +1,80 @@
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Checks that runs of a Runner at the same time each keep their own errors
+// and results, and that SIPL given a file it can't read reports it under
+// that file and still runs the others.
+//
+//     bin/sipl-compile && java -cp out RunnerTest
+public class RunnerTest {
+    private static final int SCRIPTS = 16;
+    private static final int RUNS = 50;     // of every script
+
+    public static void main(String[] args) throws Exception {
+        // script i divides by zero on line i + 3 if i is odd, else sets X to i
+        List<Script> scripts = new ArrayList<>();
+        for (int i = 0; i < SCRIPTS; ++i) {
+            StringBuilder source = new StringBuilder("program\nbegin\n");
+            for (int line = 0; line < i; ++line) { source.append('\n'); }
+            source.append("    X := ").append(i % 2 == 1 ? i + " / 0" : String.valueOf(i)).append("\nend");
+            Errors errors = new Errors(System.err);
+            Script script = Script.compile(source.toString(), Options.parse(new String[0]), Arrays.asList(), errors);
+            check(script != null, "errors " + errors.getMessages());
+            scripts.add(script);
+        }
+
+        List<CompletableFuture<Runner.Run>> runs = new ArrayList<>();
+        try (Runner runner = new Runner()) {
+            for (int run = 0; run < RUNS; ++run) {
+                for (Script script : scripts) { runs.add(runner.submit(script)); }
+            }
+        }
+        for (int i = 0; i < runs.size(); ++i) {
+            int script = i % SCRIPTS;
+            Runner.Run run = runs.get(i).join();
+            if (script % 2 == 1) {
+                check(run.result == null, "script " + script + " had a result " + run.result);
+                check(run.errors.getMessages().equals(
+                        Arrays.asList("[line " + (script + 3) + "] Error: Division by zero!")),
+                        "script " + script + " reported " + run.errors.getMessages());
+            } else {
+                check(!run.errors.hadRuntimeError() && run.errors.getMessages().isEmpty(),
+                        "script " + script + " reported " + run.errors.getMessages());
+                check(run.result.toString().equals("{X=" + script + "}"), "script " + script + " ended with " + run.result);
+            }
+        }
+
+        // a file that isn't there is reported like one with errors
+        Path missing = Files.createTempDirectory("sipl-runner").resolve("missing.sipl");
+        Process process = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), "SIPL", "tests/test1.txt", missing.toString(), "tests/test1.txt")
+                .start();
+        String out = read(process.getInputStream());
+        String err = read(process.getErrorStream());
+        check(process.waitFor() == 65, "SIPL ended with " + process.exitValue());
+        check(out.equals(String.format("tests/test1.txt: {A=0, B=20, C=11}%ntests/test1.txt: {A=0, B=20, C=11}%n")),
+                "SIPL printed " + out);
+        check(err.startsWith(missing + ": Error: Can't read the source"), "SIPL reported " + err);
+        Files.delete(missing.getParent());
+
+        System.out.println("RunnerTest passed, " + runs.size() + " runs");
+    }
+
+    private static String read(InputStream in) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        in.transferTo(bytes);
+        return bytes.toString(StandardCharsets.UTF_8.name());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) { throw new AssertionError(message); }
+    }
+}
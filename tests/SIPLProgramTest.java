@@ -0,0 +1,151 @@
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Checks SIPLProgram: compiling and executing with inputs, the errors of
+// both, which inputs are refused, and runs of one program with different
+// inputs on many threads at the same time.
+//
+//     bin/sipl-compile && java -cp out SIPLProgramTest
+public class SIPLProgramTest {
+    private static final String SOURCE = "program\n"
+            + "func fact(n) = if n < 2 then 1 else n * fact(n - 1)\n"
+            + "begin\n"
+            + "    F := fact(N);\n"
+            + "    S := N + M;\n"
+            + "    B := N > 3\n"
+            + "end";
+
+    public static void main(String[] args) throws Exception {
+        compileAndExecute();
+        errors();
+        inputs();
+        concurrently();
+        System.out.println("SIPLProgramTest passed");
+    }
+
+    private static void compileAndExecute() throws SIPLException {
+        SIPLProgram program = SIPLProgram.compile(SOURCE);
+        Map<String, Object> inputs = new HashMap<>();
+        inputs.put("N", 25);
+        inputs.put("M", (short) 2);
+        SIPLResult result = program.execute(inputs);
+        check(result.getBigInteger("F").equals(factorial(25)), "F is " + result.get("F"));
+        check(result.getLong("S") == 27, "S is " + result.get("S"));
+        check(result.getBoolean("B"), "B is " + result.get("B"));
+        check(result.getLong("N") == 25, "the input N isn't in the result");
+
+        // inputs of every integer type, one that doesn't fit in a long as well
+        inputs.put("N", (byte) 3);
+        inputs.put("M", new BigInteger("100000000000000000000"));
+        result = program.execute(inputs);
+        check(result.getLong("F") == 6 && !result.getBoolean("B"), "result " + result);
+        check(result.getBigInteger("S").equals(new BigInteger("100000000000000000003")), "S is " + result.get("S"));
+        check(result.get("S") instanceof BigInteger && result.get("N") instanceof Long, "types of " + result);
+
+        check(SIPLProgram.compile("program begin X := 1 end").execute().getVariables()
+                .equals(Collections.singletonMap("X", 1L)), "a run without inputs");
+    }
+
+    private static void errors() throws SIPLException {
+        try {
+            SIPLProgram.compile("program\nbegin\n    X := := 1\nend");
+            check(false, "a program with a syntax error compiled");
+        } catch (SIPLException e) {
+            check(e.getLine() == 3 && e.getMessages().size() == 1 && e.getMessages().get(0).startsWith("[line 3] Error"),
+                    "compiling reported " + e.getMessages() + " on line " + e.getLine());
+        }
+
+        SIPLProgram program = SIPLProgram.compile("program\nbegin\n    X := 10;\n    Y := X / N\nend");
+        try {
+            program.execute(Collections.singletonMap("N", 0));
+            check(false, "dividing by zero didn't fail");
+        } catch (SIPLException e) {
+            check(e.getLine() == 4 && e.getMessages().equals(Arrays.asList("[line 4] Error: Division by zero!")),
+                    "running reported " + e.getMessages() + " on line " + e.getLine());
+        }
+        // a failed run leaves nothing behind for the next one
+        check(program.execute(Collections.singletonMap("N", 5)).getLong("Y") == 2, "the run after a failed one");
+
+        SIPLProgram forever = SIPLProgram.compile("program begin X := 0; while true do begin X := X + 1 end end", 1000, 0);
+        try {
+            forever.execute();
+            check(false, "a loop without end didn't run out of fuel");
+        } catch (SIPLException e) {
+            check(e.getMessages().get(0).endsWith("Step limit exceeded."), "the budget reported " + e.getMessages());
+        }
+    }
+
+    private static void inputs() throws SIPLException {
+        SIPLProgram program = SIPLProgram.compile(SOURCE);
+        for (String name : new String[] {"", "N1", "a-b", "x y", "begin", "while", "$N"}) {
+            refused(program, Collections.singletonMap(name, 1), "the name \"" + name + "\"");
+        }
+        for (Object value : new Object[] {"1", 1.5, 2.0f, 'c', null, new Object()}) {
+            refused(program, Collections.singletonMap("N", value), "the value " + value);
+        }
+    }
+
+    private static void refused(SIPLProgram program, Map<String, ?> inputs, String what) throws SIPLException {
+        try {
+            program.execute(inputs);
+            check(false, what + " was taken as an input");
+        } catch (IllegalArgumentException e) {
+            // refused
+        }
+    }
+
+    // every thread runs with other inputs, and with more sets of input names
+    // than are kept resolved
+    private static void concurrently() throws Exception {
+        SIPLProgram program = SIPLProgram.compile(SOURCE);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int thread = 0; thread < threads; ++thread) {
+                int seed = thread;
+                runs.add(executor.submit(() -> {
+                    for (int run = 0; run < 300; ++run) {
+                        int n = (seed * 300 + run) % 30;
+                        Map<String, Object> inputs = new HashMap<>();
+                        inputs.put("N", n);
+                        inputs.put("M", run);
+                        // names that aren't read by the program, for other Scripts
+                        inputs.put("Unused" + name(run % (SIPLProgram.MAX_SCRIPTS + 5)), seed);
+                        SIPLResult result = program.execute(inputs);
+                        check(result.getBigInteger("F").equals(factorial(n)), "F is " + result.get("F") + " for " + n);
+                        check(result.getLong("S") == n + run, "S is " + result.get("S") + " for " + inputs);
+                        check(result.getBoolean("B") == (n > 3), "B is " + result.get("B") + " for " + n);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> run : runs) { run.get(); }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static BigInteger factorial(int n) {
+        BigInteger factorial = BigInteger.ONE;
+        for (int i = 2; i <= n; ++i) { factorial = factorial.multiply(BigInteger.valueOf(i)); }
+        return factorial;
+    }
+
+    // identifiers are letters only
+    private static String name(int number) {
+        return String.valueOf((char) ('a' + number));
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) { throw new AssertionError(message); }
+    }
+}
@@ -0,0 +1,128 @@
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Checks SIPL through javax.script: the engine is found by name, a compiled
+// script runs with the inputs of its bindings, also on many threads at the
+// same time, its variables don't become inputs of the next run, and errors
+// keep their line.
+//
+//     bin/sipl-compile && java -cp out SIPLScriptEngineTest
+public class SIPLScriptEngineTest {
+
+    public static void main(String[] args) throws Exception {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("sipl");
+        check(engine != null, "no engine sipl, the services file isn't on the class path");
+        check(engine instanceof Compilable, "the engine doesn't compile");
+
+        compiled(engine);
+        scopes(engine);
+        errors(engine);
+        statements(engine.getFactory());
+        concurrently(engine);
+        System.out.println("SIPLScriptEngineTest passed");
+    }
+
+    private static void compiled(ScriptEngine engine) throws ScriptException {
+        CompiledScript script = ((Compilable) engine).compile("program\nbegin\n    S := N * 2;\n    P := N > 1\nend");
+        for (int n = 0; n < 5; ++n) {
+            Bindings bindings = engine.createBindings();
+            bindings.put("N", n);
+            Map<?, ?> variables = (Map<?, ?>) script.eval(bindings);
+            check(variables.get("S").equals(2L * n) && variables.get("P").equals(n > 1), "variables " + variables);
+        }
+    }
+
+    private static void scopes(ScriptEngine engine) throws ScriptException {
+        ScriptContext context = new SimpleScriptContext();
+        Bindings global = engine.createBindings();
+        global.put("N", 1);
+        global.put("M", 7);
+        context.setBindings(global, ScriptContext.GLOBAL_SCOPE);
+        context.setAttribute("N", 5, ScriptContext.ENGINE_SCOPE);
+        // neither inputs nor errors
+        context.setAttribute("text", "a string", ScriptContext.ENGINE_SCOPE);
+        context.setAttribute("not.a.name", 3, ScriptContext.ENGINE_SCOPE);
+
+        Map<?, ?> first = (Map<?, ?>) engine.eval("program begin S := N + M end", context);
+        check(first.get("S").equals(12L) && !first.containsKey("text"), "the engine scope didn't win: " + first);
+
+        // S of the first run isn't an input of the second
+        Map<?, ?> second = (Map<?, ?>) engine.eval("program begin T := 1 end", context);
+        check(!second.containsKey("S") && second.get("T").equals(1L), "the second run ended with " + second);
+        check(context.getAttribute("S") == null && context.getAttribute("T") == null, "variables were put in a scope");
+    }
+
+    private static void errors(ScriptEngine engine) {
+        try {
+            ((Compilable) engine).compile("program\nbegin\n    X := (1\nend");
+            check(false, "a program with a syntax error compiled");
+        } catch (ScriptException e) {
+            check(e.getLineNumber() == 4, "the syntax error is on line " + e.getLineNumber() + ": " + e.getMessage());
+        }
+        try {
+            engine.put(ScriptEngine.FILENAME, "zero.sipl");
+            engine.eval("program\nbegin\n    X := 1;\n    Y := X / 0\nend");
+            check(false, "dividing by zero didn't fail");
+        } catch (ScriptException e) {
+            check(e.getLineNumber() == 4 && "zero.sipl".equals(e.getFileName()) && e.getCause() instanceof SIPLException,
+                    "the division by zero is on line " + e.getLineNumber() + " of " + e.getFileName());
+        } finally {
+            engine.getBindings(ScriptContext.ENGINE_SCOPE).remove(ScriptEngine.FILENAME);
+        }
+    }
+
+    private static void statements(ScriptEngineFactory factory) throws ScriptException {
+        check(factory.getMethodCallSyntax(null, "f", "X", "1").equals("f(X, 1)"), "a call is "
+                + factory.getMethodCallSyntax(null, "f", "X", "1"));
+        Map<?, ?> variables = (Map<?, ?>) factory.getScriptEngine().eval(
+                factory.getProgram("X := 4", factory.getOutputStatement("X * 2 + 1")));
+        check(variables.get("Output").equals(9L), "the output statement ended with " + variables);
+    }
+
+    // one compiled script, a context of its own for every run
+    private static void concurrently(ScriptEngine engine) throws Exception {
+        CompiledScript script = ((Compilable) engine).compile(
+                "program\nfunc fib(n) = if n < 2 then n else fib(n - 1) + fib(n - 2)\nbegin\n    F := fib(N)\nend");
+        long[] fib = new long[20];
+        fib[1] = 1;
+        for (int i = 2; i < fib.length; ++i) { fib[i] = fib[i - 1] + fib[i - 2]; }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int thread = 0; thread < 8; ++thread) {
+                int seed = thread;
+                runs.add(executor.submit(() -> {
+                    for (int run = 0; run < 200; ++run) {
+                        int n = (seed + run) % fib.length;
+                        ScriptContext context = new SimpleScriptContext();
+                        context.setAttribute("N", n, ScriptContext.ENGINE_SCOPE);
+                        Map<?, ?> variables = (Map<?, ?>) script.eval(context);
+                        check(variables.get("F").equals(fib[n]), "F is " + variables.get("F") + " for " + n);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> run : runs) { run.get(); }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) { throw new AssertionError(message); }
+    }
+}
@@ -0,0 +1,163 @@
+import ast.Assignment;
+import ast.BinaryExpression;
+import ast.Program;
+import ast.Statement;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Checks TypeInference: with --types a type error it proves is reported
+// before the program runs, and the program isn't run; the checks it marks
+// as not needed never change what a program ends with or how it fails; and
+// an operation with an operand that can be anything, an input or a
+// parameter bound to numbers and booleans, keeps its check.
+//
+//     bin/sipl-compile && java -cp out TypeInferenceTest
+public class TypeInferenceTest {
+    // every kind of node TypeInference marks, and runs that fail
+    private static final String[] PROGRAMS = {
+        "program\n"
+            + "func fact(n) = if n < 2 then 1 else n * fact(n - 1);\n"
+            + "func even(n) = if n = 0 then true else not even(n - 1)\n"
+            + "begin\n"
+            + "    F := fact(20);\n"
+            + "    E := even(7) or F > 100 and true;\n"
+            + "    I := 0;\n"
+            + "    S := 0;\n"
+            + "    while I < 50 do begin S := S + I * 3 - -I; I := I + 1 end;\n"
+            + "    if E then begin S := S / 7 end else begin S := 0 end\n"
+            + "end",
+        "program\n"
+            + "func pick(c, a, b) = if c then a else b\n"
+            + "begin\n"
+            + "    X := pick(true, 1, 2) + pick(false, 3, 4);\n"
+            + "    B := pick(X > 3, true, false);\n"
+            + "    Y := pick(true, false, 5) + 1\n"
+            + "end",
+        "program\n"
+            + "func id(a) = a\n"
+            + "begin\n"
+            + "    N := id(3);\n"
+            + "    T := id(true);\n"
+            + "    while N do begin N := N - 1 end\n"
+            + "end",
+        "program\n"
+            + "begin\n"
+            + "    X := 10;\n"
+            + "    Y := X / (X - 10)\n"
+            + "end",
+    };
+
+    public static void main(String[] args) throws Exception {
+        reported();
+        sameResults();
+        keptChecks();
+        System.out.println("TypeInferenceTest passed");
+    }
+
+    // --types stops a program with a type error it proves from running, the
+    // same program without it fails only when it gets there
+    private static void reported() throws Exception {
+        String source = "program\nbegin\n    X := 1;\n    Y := 2;\n    if X then begin Y := 3 end\nend";
+        Errors errors = errors();
+        check(Script.compile(source, Options.parse(new String[] {"--types"}), Collections.emptyList(), errors) == null,
+                "a program with a type error compiled with --types");
+        check(errors.getMessages().equals(Arrays.asList("[line 5] Error at 'if': Condition should be boolean."))
+                && !errors.hadRuntimeError(), "--types reported " + errors.getMessages());
+
+        errors = errors();
+        Script script = Script.compile(source, Options.parse(new String[0]), Collections.emptyList(), errors);
+        check(script != null && errors.getMessages().isEmpty(), "without --types compiling reported " + errors.getMessages());
+        script.run(errors);
+        check(errors.getMessages().equals(Arrays.asList("[line 5] Error: Condition should be boolean.")),
+                "the program without --types reported " + errors.getMessages());
+
+        // in a function that is called, the operand bound only to booleans
+        errors = errors();
+        check(Script.compile("program\nfunc f(a) = a + 1\nbegin\n    X := f(true)\nend",
+                Options.parse(new String[] {"--types"}), Collections.emptyList(), errors) == null
+                && errors.getMessages().equals(Arrays.asList("[line 2] Error at '+': Operands must be numbers.")),
+                "--types reported " + errors.getMessages() + " for a boolean parameter");
+    }
+
+    // the programs end with the same variables or fail with the same errors
+    // with the checks TypeInference leaves out as with all of them
+    private static void sameResults() throws Exception {
+        List<String> sources = new ArrayList<>(Arrays.asList(PROGRAMS));
+        sources.add(new String(Files.readAllBytes(Paths.get("tests/test1.txt")), StandardCharsets.UTF_8));
+        for (String source : sources) {
+            String expected = run(source);
+            for (String[] options : new String[][] {{"--types"}, {"--optimize"}, {"--optimize", "--jit"}}) {
+                if (options[0].equals("--types") && typeErrors(source)) { continue; }
+                String result = run(source, options);
+                check(result.equals(expected), String.join(" ", options) + " changed\n" + expected
+                        + "\nto\n" + result + "\nfor\n" + source);
+            }
+        }
+
+        // and some checks were left out
+        Script script = compile("program\nbegin\n    X := 2;\n    Y := X * 3\nend", "--types");
+        check(((BinaryExpression) right(script.getProgram(), 1)).isTypeSafe(), "X * 3 keeps its check");
+    }
+
+    // an input is anything, and so is a parameter bound to a number and a boolean
+    private static void keptChecks() throws Exception {
+        for (String[] options : new String[][] {{"--types"}, {"--optimize"}}) {
+            Script script = compile("program\nbegin\n    X := N + 1\nend", Collections.singletonList("N"), options);
+            check(!((BinaryExpression) right(script.getProgram(), 0)).isTypeSafe(), "N + 1 has no check");
+            Errors errors = errors();
+            check(Long.valueOf(5).equals(script.run(new Object[] {4L}, errors).variables().get("X")), "N + 1 with N = 4");
+            script.run(new Object[] {true}, errors);
+            check(errors.getMessages().equals(Arrays.asList("[line 3] Error: Operands must be numbers.")),
+                    "N + 1 with N = true reported " + errors.getMessages());
+
+            String result = run("program\nfunc f(a) = a + 1\nbegin\n    X := f(1);\n    Y := f(true)\nend", options);
+            check(result.equals("[line 2] Error: Operands must be numbers."), "f(true) ended with " + result);
+        }
+    }
+
+    // the variables the run ended with, or its errors
+    private static String run(String source, String... options) {
+        Errors errors = errors();
+        Environment result = compile(source, options).run(errors);
+        return errors.hadRuntimeError() ? String.join("\n", errors.getMessages()) : result.toString();
+    }
+
+    private static boolean typeErrors(String source) {
+        return Script.compile(source, Options.parse(new String[] {"--types"}), Collections.emptyList(), errors()) == null;
+    }
+
+    private static Script compile(String source, String... options) {
+        return compile(source, Collections.emptyList(), options);
+    }
+
+    private static Script compile(String source, List<String> inputs, String... options) {
+        Errors errors = errors();
+        Script script = Script.compile(source, Options.parse(options), inputs, errors);
+        check(script != null, "errors " + errors.getMessages());
+        return script;
+    }
+
+    // the right side of the statement at index of the body
+    private static Object right(Program program, int index) {
+        Statement statement = program.getBody().getStatements().get(index);
+        check(statement instanceof Assignment, "statement " + index + " is " + statement);
+        return ((Assignment) statement).getRight();
+    }
+
+    // the messages are checked, not printed
+    private static Errors errors() {
+        return new Errors(new PrintStream(new ByteArrayOutputStream()));
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) { throw new AssertionError(message); }
+    }
+}